@@ -0,0 +1,51 @@
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+
+/**
+ * Injects new Fields into Opentelemetry SDK classes to be used as efficient storage for
+ * co.elastic.otel.common.SpanValues (on SdkSpan) and co.elastic.otel.common.LogRecordValues
+ * (on SdkReadWriteLogRecord).
+ * Check the FieldBackedSpanValueStorageProvider and FieldBackedLogRecordValueStorageProvider for details.
+ */
+object ValueStorageFieldInjector {
+
+  const val SDK_SPAN_CLASS = "io/opentelemetry/sdk/trace/SdkSpan"
+
+  const val SDK_LOG_RECORD_CLASS = "io/opentelemetry/sdk/logs/SdkReadWriteLogRecord"
+
+  const val FIELD_NAME = "\$elasticSpanValues"
+
+  const val LOG_RECORD_FIELD_NAME = "\$elasticLogRecordValues"
+
+  // Dedicated fields for the hottest SpanValues, must match co.elastic.otel.common.WellKnownSpanValue
+  val WELL_KNOWN_FIELD_NAMES = listOf(
+    "\$elasticLocalRoot",
+    "\$elasticProfilerStackTraceIds"
+  )
+
+  /** The fields to inject per internal class name. */
+  val FIELDS_BY_CLASS = mapOf(
+    SDK_SPAN_CLASS to listOf(FIELD_NAME) + WELL_KNOWN_FIELD_NAMES,
+    SDK_LOG_RECORD_CLASS to listOf(LOG_RECORD_FIELD_NAME)
+  )
+
+  fun inject(className: String, bytecode: ByteArray): ByteArray {
+    val fieldNames = FIELDS_BY_CLASS[className] ?: throw IllegalArgumentException("No fields to inject into $className")
+    val reader = ClassReader(bytecode)
+    val writer = ClassWriter(reader, 0)
+    val visitor = object : ClassVisitor(Opcodes.ASM9, writer) {
+      override fun visitEnd() {
+        val flags = Opcodes.ACC_VOLATILE //package-private visibility
+        for (fieldName in fieldNames) {
+          val fv = writer.visitField(flags, fieldName, "Ljava/lang/Object;", null, null)
+          fv.visitEnd()
+        }
+        super.visitEnd()
+      }
+    }
+    reader.accept(visitor, 0)
+    return writer.toByteArray()
+  }
+}
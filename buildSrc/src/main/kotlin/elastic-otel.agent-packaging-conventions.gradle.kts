@@ -2,10 +2,6 @@ import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowCopyAction
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar
 import com.github.jengelman.gradle.plugins.shadow.transformers.TransformerContext
 import org.apache.tools.zip.ZipEntry
-import org.objectweb.asm.ClassReader
-import org.objectweb.asm.ClassVisitor
-import org.objectweb.asm.ClassWriter
-import org.objectweb.asm.Opcodes
 
 plugins {
   id("elastic-otel.java-conventions")
@@ -133,45 +129,32 @@ tasks {
   }
 
 
-  // This transformer injects a new Field into the Opentelemetry SdkSpan class to be used
-  // as efficient storage for co.elastic.otel.common.SpanValues
-  // Check the FieldBackedSpanValueStorageProvider for details
-  val injectSpanValueFieldTransformer = object: com.github.jengelman.gradle.plugins.shadow.transformers.ResourceTransformer {
+  // This transformer injects new Fields into the Opentelemetry SdkSpan and SdkReadWriteLogRecord classes
+  // to be used as efficient storage for co.elastic.otel.common.SpanValues and LogRecordValues
+  // Check the ValueStorageFieldInjector and FieldBacked*ValueStorageProvider classes for details
+  val injectValueStorageFieldsTransformer = object: com.github.jengelman.gradle.plugins.shadow.transformers.ResourceTransformer {
 
     @Internal
-    val SDK_SPAN_CLASS_FILE = "inst/io/opentelemetry/sdk/trace/SdkSpan.classdata"
-    @Internal
-    val FIELD_NAME = "\$elasticSpanValues"
+    val CLASS_FILES = ValueStorageFieldInjector.FIELDS_BY_CLASS.keys.associateBy { "inst/$it.classdata" }
 
     @Internal
-    var bytecode : ByteArray? = null;
+    val bytecodes = mutableMapOf<String, ByteArray>()
 
     override fun getName(): String {
-      return "SpanValue field injector into Otel SdkSpan"
+      return "Value storage field injector into Otel SdkSpan and SdkReadWriteLogRecord"
     }
 
     override fun canTransformResource(element: FileTreeElement): Boolean {
-      return element.path == SDK_SPAN_CLASS_FILE
+      return CLASS_FILES.containsKey(element.path)
     }
 
     override fun transform(context: TransformerContext) {
-      if(bytecode != null) {
-        throw IllegalStateException("Multiple SdkSpan classes detected")
+      if(bytecodes.containsKey(context.path)) {
+        throw IllegalStateException("Multiple ${context.path} classes detected")
       }
 
       val inputStream = context.inputStream
-      val reader = ClassReader(inputStream)
-      val writer = ClassWriter(reader, 0)
-      val visitor = object : ClassVisitor(Opcodes.ASM9, writer) {
-        override fun visitEnd() {
-          val flags = Opcodes.ACC_VOLATILE //package-private visibility
-          val fv = writer.visitField(flags , FIELD_NAME, "Ljava/lang/Object;", null ,null)
-          fv.visitEnd()
-          super.visitEnd()
-        }
-      }
-      reader.accept(visitor, 0);
-      bytecode = writer.toByteArray()
+      bytecodes[context.path] = ValueStorageFieldInjector.inject(CLASS_FILES.getValue(context.path), inputStream.readBytes())
       inputStream.close()
     }
 
@@ -183,14 +166,15 @@ tasks {
       os: org.apache.tools.zip.ZipOutputStream,
       preserveFileTimestamps: Boolean
     ) {
-      if(bytecode == null) {
-        throw IllegalStateException("Failed to find SdkSpan class, was it moved? Searched for $SDK_SPAN_CLASS_FILE")
+      for (classFile in CLASS_FILES.keys) {
+        val bytecode = bytecodes[classFile]
+          ?: throw IllegalStateException("Failed to find class to inject fields into, was it moved? Searched for $classFile")
+
+        val entry = ZipEntry(classFile)
+        entry.time = getEntryTimestamp(preserveFileTimestamps, entry.time)
+        os.putNextEntry(entry)
+        os.write(bytecode)
       }
-
-      val entry = ZipEntry(SDK_SPAN_CLASS_FILE)
-      entry.time = getEntryTimestamp(preserveFileTimestamps, entry.time)
-      os.putNextEntry(entry)
-      os.write(bytecode)
     }
 
     private fun getEntryTimestamp(preserveFileTimestamps: Boolean, entryTime: Long): Long {
@@ -220,7 +204,7 @@ tasks {
       duplicatesStrategy = DuplicatesStrategy.INCLUDE
     }
     relocatePackages(this)
-    transform(injectSpanValueFieldTransformer)
+    transform(injectValueStorageFieldsTransformer)
 
     manifest {
       attributes["Main-Class"] = "co.elastic.otel.agent.ElasticAgent"
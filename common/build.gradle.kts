@@ -2,6 +2,16 @@ plugins {
   id("java-library")
   id("elastic-otel.library-packaging-conventions")
   id("elastic-otel.sign-and-publish-conventions")
+  alias(libs.plugins.jmh)
+}
+
+jmh {
+  fork = 1
+  iterations = 5
+  warmupIterations = 3
+  profilers.add("gc")
+  // the SdkSpan with the injected field needs to take precedence over the one from the SDK jar
+  duplicateClassesStrategy = DuplicatesStrategy.EXCLUDE
 }
 
 description = "Elastic common utilities for OpenTelemetry Java"
@@ -11,6 +21,7 @@ dependencies {
   compileOnly("io.opentelemetry:opentelemetry-sdk")
   compileOnly("io.opentelemetry:opentelemetry-sdk-extension-autoconfigure-spi")
   implementation(libs.bundles.semconv)
+  implementation(libs.jctools)
 
   testImplementation("io.opentelemetry:opentelemetry-sdk")
   testImplementation("io.opentelemetry:opentelemetry-sdk-testing")
@@ -22,4 +33,30 @@ dependencies {
 
   // only to get reference to upstream inferred tracer name
   testCompileOnly(libs.contribInferredSpans);
+
+  jmhImplementation("io.opentelemetry:opentelemetry-sdk")
+}
+
+// The agent distro injects the $elasticSpanValues field into SdkSpan at packaging time.
+// We do the same for the benchmarks, so that the FieldBackedSpanValueStorageProvider can be measured.
+val jmhSdkSpanDir = layout.buildDirectory.dir("generated/jmh-sdkspan")
+val injectSpanValueFieldForJmh by tasks.registering {
+  val sdkTraceJar = configurations.named("jmhRuntimeClasspath").map { classpath ->
+    classpath.filter { it.name.startsWith("opentelemetry-sdk-trace-") }
+  }
+  inputs.files(sdkTraceJar)
+  outputs.dir(jmhSdkSpanDir)
+  doLast {
+    val className = ValueStorageFieldInjector.SDK_SPAN_CLASS
+    val classFile = "$className.class"
+    java.util.zip.ZipFile(sdkTraceJar.get().singleFile).use { jar ->
+      val original = jar.getInputStream(jar.getEntry(classFile)).use { it.readBytes() }
+      val target = jmhSdkSpanDir.get().file(classFile).asFile
+      target.parentFile.mkdirs()
+      target.writeBytes(ValueStorageFieldInjector.inject(className, original))
+    }
+  }
+}
+sourceSets.named("jmh") {
+  output.dir(mapOf("builtBy" to injectSpanValueFieldForJmh), jmhSdkSpanDir)
 }
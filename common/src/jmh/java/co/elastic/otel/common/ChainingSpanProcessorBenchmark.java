@@ -0,0 +1,215 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares a chain of nested {@link AbstractSimpleChainingSpanProcessor}s with the same processors
+ * run by a {@link FusedChainingSpanProcessor}. The stages cycle through several distinct classes,
+ * so that the call sites see the same polymorphism as with multiple real processors installed.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class ChainingSpanProcessorBenchmark {
+
+  @Param({"nested", "fused"})
+  String chain;
+
+  @Param({"2", "4", "8"})
+  int stages;
+
+  SdkTracerProvider tracerProvider;
+  SpanProcessor processor;
+  ReadWriteSpan span;
+
+  @Setup
+  public void setup() {
+    List<Function<SpanProcessor, SpanProcessor>> factories = new ArrayList<>();
+    for (int i = 0; i < stages; i++) {
+      switch (i % 4) {
+        case 0:
+          factories.add(StageA::new);
+          break;
+        case 1:
+          factories.add(StageB::new);
+          break;
+        case 2:
+          factories.add(StageC::new);
+          break;
+        default:
+          factories.add(StageD::new);
+          break;
+      }
+    }
+    SpanProcessor terminal = new Terminal();
+    if (chain.equals("fused")) {
+      processor = FusedChainingSpanProcessor.createChain(factories, terminal);
+    } else {
+      processor = terminal;
+      for (int i = factories.size() - 1; i >= 0; i--) {
+        processor = factories.get(i).apply(processor);
+      }
+    }
+    tracerProvider = SdkTracerProvider.builder().build();
+    Span started = tracerProvider.get("benchmark").spanBuilder("span").startSpan();
+    started.end();
+    span = (ReadWriteSpan) started;
+  }
+
+  @TearDown
+  public void tearDown() {
+    tracerProvider.close();
+  }
+
+  @Benchmark
+  public void onStartAndEnd() {
+    processor.onStart(Context.root(), span);
+    processor.onEnd(span);
+  }
+
+  private abstract static class Stage extends AbstractSimpleChainingSpanProcessor {
+
+    int invocations;
+
+    Stage(SpanProcessor next) {
+      super(next);
+    }
+
+    @Override
+    protected boolean requiresStart() {
+      return true;
+    }
+
+    @Override
+    protected boolean requiresEnd() {
+      return true;
+    }
+  }
+
+  private static class StageA extends Stage {
+    StageA(SpanProcessor next) {
+      super(next);
+    }
+
+    @Override
+    protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {
+      invocations++;
+    }
+
+    @Override
+    protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+      invocations++;
+      return readableSpan;
+    }
+  }
+
+  private static class StageB extends Stage {
+    StageB(SpanProcessor next) {
+      super(next);
+    }
+
+    @Override
+    protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {
+      invocations += 2;
+    }
+
+    @Override
+    protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+      invocations += 2;
+      return readableSpan;
+    }
+  }
+
+  private static class StageC extends Stage {
+    StageC(SpanProcessor next) {
+      super(next);
+    }
+
+    @Override
+    protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {
+      invocations += 3;
+    }
+
+    @Override
+    protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+      invocations += 3;
+      return readableSpan;
+    }
+  }
+
+  private static class StageD extends Stage {
+    StageD(SpanProcessor next) {
+      super(next);
+    }
+
+    @Override
+    protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {
+      invocations += 4;
+    }
+
+    @Override
+    protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+      invocations += 4;
+      return readableSpan;
+    }
+  }
+
+  private static class Terminal implements SpanProcessor {
+
+    int ended;
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+      return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      ended++;
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+  }
+}
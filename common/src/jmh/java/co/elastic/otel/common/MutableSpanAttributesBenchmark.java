@@ -0,0 +1,120 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures adding a single attribute to an ended span via {@link MutableSpan} and iterating the
+ * resulting attributes, like an exporter would. "rebuild" copies all attributes into a new {@link
+ * Attributes} instance, which is what {@link MutableSpanData} used to do, "overlay" uses the
+ * current {@link OverlayAttributes} view.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class MutableSpanAttributesBenchmark {
+
+  private static final AttributeKey<String> ADDED =
+      AttributeKey.stringKey("profiler.stack_trace_ids");
+
+  @Param({"rebuild", "overlay"})
+  String mode;
+
+  @Param({"4", "16", "64"})
+  int attributeCount;
+
+  SdkTracerProvider tracerProvider;
+  ReadableSpan endedSpan;
+
+  @Setup
+  public void setup() {
+    ReadableSpan[] captured = new ReadableSpan[1];
+    tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(
+                new SpanProcessor() {
+                  @Override
+                  public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+                  @Override
+                  public boolean isStartRequired() {
+                    return false;
+                  }
+
+                  @Override
+                  public void onEnd(ReadableSpan span) {
+                    captured[0] = span;
+                  }
+
+                  @Override
+                  public boolean isEndRequired() {
+                    return true;
+                  }
+                })
+            .build();
+    Span span = tracerProvider.get("benchmark").spanBuilder("span").startSpan();
+    for (int i = 0; i < attributeCount; i++) {
+      span.setAttribute("attribute." + i, "value-" + i);
+    }
+    span.end();
+    endedSpan = captured[0];
+  }
+
+  @TearDown
+  public void tearDown() {
+    tracerProvider.close();
+  }
+
+  @Benchmark
+  public void addAttributeAndIterate(Blackhole blackhole) {
+    Attributes attributes;
+    if ("rebuild".equals(mode)) {
+      attributes =
+          Attributes.builder()
+              .putAll(endedSpan.toSpanData().getAttributes())
+              .put(ADDED, "added")
+              .build();
+    } else {
+      MutableSpan mutable = MutableSpan.makeMutable(endedSpan);
+      mutable.setAttribute(ADDED, "added");
+      attributes = mutable.toSpanData().getAttributes();
+    }
+    blackhole.consume(attributes.size());
+    attributes.forEach((key, value) -> blackhole.consume(value));
+  }
+}
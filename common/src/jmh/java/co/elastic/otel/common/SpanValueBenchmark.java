@@ -0,0 +1,143 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.trace.FieldBackedSpanValueStorageProvider;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the {@link SpanValue} operations for dense and sparse values backed by either the {@link
+ * FieldBackedSpanValueStorageProvider} or the {@link SpanValueStorageProvider.MapBacked}.
+ *
+ * <p>All threads operate on the same set of spans, the nested subclasses only differ in the number
+ * of contending threads.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public abstract class SpanValueBenchmark {
+
+  private static final int SPAN_COUNT = 1024;
+
+  @Benchmark
+  public Object get(SpansState spans, ThreadState thread) {
+    return spans.spanValue.get(spans.next(thread));
+  }
+
+  @Benchmark
+  public void set(SpansState spans, ThreadState thread) {
+    spans.spanValue.set(spans.next(thread), thread.value);
+  }
+
+  @Benchmark
+  public boolean setIfNull(SpansState spans, ThreadState thread) {
+    return spans.spanValue.setIfNull(spans.next(thread), thread.value);
+  }
+
+  @Benchmark
+  public Object computeIfNull(SpansState spans, ThreadState thread) {
+    return spans.spanValue.computeIfNull(spans.next(thread), thread.initializer);
+  }
+
+  @Benchmark
+  public boolean clearAndSetIfNull(SpansState spans, ThreadState thread) {
+    Span span = spans.next(thread);
+    spans.spanValue.clear(span);
+    return spans.spanValue.setIfNull(span, thread.value);
+  }
+
+  @State(Scope.Benchmark)
+  public static class SpansState {
+
+    @Param({"field", "map"})
+    String storage;
+
+    @Param({"dense", "sparse"})
+    String valueType;
+
+    SdkTracerProvider tracerProvider;
+    Span[] spans;
+    SpanValue<Object> spanValue;
+
+    @Setup(Level.Trial)
+    public void init() {
+      // Every benchmark runs in its own fork, so the system property is applied before the first
+      // SpanValue is accessed
+      if ("map".equals(storage)) {
+        System.setProperty(SpanValueStorageProvider.FORCE_MAP_BACKED_PROPERTY, "true");
+      } else if (FieldBackedSpanValueStorageProvider.INSTANCE == null) {
+        throw new IllegalStateException("The SpanValue field has not been injected into SdkSpan");
+      }
+      spanValue = "dense".equals(valueType) ? SpanValue.createDense() : SpanValue.createSparse();
+
+      tracerProvider = SdkTracerProvider.builder().build();
+      Tracer tracer = tracerProvider.get("span-value-benchmark");
+      spans = new Span[SPAN_COUNT];
+      for (int i = 0; i < SPAN_COUNT; i++) {
+        spans[i] = tracer.spanBuilder("span-" + i).startSpan();
+        spanValue.set(spans[i], "initial");
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+      for (Span span : spans) {
+        span.end();
+      }
+      tracerProvider.close();
+    }
+
+    Span next(ThreadState thread) {
+      return spans[thread.nextSpanIndex++ & (SPAN_COUNT - 1)];
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int nextSpanIndex;
+    final Object value = new Object();
+    final Supplier<Object> initializer = () -> value;
+  }
+
+  @Threads(1)
+  public static class SingleThread extends SpanValueBenchmark {}
+
+  @Threads(4)
+  public static class FourThreads extends SpanValueBenchmark {}
+
+  @Threads(16)
+  public static class SixteenThreads extends SpanValueBenchmark {}
+
+  @Threads(64)
+  public static class SixtyFourThreads extends SpanValueBenchmark {}
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link WildcardMatcher#anyMatch(List, CharSequence)} with a compiled {@link
+ * WildcardMatcherSet} for class-name-like filter lists mixing prefix, suffix, infix and compound
+ * patterns. Most inputs don't match any pattern, which is the common case for exclude lists. The
+ * {@code cached} mode puts a {@link WildcardMatchCache} in front of the set, as the inputs repeat.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class WildcardMatcherBenchmark {
+
+  private static final String[] INPUTS = {
+    "org.springframework.web.servlet.DispatcherServlet",
+    "com.example.shop.checkout.CheckoutController$$EnhancerBySpringCGLIB",
+    "java.util.concurrent.ThreadPoolExecutor$Worker",
+    "io.netty.channel.nio.NioEventLoop",
+    "com.example.module42.service.OrderService",
+    "sun.reflect.GeneratedMethodAccessor17",
+    "org.apache.catalina.core.StandardWrapperValve",
+    "com.acme.internal.Generated$Proxy$7"
+  };
+
+  @Param({"list", "set", "cached"})
+  String mode;
+
+  @Param({"1", "10", "100", "500"})
+  int patterns;
+
+  List<WildcardMatcher> matchers;
+  WildcardMatcherSet matcherSet;
+  WildcardMatchCache matchCache;
+
+  @Setup
+  public void setup() {
+    matchers = new ArrayList<>(patterns);
+    for (int i = 0; i < patterns; i++) {
+      switch (i % 4) {
+        case 0:
+          matchers.add(WildcardMatcher.valueOf("com.example.module" + i + ".*"));
+          break;
+        case 1:
+          matchers.add(WildcardMatcher.valueOf("*$$Generated" + i));
+          break;
+        case 2:
+          matchers.add(WildcardMatcher.valueOf("*.internal" + i + ".*"));
+          break;
+        default:
+          matchers.add(WildcardMatcher.valueOf("org.vendor" + i + ".*.impl.*Factory"));
+          break;
+      }
+    }
+    matcherSet = WildcardMatcherSet.of(matchers);
+    matchCache = WildcardMatchCache.of(matcherSet, 64);
+  }
+
+  @Benchmark
+  public void firstMatch(Blackhole blackhole) {
+    if ("list".equals(mode)) {
+      for (int i = 0; i < INPUTS.length; i++) {
+        blackhole.consume(WildcardMatcher.anyMatch(matchers, INPUTS[i]));
+      }
+    } else if ("set".equals(mode)) {
+      for (int i = 0; i < INPUTS.length; i++) {
+        blackhole.consume(matcherSet.firstMatch(INPUTS[i]));
+      }
+    } else {
+      for (int i = 0; i < INPUTS.length; i++) {
+        blackhole.consume(matchCache.firstMatch(INPUTS[i]));
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chaining {@link SpanProcessor} which processes ended spans in batches. Work like attribute
+ * enrichment or resource rewriting can often be done a lot cheaper for many spans at once, e.g.
+ * because lookups can be shared.
+ *
+ * <p>Batches are formed by a {@link BatchCollectingSpanProcessor} earlier in the chain. Consecutive
+ * batch processors pass the whole batch on to each other. If a span arrives via {@link
+ * #onEnd(ReadableSpan)} instead, e.g. because there is no collecting stage or a single-span
+ * processor sits in between, it is processed as a batch of one. Likewise, if the next processor is
+ * not batch-aware, it receives the spans of the batch one by one.
+ */
+public abstract class AbstractBatchChainingSpanProcessor extends AbstractChainingSpanProcessor {
+
+  private final boolean nextRequiresEnd;
+
+  /**
+   * @param next the next processor to be invoked after the one being constructed.
+   */
+  public AbstractBatchChainingSpanProcessor(SpanProcessor next) {
+    super(next);
+    nextRequiresEnd = next.isEndRequired();
+  }
+
+  /**
+   * Batch equivalent of {@link AbstractSimpleChainingSpanProcessor#doOnEnd(ReadableSpan)}.
+   *
+   * <p>The provided list is owned by the processor chain and may be modified in place: Removing a
+   * span drops it, replacing a span (e.g. with a {@link MutableSpan}) passes the replacement to the
+   * next processor. The list must not be retained after this method returns.
+   */
+  protected abstract void doOnEndBatch(List<ReadableSpan> spans);
+
+  /**
+   * @return true, if this implementation would like {@link #doOnEndBatch(List)} to be invoked.
+   */
+  protected abstract boolean requiresEnd();
+
+  /** Processes the given batch and passes the remaining spans to the next processor. */
+  public final void onEndBatch(List<ReadableSpan> spans) {
+    try {
+      if (requiresEnd()) {
+        long timer = SpanProcessorLatency.startTimer();
+        doOnEndBatch(spans);
+        SpanProcessorLatency.stopTimer(timer, this, SpanProcessorLatency.Phase.END_BATCH);
+      }
+    } finally {
+      if (nextRequiresEnd && !spans.isEmpty()) {
+        passToNext(next, spans);
+      }
+    }
+  }
+
+  @Override
+  public final void onEnd(ReadableSpan readableSpan) {
+    List<ReadableSpan> batch = new ArrayList<>(1);
+    batch.add(readableSpan);
+    onEndBatch(batch);
+  }
+
+  @Override
+  public final boolean isEndRequired() {
+    return requiresEnd() || nextRequiresEnd;
+  }
+
+  /**
+   * Passes the spans to the given processor, as a whole if it is batch-aware or one by one
+   * otherwise.
+   */
+  static void passToNext(SpanProcessor next, List<ReadableSpan> spans) {
+    if (next instanceof AbstractBatchChainingSpanProcessor) {
+      ((AbstractBatchChainingSpanProcessor) next).onEndBatch(spans);
+    } else {
+      RuntimeException error = null;
+      for (ReadableSpan span : spans) {
+        try {
+          next.onEnd(span);
+        } catch (RuntimeException e) {
+          // don't let a single failing span prevent the remaining ones from being processed
+          if (error == null) {
+            error = e;
+          } else {
+            error.addSuppressed(e);
+          }
+        }
+      }
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+}
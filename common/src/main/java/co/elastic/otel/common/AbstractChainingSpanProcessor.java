@@ -24,6 +24,7 @@ import io.opentelemetry.sdk.trace.ReadWriteSpan;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import java.util.Arrays;
+import javax.annotation.Nullable;
 
 /**
  * A @{@link SpanProcessor} which in addition to all standard operations is capable of modifying and
@@ -32,12 +33,23 @@ import java.util.Arrays;
  * <p>This is done by chaining processors and registering only the first processor with the SDK.
  * Subclasses must ensure that {@link SpanProcessor#onEnd(ReadableSpan)} is called for {@link
  * AbstractChainingSpanProcessor#next}.
+ *
+ * <p>Whether a processor requires the start and end callbacks is part of its configuration: {@link
+ * #requiresStart()} and {@link AbstractSimpleChainingSpanProcessor#requiresEnd()} must not change
+ * after construction, because they may be evaluated only once when the chain is built.
  */
 public abstract class AbstractChainingSpanProcessor implements SpanProcessor {
 
   protected final SpanProcessor next;
   private final boolean nextRequiresStart;
 
+  /**
+   * The fused group this processor is the first stage of, which then handles the span callbacks for
+   * all of its stages. Only set by {@link FusedChainingSpanProcessor} while the chain is assembled,
+   * before it is handed to the SDK.
+   */
+  @Nullable FusedChainingSpanProcessor fusedGroup;
+
   /**
    * @param next the next processor to be invoked after the one being constructed.
    */
@@ -54,6 +66,10 @@ public abstract class AbstractChainingSpanProcessor implements SpanProcessor {
   protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {}
 
   /**
+   * Must return the same value for the whole lifetime of the processor: Like the SDK does for
+   * {@link SpanProcessor#isStartRequired()}, the chain may evaluate it only once when it is
+   * assembled (see {@link FusedChainingSpanProcessor}).
+   *
    * @return true, if this implementation would like {@link #doOnStart(Context, ReadWriteSpan)} to
    *     be invoked.
    */
@@ -69,9 +85,16 @@ public abstract class AbstractChainingSpanProcessor implements SpanProcessor {
 
   @Override
   public final void onStart(Context context, ReadWriteSpan readWriteSpan) {
+    FusedChainingSpanProcessor group = fusedGroup;
+    if (group != null) {
+      group.onStart(context, readWriteSpan);
+      return;
+    }
     try {
       if (requiresStart()) {
+        long timer = SpanProcessorLatency.startTimer();
         doOnStart(context, readWriteSpan);
+        SpanProcessorLatency.stopTimer(timer, this, SpanProcessorLatency.Phase.START);
       }
     } finally {
       if (nextRequiresStart) {
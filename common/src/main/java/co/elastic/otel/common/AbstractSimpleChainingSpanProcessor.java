@@ -51,16 +51,26 @@ public abstract class AbstractSimpleChainingSpanProcessor extends AbstractChaini
   }
 
   /**
+   * Must return the same value for the whole lifetime of the processor, see {@link
+   * #requiresStart()}.
+   *
    * @return true, if this implementation would like {@link #doOnEnd(ReadableSpan)} to be invoked.
    */
   protected abstract boolean requiresEnd();
 
   @Override
   public final void onEnd(ReadableSpan readableSpan) {
+    FusedChainingSpanProcessor group = fusedGroup;
+    if (group != null) {
+      group.onEnd(readableSpan);
+      return;
+    }
     ReadableSpan mappedTo = readableSpan;
     try {
       if (requiresEnd()) {
+        long timer = SpanProcessorLatency.startTimer();
         mappedTo = doOnEnd(readableSpan);
+        SpanProcessorLatency.stopTimer(timer, this, SpanProcessorLatency.Phase.END);
       }
     } finally {
       if (mappedTo != null && nextRequiresEnd) {
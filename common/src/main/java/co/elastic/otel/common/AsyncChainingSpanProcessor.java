@@ -0,0 +1,375 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import co.elastic.otel.common.util.ExecutorUtils;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jctools.queues.MpscArrayQueue;
+
+/**
+ * A chaining {@link SpanProcessor} which hands ended spans over to background worker threads, which
+ * then invoke {@link SpanProcessor#onEnd(ReadableSpan)} of the next processor. All processors after
+ * this one in the chain therefore run off the application thread ending the span.
+ *
+ * <p>Every worker consumes from its own bounded multi-producer single-consumer queue. Application
+ * threads always enqueue to the same queue, which keeps the contention on the queues low. What
+ * happens if a queue is full is defined by the {@link OverflowPolicy}. An idle worker parks without
+ * a timeout and is unparked by the next producer, so idle workers don't cause any wakeups.
+ *
+ * <p>{@link SpanProcessor#onStart(Context, ReadWriteSpan)} is passed through synchronously, because
+ * it must have completed before the span is used by the application.
+ */
+public class AsyncChainingSpanProcessor implements SpanProcessor {
+
+  private static final Logger logger = Logger.getLogger(AsyncChainingSpanProcessor.class.getName());
+
+  /** Number of empty polls after which an idle worker parks instead of yielding. */
+  private static final int IDLE_SPINS = 100;
+
+  /** Upper bound for the back-off of producers waiting for space in a full queue. */
+  private static final long MAX_BLOCKED_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** Defines how spans are handled which cannot be enqueued because the queue is full. */
+  public enum OverflowPolicy {
+    /** The span is dropped and not passed to the next processor. */
+    DROP,
+    /** The next processor is invoked synchronously on the thread ending the span. */
+    CALLER_RUNS,
+    /** The thread ending the span waits until there is space in the queue. */
+    BLOCK
+  }
+
+  private final SpanProcessor next;
+
+  private final boolean nextRequiresStart;
+
+  private final boolean nextRequiresEnd;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final Worker[] workers;
+
+  private final LongAdder droppedSpans = new LongAdder();
+
+  private volatile boolean shutdown = false;
+
+  public static AsyncChainingSpanProcessorBuilder builder(SpanProcessor next) {
+    return new AsyncChainingSpanProcessorBuilder(next);
+  }
+
+  AsyncChainingSpanProcessor(
+      SpanProcessor next, int workerCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+    this.next = next;
+    this.nextRequiresStart = next.isStartRequired();
+    this.nextRequiresEnd = next.isEndRequired();
+    this.overflowPolicy = overflowPolicy;
+    ThreadFactory threadFactory = ExecutorUtils.threadFactory("span-processor-async", true);
+    workers = new Worker[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new Worker(queueCapacity, threadFactory, i);
+    }
+    for (Worker worker : workers) {
+      worker.thread.start();
+    }
+  }
+
+  @Override
+  public void onStart(Context context, ReadWriteSpan span) {
+    next.onStart(context, span);
+  }
+
+  @Override
+  public boolean isStartRequired() {
+    return nextRequiresStart;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (shutdown) {
+      droppedSpans.increment();
+      return;
+    }
+    Worker worker = workerFor(Thread.currentThread());
+    if (worker.offer(span)) {
+      return;
+    }
+    switch (overflowPolicy) {
+      case DROP:
+        droppedSpans.increment();
+        if (logger.isLoggable(Level.FINE)) {
+          logger.log(Level.FINE, "Dropping span because the queue is full: {0}", span);
+        }
+        break;
+      case CALLER_RUNS:
+        invokeNext(span);
+        break;
+      case BLOCK:
+        if (!worker.offerBlocking(span)) {
+          // the worker terminated while we were waiting
+          invokeNext(span);
+        }
+        break;
+    }
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return nextRequiresEnd;
+  }
+
+  /**
+   * Completes after all spans enqueued before the invocation of this method have been passed to the
+   * next processor and it has been flushed.
+   */
+  @Override
+  public CompletableResultCode forceFlush() {
+    if (shutdown) {
+      // the final drain of the workers already passed all spans on and flushed the next processor
+      return CompletableResultCode.ofSuccess();
+    }
+    CompletableResultCode result = new CompletableResultCode();
+    AtomicInteger pendingWorkers = new AtomicInteger(workers.length);
+    Runnable onWorkerFlushed =
+        () -> {
+          if (pendingWorkers.decrementAndGet() == 0) {
+            CompletableResultCode nextResult = next.forceFlush();
+            nextResult.whenComplete(
+                () -> {
+                  if (nextResult.isSuccess()) {
+                    result.succeed();
+                  } else {
+                    result.fail();
+                  }
+                });
+          }
+        };
+    for (Worker worker : workers) {
+      // the queues are FIFO, so the marker is processed after all previously enqueued spans
+      FlushMarker marker = new FlushMarker(onWorkerFlushed);
+      if (!worker.offerBlocking(marker)) {
+        // the worker terminated concurrently, after draining its queue
+        marker.onProcessed.run();
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    if (shutdown) {
+      return CompletableResultCode.ofSuccess();
+    }
+    CompletableResultCode result = new CompletableResultCode();
+    CompletableResultCode flushResult = forceFlush();
+    shutdown = true;
+    flushResult.whenComplete(
+        () -> {
+          List<CompletableResultCode> terminations = new ArrayList<>();
+          for (Worker worker : workers) {
+            worker.stop();
+            terminations.add(worker.terminationResult);
+          }
+          // the workers pass on the spans enqueued concurrently to the shutdown before terminating
+          CompletableResultCode allTerminated = CompletableResultCode.ofAll(terminations);
+          allTerminated.whenComplete(
+              () -> {
+                CompletableResultCode nextResult = next.shutdown();
+                nextResult.whenComplete(
+                    () -> {
+                      if (flushResult.isSuccess() && nextResult.isSuccess()) {
+                        result.succeed();
+                      } else {
+                        result.fail();
+                      }
+                    });
+              });
+        });
+    return result;
+  }
+
+  /** The number of spans which have not been passed to the next processor. */
+  long getDroppedSpans() {
+    return droppedSpans.sum();
+  }
+
+  private Worker workerFor(Thread thread) {
+    if (workers.length == 1) {
+      return workers[0];
+    }
+    return workers[(int) ((thread.getId() & Long.MAX_VALUE) % workers.length)];
+  }
+
+  private void invokeNext(ReadableSpan span) {
+    if (!nextRequiresEnd) {
+      return;
+    }
+    try {
+      next.onEnd(span);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Failed to process ended span asynchronously", t);
+    }
+  }
+
+  private static class FlushMarker {
+
+    final Runnable onProcessed;
+
+    FlushMarker(Runnable onProcessed) {
+      this.onProcessed = onProcessed;
+    }
+  }
+
+  /**
+   * Consumes the queue of elements on its own thread. Handing elements over relies on two pairs of
+   * flags which are each written by one side before reading the other side's state. As enqueuing is
+   * a CAS on the queue, either the producer observes the flag or the consumer observes the element:
+   *
+   * <ul>
+   *   <li>{@link #parked} is set before the worker checks the queue a last time and parks, the
+   *       producer unparks the worker if it is set after enqueuing.
+   *   <li>{@link #terminated} is set before the worker drains the queue a last time, a producer
+   *       enqueuing afterward drains the queue itself.
+   * </ul>
+   */
+  private class Worker implements Runnable {
+
+    final MpscArrayQueue<Object> queue;
+
+    final Thread thread;
+
+    private volatile boolean running = true;
+
+    private volatile boolean parked = false;
+
+    private volatile boolean terminated = false;
+
+    /** Completes once the worker has passed on the last span enqueued before it terminated. */
+    final CompletableResultCode terminationResult = new CompletableResultCode();
+
+    Worker(int capacity, ThreadFactory threadFactory, int index) {
+      queue = new MpscArrayQueue<>(capacity);
+      thread = threadFactory.newThread(this);
+      thread.setName(thread.getName() + "-" + index);
+    }
+
+    boolean offer(Object element) {
+      if (!queue.offer(element)) {
+        return false;
+      }
+      if (parked) {
+        LockSupport.unpark(thread);
+      }
+      if (terminated) {
+        drainAfterTermination();
+      }
+      return true;
+    }
+
+    /**
+     * Waits until there is space in the queue.
+     *
+     * @return false, if the element could not be enqueued because the worker terminated
+     */
+    boolean offerBlocking(Object element) {
+      long parkNanos = 1;
+      while (!offer(element)) {
+        if (terminated) {
+          return false;
+        }
+        LockSupport.parkNanos(parkNanos);
+        parkNanos = Math.min(parkNanos * 2, MAX_BLOCKED_PARK_NANOS);
+      }
+      return true;
+    }
+
+    void stop() {
+      running = false;
+      LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+      int idleCount = 0;
+      while (running) {
+        Object element = queue.relaxedPoll();
+        if (element == null) {
+          idle(idleCount++);
+        } else {
+          idleCount = 0;
+          process(element);
+        }
+      }
+      // spans enqueued concurrently to the shutdown are still passed on
+      try {
+        synchronized (this) {
+          terminated = true;
+          drain();
+        }
+      } finally {
+        terminationResult.succeed();
+      }
+    }
+
+    private synchronized void drainAfterTermination() {
+      // the lock ensures that there is still only a single consumer at a time
+      drain();
+    }
+
+    private void drain() {
+      Object element;
+      while ((element = queue.poll()) != null) {
+        process(element);
+      }
+    }
+
+    private void process(Object element) {
+      if (element instanceof FlushMarker) {
+        ((FlushMarker) element).onProcessed.run();
+      } else {
+        invokeNext((ReadableSpan) element);
+      }
+    }
+
+    private void idle(int idleCount) {
+      if (idleCount < IDLE_SPINS) {
+        Thread.yield();
+        return;
+      }
+      parked = true;
+      // re-check after publishing the flag, a producer may have enqueued before seeing it
+      if (running && queue.isEmpty()) {
+        LockSupport.park(this);
+      }
+      parked = false;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import co.elastic.otel.common.config.PropertiesApplier;
+import com.google.auto.service.AutoService;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import java.util.Locale;
+
+@AutoService(ChainingSpanProcessorAutoConfiguration.class)
+public class AsyncChainingSpanProcessorAutoConfig
+    implements ChainingSpanProcessorAutoConfiguration {
+
+  static final String ENABLED_OPTION =
+      "elastic.otel.java.experimental.span.processor.async.enabled";
+  static final String WORKERS_OPTION =
+      "elastic.otel.java.experimental.span.processor.async.workers";
+  static final String QUEUE_SIZE_OPTION =
+      "elastic.otel.java.experimental.span.processor.async.queue.size";
+  static final String OVERFLOW_POLICY_OPTION =
+      "elastic.otel.java.experimental.span.processor.async.overflow.policy";
+
+  @Override
+  public void registerSpanProcessors(
+      ConfigProperties properties, ChainingSpanProcessorRegisterer registerer) {
+    if (!properties.getBoolean(ENABLED_OPTION, false)) {
+      return;
+    }
+    PropertiesApplier props = new PropertiesApplier(properties);
+    registerer.register(
+        next -> {
+          AsyncChainingSpanProcessorBuilder builder = AsyncChainingSpanProcessor.builder(next);
+          props.applyInt(WORKERS_OPTION, builder::workerCount);
+          props.applyInt(QUEUE_SIZE_OPTION, builder::queueCapacity);
+          props.applyString(
+              OVERFLOW_POLICY_OPTION,
+              policy ->
+                  builder.overflowPolicy(
+                      AsyncChainingSpanProcessor.OverflowPolicy.valueOf(
+                          policy.toUpperCase(Locale.ROOT))));
+          return builder.build();
+        },
+        ChainingSpanProcessorRegisterer.ORDER_ASYNC_STAGE);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.sdk.trace.SpanProcessor;
+
+public class AsyncChainingSpanProcessorBuilder {
+
+  private final SpanProcessor next;
+  private int workerCount = 1;
+  private int queueCapacity = 2048;
+  private AsyncChainingSpanProcessor.OverflowPolicy overflowPolicy =
+      AsyncChainingSpanProcessor.OverflowPolicy.CALLER_RUNS;
+
+  AsyncChainingSpanProcessorBuilder(SpanProcessor next) {
+    this.next = next;
+  }
+
+  public AsyncChainingSpanProcessor build() {
+    return new AsyncChainingSpanProcessor(next, workerCount, queueCapacity, overflowPolicy);
+  }
+
+  /**
+   * The number of background threads invoking the next processor. Each worker has its own queue.
+   */
+  public AsyncChainingSpanProcessorBuilder workerCount(int workerCount) {
+    if (workerCount < 1) {
+      throw new IllegalArgumentException("workerCount must be positive, but was " + workerCount);
+    }
+    this.workerCount = workerCount;
+    return this;
+  }
+
+  /**
+   * The capacity of the queue of each worker in number of spans. The value is rounded up to the
+   * next power of two.
+   */
+  public AsyncChainingSpanProcessorBuilder queueCapacity(int queueCapacity) {
+    if (queueCapacity < 2) {
+      throw new IllegalArgumentException(
+          "queueCapacity must be at least two, but was " + queueCapacity);
+    }
+    this.queueCapacity = queueCapacity;
+    return this;
+  }
+
+  /**
+   * Defines what happens with spans which cannot be enqueued because the queue is full. Defaults to
+   * {@link AsyncChainingSpanProcessor.OverflowPolicy#CALLER_RUNS}, so that no spans are lost.
+   */
+  public AsyncChainingSpanProcessorBuilder overflowPolicy(
+      AsyncChainingSpanProcessor.OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+}
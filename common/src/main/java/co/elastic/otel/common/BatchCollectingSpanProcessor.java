@@ -0,0 +1,162 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import co.elastic.otel.common.util.ExecutorUtils;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Gathers ended spans into batches, which are passed on to the next processor once they have
+ * reached a given size or the oldest span has been waiting for a given time. If the next processor
+ * is an {@link AbstractBatchChainingSpanProcessor}, it receives the batch as a whole.
+ *
+ * <p>Full batches are passed on by the thread ending the last span, batches which are due because
+ * of their age by a background thread. After a shutdown, ended spans are passed on directly.
+ */
+public class BatchCollectingSpanProcessor extends AbstractChainingSpanProcessor {
+
+  private static final Logger logger =
+      Logger.getLogger(BatchCollectingSpanProcessor.class.getName());
+
+  private final int maxBatchSize;
+
+  private final long maxDelayNanos;
+
+  private final boolean nextRequiresEnd;
+
+  private final ScheduledExecutorService timer;
+
+  // guarded by this
+  @Nullable private List<ReadableSpan> batch;
+
+  // guarded by this
+  private long batchStartNanos;
+
+  // guarded by this
+  private boolean shutdown;
+
+  public BatchCollectingSpanProcessor(SpanProcessor next, int maxBatchSize, Duration maxDelay) {
+    super(next);
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive, but was " + maxBatchSize);
+    }
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelay.toNanos();
+    this.nextRequiresEnd = next.isEndRequired();
+    timer =
+        Executors.newSingleThreadScheduledExecutor(
+            ExecutorUtils.threadFactory("span-batcher", true));
+    // checking four times per delay bounds the waiting time of a span to 1.25 times the max delay
+    long checkInterval = Math.max(TimeUnit.MILLISECONDS.toNanos(1), maxDelayNanos / 4);
+    timer.scheduleWithFixedDelay(
+        this::passOnDueBatch, checkInterval, checkInterval, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  protected boolean requiresStart() {
+    return false;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (!nextRequiresEnd) {
+      return;
+    }
+    List<ReadableSpan> fullBatch = null;
+    synchronized (this) {
+      if (!shutdown) {
+        if (batch == null) {
+          batch = new ArrayList<>(maxBatchSize);
+          batchStartNanos = System.nanoTime();
+        }
+        batch.add(span);
+        if (batch.size() < maxBatchSize) {
+          return;
+        }
+        fullBatch = batch;
+        batch = null;
+      }
+    }
+    if (fullBatch != null) {
+      AbstractBatchChainingSpanProcessor.passToNext(next, fullBatch);
+    } else {
+      // nothing would pass on a batch collected after the shutdown
+      next.onEnd(span);
+    }
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return nextRequiresEnd;
+  }
+
+  @Override
+  protected CompletableResultCode doForceFlush() {
+    passOnPendingBatch();
+    return CompletableResultCode.ofSuccess();
+  }
+
+  @Override
+  protected CompletableResultCode doShutdown() {
+    synchronized (this) {
+      shutdown = true;
+    }
+    ExecutorUtils.shutdownAndWaitTermination(timer);
+    passOnPendingBatch();
+    return CompletableResultCode.ofSuccess();
+  }
+
+  private void passOnDueBatch() {
+    List<ReadableSpan> dueBatch;
+    synchronized (this) {
+      if (batch == null || System.nanoTime() - batchStartNanos < maxDelayNanos) {
+        return;
+      }
+      dueBatch = batch;
+      batch = null;
+    }
+    try {
+      AbstractBatchChainingSpanProcessor.passToNext(next, dueBatch);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Failed to process batch of ended spans", t);
+    }
+  }
+
+  private void passOnPendingBatch() {
+    List<ReadableSpan> pendingBatch;
+    synchronized (this) {
+      pendingBatch = batch;
+      batch = null;
+    }
+    if (pendingBatch != null) {
+      AbstractBatchChainingSpanProcessor.passToNext(next, pendingBatch);
+    }
+  }
+}
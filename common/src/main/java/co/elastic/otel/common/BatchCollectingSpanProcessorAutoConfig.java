@@ -0,0 +1,51 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import com.google.auto.service.AutoService;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import java.time.Duration;
+
+@AutoService(ChainingSpanProcessorAutoConfiguration.class)
+public class BatchCollectingSpanProcessorAutoConfig
+    implements ChainingSpanProcessorAutoConfiguration {
+
+  static final String ENABLED_OPTION =
+      "elastic.otel.java.experimental.span.processor.batch.enabled";
+  static final String MAX_SIZE_OPTION =
+      "elastic.otel.java.experimental.span.processor.batch.max.size";
+  static final String MAX_DELAY_OPTION =
+      "elastic.otel.java.experimental.span.processor.batch.max.delay";
+
+  private static final int DEFAULT_MAX_SIZE = 512;
+  private static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(100);
+
+  @Override
+  public void registerSpanProcessors(
+      ConfigProperties properties, ChainingSpanProcessorRegisterer registerer) {
+    if (!properties.getBoolean(ENABLED_OPTION, false)) {
+      return;
+    }
+    int maxSize = properties.getInt(MAX_SIZE_OPTION, DEFAULT_MAX_SIZE);
+    Duration maxDelay = properties.getDuration(MAX_DELAY_OPTION, DEFAULT_MAX_DELAY);
+    registerer.register(
+        next -> new BatchCollectingSpanProcessor(next, maxSize, maxDelay),
+        ChainingSpanProcessorRegisterer.ORDER_BATCH_STAGE);
+  }
+}
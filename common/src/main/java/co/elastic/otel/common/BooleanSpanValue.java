@@ -0,0 +1,125 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+
+/**
+ * A {@link SpanValue} holding a primitive {@code boolean} without boxing. Spans without a value
+ * attached read as {@code false}.
+ *
+ * <p>Atomic updates are supported via {@link #compareAndSet(Span, boolean, boolean)}, which for
+ * example allows to perform an action exactly once per span.
+ *
+ * <p>Just like {@link SpanValue}s, {@link BooleanSpanValue}s can either be dense or sparse (see
+ * {@link SpanValue} for details).
+ */
+public final class BooleanSpanValue extends PrimitiveSpanValue {
+
+  private BooleanSpanValue(boolean dense) {
+    super(dense);
+  }
+
+  /**
+   * Creates a dense {@link BooleanSpanValue}, see {@link SpanValue#createDense()} for the
+   * implications.
+   */
+  public static BooleanSpanValue createDense() {
+    return new BooleanSpanValue(true);
+  }
+
+  /**
+   * Creates a sparse {@link BooleanSpanValue}, see {@link SpanValue#createSparse()} for the
+   * implications.
+   */
+  public static BooleanSpanValue createSparse() {
+    return new BooleanSpanValue(false);
+  }
+
+  /** Reads the current value for the given span, false if none was set. */
+  public boolean get(Span span) {
+    return getRaw(span) != 0L;
+  }
+
+  /** See {@link BooleanSpanValue#get(Span)}. */
+  public boolean get(ReadableSpan span) {
+    return getRaw(span) != 0L;
+  }
+
+  /** See {@link BooleanSpanValue#get(Span)}. */
+  public boolean get(ReadWriteSpan span) {
+    return getRaw(span) != 0L;
+  }
+
+  /** Sets the value for the given span. */
+  public void set(Span span, boolean value) {
+    setRaw(span, toRaw(value));
+  }
+
+  /** See {@link BooleanSpanValue#set(Span, boolean)}. */
+  public void set(ReadableSpan span, boolean value) {
+    setRaw(span, toRaw(value));
+  }
+
+  /** See {@link BooleanSpanValue#set(Span, boolean)}. */
+  public void set(ReadWriteSpan span, boolean value) {
+    setRaw(span, toRaw(value));
+  }
+
+  /**
+   * Atomically sets the value for the given span to {@code update} if the current value equals
+   * {@code expect}.
+   *
+   * @return true, if the value was updated
+   */
+  public boolean compareAndSet(Span span, boolean expect, boolean update) {
+    return compareAndSetRaw(span, toRaw(expect), toRaw(update));
+  }
+
+  /** See {@link BooleanSpanValue#compareAndSet(Span, boolean, boolean)}. */
+  public boolean compareAndSet(ReadableSpan span, boolean expect, boolean update) {
+    return compareAndSetRaw(span, toRaw(expect), toRaw(update));
+  }
+
+  /** See {@link BooleanSpanValue#compareAndSet(Span, boolean, boolean)}. */
+  public boolean compareAndSet(ReadWriteSpan span, boolean expect, boolean update) {
+    return compareAndSetRaw(span, toRaw(expect), toRaw(update));
+  }
+
+  /** Resets the value for the given span to false. */
+  public void clear(Span span) {
+    clearRaw(span);
+  }
+
+  /** See {@link BooleanSpanValue#clear(Span)}. */
+  public void clear(ReadableSpan span) {
+    clearRaw(span);
+  }
+
+  /** See {@link BooleanSpanValue#clear(Span)}. */
+  public void clear(ReadWriteSpan span) {
+    clearRaw(span);
+  }
+
+  private static long toRaw(boolean value) {
+    return value ? 1L : 0L;
+  }
+}
@@ -27,6 +27,18 @@ public interface ChainingSpanProcessorRegisterer {
   int ORDER_DEFAULT = 0;
   int ORDER_LAST = Integer.MAX_VALUE;
 
+  /**
+   * The order of the {@link AsyncChainingSpanProcessor} if it has been enabled. Processors which
+   * would like to be run off the application threads can opt in by registering with a higher order.
+   */
+  int ORDER_ASYNC_STAGE = 1000;
+
+  /**
+   * The order of the {@link BatchCollectingSpanProcessor} if it has been enabled. {@link
+   * AbstractBatchChainingSpanProcessor}s registered with a higher order receive whole batches.
+   */
+  int ORDER_BATCH_STAGE = 2000;
+
   /**
    * Registered the provided processor (represented by its factory method) to be autoconfigured with
    * default order.
@@ -25,6 +25,7 @@ import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
 import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ServiceLoader;
@@ -33,6 +34,15 @@ import java.util.function.Function;
 @AutoService(AutoConfigurationCustomizerProvider.class)
 public class ChainingSpanProcessorsInstaller implements AutoConfigurationCustomizerProvider {
 
+  static final String FAN_OUT_EXPORT_ENABLED_OPTION =
+      "elastic.otel.java.experimental.span.export.fanout.enabled";
+
+  static final String LATENCY_ENABLED_OPTION =
+      "elastic.otel.java.experimental.span.processor.latency.enabled";
+
+  static final String LATENCY_SAMPLING_INTERVAL_OPTION =
+      "elastic.otel.java.experimental.span.processor.latency.sampling.interval";
+
   @Override
   public void customize(AutoConfigurationCustomizer autoConfigurationCustomizer) {
     List<ChainingSpanProcessorAutoConfiguration> autoConfigs = new ArrayList<>();
@@ -44,15 +54,33 @@ public class ChainingSpanProcessorsInstaller implements AutoConfigurationCustomi
     if (!autoConfigs.isEmpty()) {
 
       MutableCompositeSpanProcessor exporterProcessor = new MutableCompositeSpanProcessor();
+      FanOutExportSpanProcessor[] fanOutProcessor = new FanOutExportSpanProcessor[1];
+
+      // allows the fan-out processor to take over the exporters from their BatchSpanProcessors,
+      // exporters wrapped by customizers running later on stay with their processors
+      autoConfigurationCustomizer.addSpanExporterCustomizer(
+          (exporter, config) ->
+              config.getBoolean(FAN_OUT_EXPORT_ENABLED_OPTION, false)
+                  ? FanOutExportSpanProcessor.detachableLifecycle(exporter)
+                  : exporter);
 
       autoConfigurationCustomizer.addSpanProcessorCustomizer(
           (spanProcessor, config) -> {
             if (isSpanExportingProcessor(spanProcessor)) {
-              if (exporterProcessor.isEmpty()) {
+              boolean isFirst = exporterProcessor.isEmpty();
+              if (spanProcessor instanceof BatchSpanProcessor
+                  && config.getBoolean(FAN_OUT_EXPORT_ENABLED_OPTION, false)) {
+                if (fanOutProcessor[0] == null) {
+                  fanOutProcessor[0] = createFanOutProcessor(config);
+                  exporterProcessor.addDelegate(fanOutProcessor[0]);
+                }
+                fanOutProcessor[0].addExporter((BatchSpanProcessor) spanProcessor);
+              } else {
                 exporterProcessor.addDelegate(spanProcessor);
+              }
+              if (isFirst) {
                 return createProcessorChain(autoConfigs, config, exporterProcessor);
               } else {
-                exporterProcessor.addDelegate(spanProcessor);
                 // return NOOP, because exporterProcessor is already registered
                 return SpanProcessor.composite();
               }
@@ -62,11 +90,27 @@ public class ChainingSpanProcessorsInstaller implements AutoConfigurationCustomi
     }
   }
 
+  private static FanOutExportSpanProcessor createFanOutProcessor(ConfigProperties config) {
+    // the fan-out processor shares the snapshots taken by the chained processors
+    SpanDataSnapshots.setEnabled(true);
+    // uses the same settings as the BatchSpanProcessors it replaces
+    return new FanOutExportSpanProcessor(
+        config.getInt("otel.bsp.max.queue.size", 2048),
+        config.getInt("otel.bsp.max.export.batch.size", 512),
+        config.getDuration("otel.bsp.schedule.delay", Duration.ofMillis(5000)),
+        config.getDuration("otel.bsp.export.timeout", Duration.ofMillis(30000)));
+  }
+
   private SpanProcessor createProcessorChain(
       List<ChainingSpanProcessorAutoConfiguration> chainedProcessorAutoConfigs,
       ConfigProperties properties,
       MutableCompositeSpanProcessor terminalProcessor) {
 
+    if (properties.getBoolean(LATENCY_ENABLED_OPTION, false)) {
+      SpanProcessorLatency.setSamplingInterval(
+          Math.max(1, properties.getInt(LATENCY_SAMPLING_INTERVAL_OPTION, 64)));
+    }
+
     List<ProcessorFactoryWithOrder> factories = new ArrayList<>();
 
     for (ChainingSpanProcessorAutoConfiguration autoConfig : chainedProcessorAutoConfigs) {
@@ -83,11 +127,12 @@ public class ChainingSpanProcessorsInstaller implements AutoConfigurationCustomi
     // sort from highest (= last processor) to first
     factories.sort((a, b) -> Integer.compare(b.order, a.order));
 
-    SpanProcessor result = terminalProcessor;
+    List<Function<SpanProcessor, SpanProcessor>> orderedFactories = new ArrayList<>();
     for (ProcessorFactoryWithOrder fac : factories) {
-      result = fac.factory.apply(result);
+      // prepend, so that the list is ordered from first to last processor
+      orderedFactories.add(0, fac.factory);
     }
-    return result;
+    return FusedChainingSpanProcessor.createChain(orderedFactories, terminalProcessor);
   }
 
   private static class ProcessorFactoryWithOrder {
@@ -16,25 +16,19 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package co.elastic.otel.disruptor;
+package co.elastic.otel.common;
 
-import java.util.ArrayList;
-import java.util.List;
+import io.opentelemetry.api.trace.Span;
 
-public class FreezableList<T> {
+/**
+ * Atomic access to a field dedicated to a single {@link WellKnownSpanValue}, see {@link
+ * SpanValueStorageProvider#getDedicatedField(WellKnownSpanValue)}.
+ */
+public interface DedicatedSpanField {
 
-  private List<T> list = new ArrayList<>();
-  private boolean isFrozen = false;
+  Object get(Span span);
 
-  public synchronized void addIfNotFrozen(T value) {
-    if (isFrozen) {
-      return;
-    }
-    list.add(value);
-  }
+  void set(Span span, Object value);
 
-  public synchronized List<T> freezeAndGet() {
-    isFrozen = true;
-    return list;
-  }
+  boolean compareAndSet(Span span, Object expect, Object update);
 }
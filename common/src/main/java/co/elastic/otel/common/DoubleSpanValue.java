@@ -0,0 +1,153 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+
+/**
+ * A {@link SpanValue} holding a primitive {@code double} without boxing. Spans without a value
+ * attached read as zero.
+ *
+ * <p>In addition to plain reads and writes, atomic updates via {@link #addAndGet(Span, double)} and
+ * {@link #compareAndSet(Span, double, double)} are supported. Like for {@link
+ * java.lang.Double#equals(Object)}, the comparison is performed on the bit representation of the
+ * values, with all NaN values collapsed to the canonical one. So NaN equals NaN, while {@code 0.0}
+ * and {@code -0.0} differ.
+ *
+ * <p>Just like {@link SpanValue}s, {@link DoubleSpanValue}s can either be dense or sparse (see
+ * {@link SpanValue} for details).
+ */
+public final class DoubleSpanValue extends PrimitiveSpanValue {
+
+  private DoubleSpanValue(boolean dense) {
+    super(dense);
+  }
+
+  /**
+   * Creates a dense {@link DoubleSpanValue}, see {@link SpanValue#createDense()} for the
+   * implications.
+   */
+  public static DoubleSpanValue createDense() {
+    return new DoubleSpanValue(true);
+  }
+
+  /**
+   * Creates a sparse {@link DoubleSpanValue}, see {@link SpanValue#createSparse()} for the
+   * implications.
+   */
+  public static DoubleSpanValue createSparse() {
+    return new DoubleSpanValue(false);
+  }
+
+  /** Reads the current value for the given span, zero if none was set. */
+  public double get(Span span) {
+    return Double.longBitsToDouble(getRaw(span));
+  }
+
+  /** See {@link DoubleSpanValue#get(Span)}. */
+  public double get(ReadableSpan span) {
+    return Double.longBitsToDouble(getRaw(span));
+  }
+
+  /** See {@link DoubleSpanValue#get(Span)}. */
+  public double get(ReadWriteSpan span) {
+    return Double.longBitsToDouble(getRaw(span));
+  }
+
+  /** Sets the value for the given span. */
+  public void set(Span span, double value) {
+    setRaw(span, Double.doubleToLongBits(value));
+  }
+
+  /** See {@link DoubleSpanValue#set(Span, double)}. */
+  public void set(ReadableSpan span, double value) {
+    setRaw(span, Double.doubleToLongBits(value));
+  }
+
+  /** See {@link DoubleSpanValue#set(Span, double)}. */
+  public void set(ReadWriteSpan span, double value) {
+    setRaw(span, Double.doubleToLongBits(value));
+  }
+
+  /**
+   * Atomically adds the given delta to the value of the given span.
+   *
+   * @return the updated value
+   */
+  public double addAndGet(Span span, double delta) {
+    return addAndGetImpl(span, delta);
+  }
+
+  /** See {@link DoubleSpanValue#addAndGet(Span, double)}. */
+  public double addAndGet(ReadableSpan span, double delta) {
+    return addAndGetImpl(span, delta);
+  }
+
+  /** See {@link DoubleSpanValue#addAndGet(Span, double)}. */
+  public double addAndGet(ReadWriteSpan span, double delta) {
+    return addAndGetImpl(span, delta);
+  }
+
+  /**
+   * Atomically sets the value for the given span to {@code update} if the current value equals
+   * {@code expect}.
+   *
+   * @return true, if the value was updated
+   */
+  public boolean compareAndSet(Span span, double expect, double update) {
+    return compareAndSetRaw(span, Double.doubleToLongBits(expect), Double.doubleToLongBits(update));
+  }
+
+  /** See {@link DoubleSpanValue#compareAndSet(Span, double, double)}. */
+  public boolean compareAndSet(ReadableSpan span, double expect, double update) {
+    return compareAndSetRaw(span, Double.doubleToLongBits(expect), Double.doubleToLongBits(update));
+  }
+
+  /** See {@link DoubleSpanValue#compareAndSet(Span, double, double)}. */
+  public boolean compareAndSet(ReadWriteSpan span, double expect, double update) {
+    return compareAndSetRaw(span, Double.doubleToLongBits(expect), Double.doubleToLongBits(update));
+  }
+
+  private double addAndGetImpl(Object span, double delta) {
+    while (true) {
+      long currentBits = getRaw(span);
+      double updated = Double.longBitsToDouble(currentBits) + delta;
+      if (compareAndSetRaw(span, currentBits, Double.doubleToLongBits(updated))) {
+        return updated;
+      }
+    }
+  }
+
+  /** Resets the value for the given span to zero. */
+  public void clear(Span span) {
+    clearRaw(span);
+  }
+
+  /** See {@link DoubleSpanValue#clear(Span)}. */
+  public void clear(ReadableSpan span) {
+    clearRaw(span);
+  }
+
+  /** See {@link DoubleSpanValue#clear(Span)}. */
+  public void clear(ReadWriteSpan span) {
+    clearRaw(span);
+  }
+}
@@ -25,4 +25,23 @@ public interface ElasticAttributes {
 
   AttributeKey<List<String>> PROFILER_STACK_TRACE_IDS =
       AttributeKey.stringArrayKey("elastic.profiler_stack_trace_ids");
+
+  AttributeKey<Long> LOCAL_ROOT_SPAN_COUNT = AttributeKey.longKey("elastic.local_root.span_count");
+
+  /** Prefix of the per {@code SpanKind} span counts, followed by the lower case kind. */
+  String LOCAL_ROOT_SPAN_COUNT_BY_KIND_PREFIX = "elastic.local_root.span_count_by_kind.";
+
+  AttributeKey<Long> LOCAL_ROOT_ERROR_COUNT =
+      AttributeKey.longKey("elastic.local_root.error_count");
+
+  AttributeKey<Long> LOCAL_ROOT_CHILDREN_DURATION =
+      AttributeKey.longKey("elastic.local_root.children_duration_ns");
+
+  AttributeKey<Long> LOCAL_ROOT_SELF_TIME = AttributeKey.longKey("elastic.local_root.self_time_ns");
+
+  AttributeKey<String> LOCAL_ROOT_SLOWEST_CHILD_NAME =
+      AttributeKey.stringKey("elastic.local_root.slowest_child.name");
+
+  AttributeKey<Long> LOCAL_ROOT_SLOWEST_CHILD_DURATION =
+      AttributeKey.longKey("elastic.local_root.slowest_child.duration_ns");
 }
@@ -0,0 +1,505 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import co.elastic.otel.common.util.ExecutorUtils;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import org.jctools.queues.MpscArrayQueue;
+
+/**
+ * Exports ended spans to multiple exporters while converting every span to {@link SpanData} only
+ * once. This replaces one {@link BatchSpanProcessor} per exporter, which would each queue the span
+ * and create their own snapshot.
+ *
+ * <p>Ended spans are converted and put into a single queue, from which batches are formed. Every
+ * exporter has its own lane with a dedicated thread, which receives a reference to the same
+ * read-only batch. Failed exports are retried with exponential backoff per lane, so a slow or
+ * unavailable backend doesn't delay the others. If a lane falls behind, its oldest batches are
+ * dropped. Handing batches and flush requests to a lane never blocks the collecting thread: Flush
+ * requests are kept separately from the bounded batch queue and complete once all batches queued
+ * before them have been exported or dropped.
+ *
+ * <p>The exporters are taken over from the {@link BatchSpanProcessor}s originally created for them.
+ * If an exporter has been wrapped with {@link #detachableLifecycle(SpanExporter)}, its processor is
+ * shut down right away without shutting down the exporter. Otherwise the processor is kept to
+ * manage the lifecycle of its exporter: It never receives any spans and is shut down together with
+ * this processor.
+ */
+class FanOutExportSpanProcessor implements SpanProcessor {
+
+  private static final Logger logger = Logger.getLogger(FanOutExportSpanProcessor.class.getName());
+
+  private static final int MAX_EXPORT_ATTEMPTS = 3;
+
+  private static final long INITIAL_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  private final MpscArrayQueue<SpanData> queue;
+
+  private final int maxExportBatchSize;
+
+  private final long scheduleDelayNanos;
+
+  private final long exportTimeoutNanos;
+
+  private final int laneCapacity;
+
+  private final List<Lane> lanes = new CopyOnWriteArrayList<>();
+
+  private final ConcurrentLinkedQueue<Runnable> flushRequests = new ConcurrentLinkedQueue<>();
+
+  private final LongAdder droppedSpans = new LongAdder();
+
+  private final ThreadFactory threadFactory = ExecutorUtils.threadFactory("span-fanout", true);
+
+  private final Thread collectorThread;
+
+  private volatile boolean shutdown = false;
+
+  private volatile boolean collectorStopped = false;
+
+  /** Completes once the collector thread has accounted for the last enqueued span. */
+  private final CompletableResultCode collectorResult = new CompletableResultCode();
+
+  FanOutExportSpanProcessor(
+      int maxQueueSize, int maxExportBatchSize, Duration scheduleDelay, Duration exportTimeout) {
+    this.queue = new MpscArrayQueue<>(maxQueueSize);
+    this.maxExportBatchSize = maxExportBatchSize;
+    this.scheduleDelayNanos = scheduleDelay.toNanos();
+    this.exportTimeoutNanos = exportTimeout.toNanos();
+    this.laneCapacity = Math.max(1, maxQueueSize / maxExportBatchSize);
+    collectorThread = threadFactory.newThread(this::collectBatches);
+    collectorThread.start();
+  }
+
+  /**
+   * Wraps the given exporter so that its lifecycle can be taken over from the {@link
+   * BatchSpanProcessor} it is passed to, see {@link #addExporter(BatchSpanProcessor)}.
+   */
+  static SpanExporter detachableLifecycle(SpanExporter exporter) {
+    return new DetachableExporter(exporter);
+  }
+
+  /** Exports all spans ended after this call also to the exporter of the given processor. */
+  void addExporter(BatchSpanProcessor processor) {
+    SpanExporter exporter = processor.getSpanExporter();
+    Lane lane;
+    if (exporter instanceof DetachableExporter) {
+      DetachableExporter detachable = (DetachableExporter) exporter;
+      detachable.detached = true;
+      // stops the idle worker thread of the processor, the exporter is shut down by the lane
+      processor.shutdown();
+      lane = new Lane(detachable.delegate, null);
+    } else {
+      lane = new Lane(exporter, processor);
+    }
+    lanes.add(lane);
+    lane.thread.start();
+  }
+
+  @Override
+  public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+  @Override
+  public boolean isStartRequired() {
+    return false;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (!span.getSpanContext().isSampled()) {
+      return;
+    }
+    if (shutdown) {
+      droppedSpans.increment();
+      return;
+    }
+    if (!queue.offer(SpanDataSnapshots.get(span))) {
+      droppedSpans.increment();
+      return;
+    }
+    if (collectorStopped) {
+      // shut down concurrently, nobody else consumes the queue anymore
+      dropLeftovers();
+      return;
+    }
+    if (queue.size() >= maxExportBatchSize) {
+      LockSupport.unpark(collectorThread);
+    }
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return true;
+  }
+
+  /**
+   * Completes after all spans ended before this call have been exported or dropped by all lanes and
+   * all exporters have been flushed.
+   */
+  @Override
+  public CompletableResultCode forceFlush() {
+    if (shutdown) {
+      return CompletableResultCode.ofSuccess();
+    }
+    CompletableResultCode result = new CompletableResultCode();
+    flushRequests.add(
+        () -> {
+          List<Lane> currentLanes = new ArrayList<>(lanes);
+          if (currentLanes.isEmpty()) {
+            result.succeed();
+            return;
+          }
+          AtomicInteger pendingLanes = new AtomicInteger(currentLanes.size());
+          List<CompletableResultCode> exporterResults = new CopyOnWriteArrayList<>();
+          for (Lane lane : currentLanes) {
+            lane.enqueueMarker(
+                () -> {
+                  exporterResults.add(lane.exporter.flush());
+                  if (pendingLanes.decrementAndGet() == 0) {
+                    CompletableResultCode all = CompletableResultCode.ofAll(exporterResults);
+                    all.whenComplete(
+                        () -> {
+                          if (all.isSuccess()) {
+                            result.succeed();
+                          } else {
+                            result.fail();
+                          }
+                        });
+                  }
+                });
+          }
+        });
+    LockSupport.unpark(collectorThread);
+    return result;
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    if (shutdown) {
+      return CompletableResultCode.ofSuccess();
+    }
+    CompletableResultCode flushResult = forceFlush();
+    shutdown = true;
+    CompletableResultCode result = new CompletableResultCode();
+    LockSupport.unpark(collectorThread);
+    // the collector stops after handling the final flush request, lanes once it has been exported
+    CompletableResultCode flushedAndCollected =
+        CompletableResultCode.ofAll(Arrays.asList(flushResult, collectorResult));
+    flushedAndCollected.whenComplete(
+        () -> {
+          List<CompletableResultCode> results = new ArrayList<>();
+          results.add(flushResult);
+          for (Lane lane : lanes) {
+            lane.stop();
+            results.add(lane.shutdownExporter());
+          }
+          CompletableResultCode all = CompletableResultCode.ofAll(results);
+          all.whenComplete(
+              () -> {
+                if (all.isSuccess()) {
+                  result.succeed();
+                } else {
+                  result.fail();
+                }
+              });
+        });
+    return result;
+  }
+
+  long getDroppedSpans() {
+    long dropped = droppedSpans.sum();
+    for (Lane lane : lanes) {
+      dropped += lane.droppedSpans.sum();
+    }
+    return dropped;
+  }
+
+  private void collectBatches() {
+    List<SpanData> batch = new ArrayList<>(maxExportBatchSize);
+    long batchDeadline = System.nanoTime() + scheduleDelayNanos;
+    while (!shutdown || !flushRequests.isEmpty()) {
+      try {
+        Runnable flushRequest = flushRequests.poll();
+        if (flushRequest != null) {
+          SpanData span;
+          while ((span = queue.poll()) != null) {
+            batch = addToBatch(batch, span);
+          }
+          batch = dispatch(batch);
+          flushRequest.run();
+          continue;
+        }
+        SpanData span = queue.poll();
+        if (span != null) {
+          batch = addToBatch(batch, span);
+        } else {
+          long remaining = batchDeadline - System.nanoTime();
+          if (remaining <= 0) {
+            batch = dispatch(batch);
+            batchDeadline = System.nanoTime() + scheduleDelayNanos;
+          } else {
+            LockSupport.parkNanos(this, remaining);
+          }
+        }
+      } catch (Throwable t) {
+        logger.log(Level.SEVERE, "Failed to collect spans for export", t);
+      }
+    }
+    // spans enqueued after the final flush can't be exported anymore, but must still be accounted
+    // for, either here or by the thread enqueuing them once it sees the flag
+    collectorStopped = true;
+    dropLeftovers();
+    collectorResult.succeed();
+  }
+
+  // the lock ensures that there is only a single consumer at a time once the collector stopped
+  private synchronized void dropLeftovers() {
+    while (queue.poll() != null) {
+      droppedSpans.increment();
+    }
+  }
+
+  private List<SpanData> addToBatch(List<SpanData> batch, SpanData span) {
+    batch.add(span);
+    return batch.size() >= maxExportBatchSize ? dispatch(batch) : batch;
+  }
+
+  private List<SpanData> dispatch(List<SpanData> batch) {
+    if (batch.isEmpty()) {
+      return batch;
+    }
+    // all lanes share the same snapshot of the batch
+    List<SpanData> shared = Collections.unmodifiableList(batch);
+    for (Lane lane : lanes) {
+      lane.enqueueBatch(shared);
+    }
+    return new ArrayList<>(maxExportBatchSize);
+  }
+
+  private class Lane {
+
+    @Nullable final BatchSpanProcessor processor;
+
+    final SpanExporter exporter;
+
+    final LongAdder droppedSpans = new LongAdder();
+
+    final Thread thread;
+
+    // guarded by this
+    private final ArrayDeque<List<SpanData>> batches = new ArrayDeque<>();
+
+    /**
+     * Flush markers, in the order of their sequence numbers. Guarded by this. They are not part of
+     * the bounded batch queue, so that enqueuing them never blocks and they are never dropped.
+     */
+    private final ArrayDeque<Marker> markers = new ArrayDeque<>();
+
+    /** Sequence number of the first batch in {@link #batches}, guarded by this. */
+    private long headSequence;
+
+    private boolean stopped;
+
+    Lane(SpanExporter exporter, @Nullable BatchSpanProcessor processor) {
+      this.processor = processor;
+      this.exporter = exporter;
+      this.thread = threadFactory.newThread(this::exportBatches);
+      thread.setName(thread.getName() + "-" + exporter.getClass().getSimpleName());
+    }
+
+    synchronized void enqueueBatch(List<SpanData> batch) {
+      if (batches.size() >= laneCapacity) {
+        // the exporter can't keep up, drop its oldest batch instead of delaying the other lanes
+        droppedSpans.add(batches.poll().size());
+        headSequence++;
+      }
+      batches.add(batch);
+      notifyAll();
+    }
+
+    /** Runs the marker on the lane thread once all batches enqueued before have been handled. */
+    synchronized void enqueueMarker(Runnable marker) {
+      markers.add(new Marker(headSequence + batches.size(), marker));
+      notifyAll();
+    }
+
+    synchronized void stop() {
+      stopped = true;
+      notifyAll();
+    }
+
+    CompletableResultCode shutdownExporter() {
+      // the processor shuts down the exporter as well
+      return processor != null ? processor.shutdown() : exporter.shutdown();
+    }
+
+    private void exportBatches() {
+      List<Runnable> readyMarkers = new ArrayList<>();
+      while (true) {
+        List<SpanData> batch;
+        boolean exit;
+        synchronized (this) {
+          while (!stopped && batches.isEmpty() && !hasReadyMarker()) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              // only stopping ends the lane
+            }
+          }
+          // markers are ready once every batch with a lower sequence number has been exported
+          // or dropped, the batch being exported by this thread has been removed already
+          while (hasReadyMarker() || (stopped && !markers.isEmpty())) {
+            readyMarkers.add(markers.poll().action);
+          }
+          if (stopped) {
+            // batches dispatched after the final flush
+            for (List<SpanData> remaining : batches) {
+              droppedSpans.add(remaining.size());
+            }
+            batches.clear();
+            batch = null;
+          } else {
+            batch = batches.poll();
+            if (batch != null) {
+              headSequence++;
+            }
+          }
+          exit = stopped;
+        }
+        for (Runnable marker : readyMarkers) {
+          runSafely(marker);
+        }
+        readyMarkers.clear();
+        if (batch != null) {
+          List<SpanData> toExport = batch;
+          runSafely(() -> export(toExport));
+        }
+        if (exit) {
+          return;
+        }
+      }
+    }
+
+    /** Must be called while holding the lock of this lane. */
+    private boolean hasReadyMarker() {
+      return !markers.isEmpty() && markers.peek().sequence <= headSequence;
+    }
+
+    private void runSafely(Runnable action) {
+      try {
+        action.run();
+      } catch (Throwable t) {
+        logger.log(Level.SEVERE, "Failed to export spans", t);
+      }
+    }
+
+    private void export(List<SpanData> batch) {
+      long backoffNanos = INITIAL_BACKOFF_NANOS;
+      for (int attempt = 1; attempt <= MAX_EXPORT_ATTEMPTS; attempt++) {
+        CompletableResultCode result = exporter.export(batch);
+        result.join(exportTimeoutNanos, TimeUnit.NANOSECONDS);
+        if (result.isSuccess()) {
+          return;
+        }
+        if (attempt < MAX_EXPORT_ATTEMPTS && !shutdown) {
+          LockSupport.parkNanos(this, backoffNanos);
+          backoffNanos = Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+        } else {
+          break;
+        }
+      }
+      droppedSpans.add(batch.size());
+      logger.log(
+          Level.FINE,
+          "Dropping {0} spans after failing to export them to {1}",
+          new Object[] {batch.size(), exporter});
+    }
+  }
+
+  private static class Marker {
+
+    /** The number of batches enqueued to the lane before this marker. */
+    final long sequence;
+
+    final Runnable action;
+
+    Marker(long sequence, Runnable action) {
+      this.sequence = sequence;
+      this.action = action;
+    }
+  }
+
+  /** Forwards everything to the delegate, except for the shutdown once it has been detached. */
+  private static class DetachableExporter implements SpanExporter {
+
+    final SpanExporter delegate;
+
+    volatile boolean detached = false;
+
+    DetachableExporter(SpanExporter delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      return delegate.export(spans);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return detached ? CompletableResultCode.ofSuccess() : delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Runs a sequence of {@link AbstractSimpleChainingSpanProcessor}s in a flat loop instead of letting
+ * each of them invoke the next one.
+ *
+ * <p>When nesting processors, every span passes through a chain of virtual calls and try-finally
+ * blocks whose depth equals the number of processors, with the call sites quickly becoming
+ * megamorphic. Here the stages requiring start or end callbacks are determined once upfront, so
+ * that each callback is just a loop over an array. This relies on the contract of {@link
+ * AbstractChainingSpanProcessor#requiresStart()} and {@link
+ * AbstractSimpleChainingSpanProcessor#requiresEnd()} returning constant values. The semantics of
+ * the nested chain are kept: A stage returning null from {@link
+ * AbstractSimpleChainingSpanProcessor#doOnEnd(ReadableSpan)} drops the span, a non-null result
+ * replaces it for all subsequent stages. If a stage throws, the remaining stages are still invoked
+ * and the exception is rethrown afterwards.
+ */
+final class FusedChainingSpanProcessor implements SpanProcessor {
+
+  private final AbstractSimpleChainingSpanProcessor[] stages;
+
+  private final AbstractSimpleChainingSpanProcessor[] startStages;
+
+  private final AbstractSimpleChainingSpanProcessor[] endStages;
+
+  private final SpanProcessor next;
+
+  private final boolean nextRequiresStart;
+
+  private final boolean nextRequiresEnd;
+
+  private FusedChainingSpanProcessor(
+      List<AbstractSimpleChainingSpanProcessor> stages, SpanProcessor next) {
+    this.stages = stages.toArray(new AbstractSimpleChainingSpanProcessor[0]);
+    List<AbstractSimpleChainingSpanProcessor> startStages = new ArrayList<>();
+    List<AbstractSimpleChainingSpanProcessor> endStages = new ArrayList<>();
+    for (AbstractSimpleChainingSpanProcessor stage : stages) {
+      if (stage.requiresStart()) {
+        startStages.add(stage);
+      }
+      if (stage.requiresEnd()) {
+        endStages.add(stage);
+      }
+    }
+    this.startStages = startStages.toArray(new AbstractSimpleChainingSpanProcessor[0]);
+    this.endStages = endStages.toArray(new AbstractSimpleChainingSpanProcessor[0]);
+    this.next = next;
+    this.nextRequiresStart = next.isStartRequired();
+    this.nextRequiresEnd = next.isEndRequired();
+  }
+
+  /**
+   * Creates the chain of processors produced by the given factories, ending with the provided
+   * terminal processor. Consecutive {@link AbstractSimpleChainingSpanProcessor}s are fused, all
+   * other processors are chained as usual, because they may invoke their next processor at any time
+   * (e.g. delayed or from other threads).
+   *
+   * <p>Each stage is created with its actual successor, so that the stages of a group still form a
+   * valid nested chain. A group is only fused once it is complete. If another processor has been
+   * created with the first stage of the group as next processor, this stage forwards the span
+   * callbacks to the fused group.
+   *
+   * @param factories the processor factories, ordered from first to last processor
+   * @param terminal the processor to be invoked after the last processor
+   */
+  static SpanProcessor createChain(
+      List<Function<SpanProcessor, SpanProcessor>> factories, SpanProcessor terminal) {
+    SpanProcessor result = terminal;
+    // the stages of the current group in reverse order
+    List<AbstractSimpleChainingSpanProcessor> pendingStages = new ArrayList<>();
+    for (int i = factories.size() - 1; i >= 0; i--) {
+      SpanProcessor downstream =
+          pendingStages.isEmpty() ? result : pendingStages.get(pendingStages.size() - 1);
+      SpanProcessor processor = factories.get(i).apply(downstream);
+      if (isFusible(processor, downstream)) {
+        pendingStages.add((AbstractSimpleChainingSpanProcessor) processor);
+      } else {
+        // the processor references the first stage, which forwards to the fused group
+        fuse(pendingStages, result);
+        pendingStages.clear();
+        result = processor;
+      }
+    }
+    return fuse(pendingStages, result);
+  }
+
+  private static boolean isFusible(SpanProcessor processor, SpanProcessor downstream) {
+    // the factory could have wrapped additional processors which we would skip otherwise
+    return processor instanceof AbstractSimpleChainingSpanProcessor
+        && ((AbstractSimpleChainingSpanProcessor) processor).next == downstream;
+  }
+
+  private static SpanProcessor fuse(
+      List<AbstractSimpleChainingSpanProcessor> stagesInReverse, SpanProcessor next) {
+    if (stagesInReverse.isEmpty()) {
+      return next;
+    }
+    AbstractSimpleChainingSpanProcessor first = stagesInReverse.get(stagesInReverse.size() - 1);
+    if (stagesInReverse.size() == 1) {
+      // nothing to gain for a single processor, which has been created with the correct next
+      return first;
+    }
+    List<AbstractSimpleChainingSpanProcessor> stages = new ArrayList<>(stagesInReverse.size());
+    for (int i = stagesInReverse.size() - 1; i >= 0; i--) {
+      stages.add(stagesInReverse.get(i));
+    }
+    FusedChainingSpanProcessor fused = new FusedChainingSpanProcessor(stages, next);
+    first.fusedGroup = fused;
+    return fused;
+  }
+
+  @Override
+  public void onStart(Context context, ReadWriteSpan span) {
+    Throwable error = null;
+    for (AbstractSimpleChainingSpanProcessor stage : startStages) {
+      try {
+        long timer = SpanProcessorLatency.startTimer();
+        stage.doOnStart(context, span);
+        SpanProcessorLatency.stopTimer(timer, stage, SpanProcessorLatency.Phase.START);
+      } catch (RuntimeException | Error e) {
+        error = addError(error, e);
+      }
+    }
+    if (nextRequiresStart) {
+      try {
+        next.onStart(context, span);
+      } catch (RuntimeException | Error e) {
+        error = addError(error, e);
+      }
+    }
+    rethrow(error);
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    Throwable error = null;
+    ReadableSpan current = span;
+    for (AbstractSimpleChainingSpanProcessor stage : endStages) {
+      try {
+        long timer = SpanProcessorLatency.startTimer();
+        current = stage.doOnEnd(current);
+        SpanProcessorLatency.stopTimer(timer, stage, SpanProcessorLatency.Phase.END);
+      } catch (RuntimeException | Error e) {
+        // like the nested chain, the span is passed on unchanged if a stage fails
+        error = addError(error, e);
+      }
+      if (current == null) {
+        break;
+      }
+    }
+    if (current != null && nextRequiresEnd) {
+      try {
+        next.onEnd(current);
+      } catch (RuntimeException | Error e) {
+        error = addError(error, e);
+      }
+    }
+    rethrow(error);
+  }
+
+  @Override
+  public boolean isStartRequired() {
+    return startStages.length > 0 || nextRequiresStart;
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return endStages.length > 0 || nextRequiresEnd;
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    List<CompletableResultCode> results = new ArrayList<>(stages.length + 1);
+    for (AbstractSimpleChainingSpanProcessor stage : stages) {
+      results.add(stage.doShutdown());
+    }
+    results.add(next.shutdown());
+    return CompletableResultCode.ofAll(results);
+  }
+
+  @Override
+  public CompletableResultCode forceFlush() {
+    List<CompletableResultCode> results = new ArrayList<>(stages.length + 1);
+    for (AbstractSimpleChainingSpanProcessor stage : stages) {
+      results.add(stage.doForceFlush());
+    }
+    results.add(next.forceFlush());
+    return CompletableResultCode.ofAll(results);
+  }
+
+  private static Throwable addError(@Nullable Throwable previous, Throwable error) {
+    if (previous == null) {
+      return error;
+    }
+    previous.addSuppressed(error);
+    return previous;
+  }
+
+  private static void rethrow(@Nullable Throwable error) {
+    if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    }
+    if (error instanceof Error) {
+      throw (Error) error;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+
+/**
+ * A {@link SpanValue} holding a primitive {@code int} without boxing. Spans without a value
+ * attached read as zero.
+ *
+ * <p>In addition to plain reads and writes, atomic updates via {@link #addAndGet(Span, int)} and
+ * {@link #compareAndSet(Span, int, int)} are supported. This makes it possible to maintain per-span
+ * counters from multiple threads and processors without allocations or locks.
+ *
+ * <p>Just like {@link SpanValue}s, {@link IntSpanValue}s can either be dense or sparse (see {@link
+ * SpanValue} for details).
+ */
+public final class IntSpanValue extends PrimitiveSpanValue {
+
+  private IntSpanValue(boolean dense) {
+    super(dense);
+  }
+
+  /**
+   * Creates a dense {@link IntSpanValue}, see {@link SpanValue#createDense()} for the implications.
+   */
+  public static IntSpanValue createDense() {
+    return new IntSpanValue(true);
+  }
+
+  /**
+   * Creates a sparse {@link IntSpanValue}, see {@link SpanValue#createSparse()} for the
+   * implications.
+   */
+  public static IntSpanValue createSparse() {
+    return new IntSpanValue(false);
+  }
+
+  /** Reads the current value for the given span, zero if none was set. */
+  public int get(Span span) {
+    return (int) getRaw(span);
+  }
+
+  /** See {@link IntSpanValue#get(Span)}. */
+  public int get(ReadableSpan span) {
+    return (int) getRaw(span);
+  }
+
+  /** See {@link IntSpanValue#get(Span)}. */
+  public int get(ReadWriteSpan span) {
+    return (int) getRaw(span);
+  }
+
+  /** Sets the value for the given span. */
+  public void set(Span span, int value) {
+    setRaw(span, value);
+  }
+
+  /** See {@link IntSpanValue#set(Span, int)}. */
+  public void set(ReadableSpan span, int value) {
+    setRaw(span, value);
+  }
+
+  /** See {@link IntSpanValue#set(Span, int)}. */
+  public void set(ReadWriteSpan span, int value) {
+    setRaw(span, value);
+  }
+
+  /**
+   * Atomically adds the given delta to the value of the given span.
+   *
+   * @return the updated value
+   */
+  public int addAndGet(Span span, int delta) {
+    return (int) addAndGetRaw(span, delta);
+  }
+
+  /** See {@link IntSpanValue#addAndGet(Span, int)}. */
+  public int addAndGet(ReadableSpan span, int delta) {
+    return (int) addAndGetRaw(span, delta);
+  }
+
+  /** See {@link IntSpanValue#addAndGet(Span, int)}. */
+  public int addAndGet(ReadWriteSpan span, int delta) {
+    return (int) addAndGetRaw(span, delta);
+  }
+
+  /**
+   * Atomically sets the value for the given span to {@code update} if the current value equals
+   * {@code expect}.
+   *
+   * @return true, if the value was updated
+   */
+  public boolean compareAndSet(Span span, int expect, int update) {
+    return compareAndSetImpl(span, expect, update);
+  }
+
+  /** See {@link IntSpanValue#compareAndSet(Span, int, int)}. */
+  public boolean compareAndSet(ReadableSpan span, int expect, int update) {
+    return compareAndSetImpl(span, expect, update);
+  }
+
+  /** See {@link IntSpanValue#compareAndSet(Span, int, int)}. */
+  public boolean compareAndSet(ReadWriteSpan span, int expect, int update) {
+    return compareAndSetImpl(span, expect, update);
+  }
+
+  private boolean compareAndSetImpl(Object span, int expect, int update) {
+    // The backing slot may hold values outside the int range due to addAndGet overflowing.
+    // Only the lower 32 bits are relevant, so that's what we compare.
+    while (true) {
+      long current = getRaw(span);
+      if ((int) current != expect) {
+        return false;
+      }
+      if (compareAndSetRaw(span, current, update)) {
+        return true;
+      }
+    }
+  }
+
+  /** Resets the value for the given span to zero. */
+  public void clear(Span span) {
+    clearRaw(span);
+  }
+
+  /** See {@link IntSpanValue#clear(Span)}. */
+  public void clear(ReadableSpan span) {
+    clearRaw(span);
+  }
+
+  /** See {@link IntSpanValue#clear(Span)}. */
+  public void clear(ReadWriteSpan span) {
+    clearRaw(span);
+  }
+}
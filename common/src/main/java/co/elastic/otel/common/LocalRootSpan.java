@@ -45,7 +45,8 @@ public class LocalRootSpan {
    * stores LOCAL_ROOT_MARKER instead: Because {@link SpanValue} is backed by a weak-hash-map,
    * letting the span point to itself would cause a memory leak here.
    */
-  private static final SpanValue<Object> localRoot = SpanValue.createDense();
+  private static final SpanValue<Object> localRoot =
+      SpanValue.createWellKnown(WellKnownSpanValue.LOCAL_ROOT);
 
   /**
    * Must be called at least once for every span started, otherwise {@link
@@ -0,0 +1,151 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.util.Locale;
+
+/**
+ * Aggregates statistics about the spans of a local trace into its local root span (see {@link
+ * LocalRootSpan}) while the children end. When the local root ends, the summary is added to it as
+ * {@link ElasticAttributes} {@code elastic.local_root.*} attributes.
+ *
+ * <p>Because the summary is updated in place, children can be sampled or dropped later in the chain
+ * without losing the composition of the request. Aggregating a child doesn't allocate. Children
+ * ending after their local root are not included.
+ */
+public class LocalRootSummaryProcessor extends AbstractSimpleChainingSpanProcessor {
+
+  private static final SpanKind[] KINDS = SpanKind.values();
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static final AttributeKey<Long>[] SPAN_COUNT_BY_KIND = new AttributeKey[KINDS.length];
+
+  static {
+    for (SpanKind kind : KINDS) {
+      SPAN_COUNT_BY_KIND[kind.ordinal()] =
+          AttributeKey.longKey(
+              ElasticAttributes.LOCAL_ROOT_SPAN_COUNT_BY_KIND_PREFIX
+                  + kind.name().toLowerCase(Locale.ROOT));
+    }
+  }
+
+  private static final SpanValue<Summary> summary = SpanValue.createSparse(ReleasePolicy.ON_END);
+
+  public LocalRootSummaryProcessor(SpanProcessor next) {
+    super(next);
+  }
+
+  @Override
+  protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {
+    LocalRootSpan.onSpanStart(readWriteSpan, context);
+  }
+
+  @Override
+  protected ReadableSpan doOnEnd(ReadableSpan span) {
+    ReadableSpan localRoot = LocalRootSpan.getFor(span);
+    if (localRoot == null) {
+      return span;
+    }
+    if (localRoot != span) {
+      if (!localRoot.hasEnded()) {
+        summary.computeIfNull(localRoot, Summary::new).addChild(span, localRoot);
+      }
+      return span;
+    }
+    Summary rootSummary = summary.get(span);
+    MutableSpan mutable = MutableSpan.makeMutable(span);
+    if (rootSummary == null) {
+      mutable.setAttribute(ElasticAttributes.LOCAL_ROOT_SPAN_COUNT, 0L);
+    } else {
+      rootSummary.applyTo(mutable);
+    }
+    return mutable;
+  }
+
+  @Override
+  protected boolean requiresStart() {
+    return true;
+  }
+
+  @Override
+  protected boolean requiresEnd() {
+    return true;
+  }
+
+  private static class Summary {
+
+    private final long[] spanCountByKind = new long[KINDS.length];
+
+    private long errorCount;
+
+    private long childrenDurationNanos;
+
+    private long directChildrenDurationNanos;
+
+    private String slowestChildName;
+
+    private long slowestChildDurationNanos = -1;
+
+    synchronized void addChild(ReadableSpan child, ReadableSpan localRoot) {
+      long duration = child.getLatencyNanos();
+      spanCountByKind[child.getKind().ordinal()]++;
+      childrenDurationNanos += duration;
+      if (child.getParentSpanContext().getSpanId().equals(localRoot.getSpanContext().getSpanId())) {
+        directChildrenDurationNanos += duration;
+      }
+      if (duration > slowestChildDurationNanos) {
+        slowestChildDurationNanos = duration;
+        slowestChildName = child.getName();
+      }
+      if (SpanStatusCodes.of(child) == StatusCode.ERROR) {
+        errorCount++;
+      }
+    }
+
+    synchronized void applyTo(MutableSpan localRoot) {
+      long spanCount = 0;
+      for (SpanKind kind : KINDS) {
+        long count = spanCountByKind[kind.ordinal()];
+        if (count > 0) {
+          localRoot.setAttribute(SPAN_COUNT_BY_KIND[kind.ordinal()], count);
+          spanCount += count;
+        }
+      }
+      localRoot.setAttribute(ElasticAttributes.LOCAL_ROOT_SPAN_COUNT, spanCount);
+      localRoot.setAttribute(ElasticAttributes.LOCAL_ROOT_ERROR_COUNT, errorCount);
+      localRoot.setAttribute(ElasticAttributes.LOCAL_ROOT_CHILDREN_DURATION, childrenDurationNanos);
+      // asynchronous children may overlap each other, so that their sum exceeds the root duration
+      localRoot.setAttribute(
+          ElasticAttributes.LOCAL_ROOT_SELF_TIME,
+          Math.max(0, localRoot.getLatencyNanos() - directChildrenDurationNanos));
+      if (slowestChildName != null) {
+        localRoot.setAttribute(ElasticAttributes.LOCAL_ROOT_SLOWEST_CHILD_NAME, slowestChildName);
+        localRoot.setAttribute(
+            ElasticAttributes.LOCAL_ROOT_SLOWEST_CHILD_DURATION, slowestChildDurationNanos);
+      }
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import com.google.auto.service.AutoService;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+
+@AutoService(ChainingSpanProcessorAutoConfiguration.class)
+public class LocalRootSummaryProcessorAutoConfig implements ChainingSpanProcessorAutoConfiguration {
+
+  static final String ENABLED_OPTION =
+      "elastic.otel.java.experimental.span.local_root.summary.enabled";
+
+  @Override
+  public void registerSpanProcessors(
+      ConfigProperties properties, ChainingSpanProcessorRegisterer registerer) {
+    if (!properties.getBoolean(ENABLED_OPTION, false)) {
+      return;
+    }
+    // first in the chain, so that the summary includes children dropped by later processors
+    registerer.register(
+        LocalRootSummaryProcessor::new, ChainingSpanProcessorRegisterer.ORDER_FIRST);
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Tail-based sampling of local traces: The children of every local root span (see {@link
+ * LocalRootSpan}) are held back until the local root ends. Then the whole local trace is either
+ * passed on or dropped.
+ *
+ * <p>A local trace is kept if any of its spans has an error status, if the local root took at least
+ * the configured latency threshold or otherwise with the configured fallback probability. The
+ * number of local traces kept per second is capped. This processor can only sample from the spans
+ * which are recorded, so the head sampler should record all spans for it to be effective.
+ *
+ * <p>The number of buffered spans is limited globally. If the limit is reached, the {@link
+ * OverflowPolicy} decides what happens with further children. Children ending after their local
+ * root follow the decision made for the local root. Children are buffered for at most the
+ * configured maximum age, so that local roots which never reach this processor, e.g. because they
+ * are dropped earlier in the chain or never ended, don't hold on to the buffer. Expired children
+ * are handled like children which could not be buffered. On {@link #forceFlush()} and {@link
+ * #shutdown()}, all buffered children are passed on without a decision.
+ */
+public class LocalTailSamplingProcessor extends AbstractChainingSpanProcessor {
+
+  public enum OverflowPolicy {
+    /** Children which cannot be buffered are passed on immediately, without a decision. */
+    PASS_THROUGH,
+    /** Children which cannot be buffered are dropped. */
+    DROP
+  }
+
+  private static final SpanValue<LocalTrace> localTrace = SpanValue.createSparse();
+
+  private final boolean nextRequiresEnd;
+
+  private final long latencyThresholdNanos;
+
+  private final double fallbackProbability;
+
+  private final int maxBufferedSpans;
+
+  private final long maxBufferAgeNanos;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final RateLimiter rateLimiter;
+
+  private final AtomicInteger bufferedSpans = new AtomicInteger();
+
+  private final BufferingTraces bufferingTraces = new BufferingTraces();
+
+  private final LongAdder droppedSpans = new LongAdder();
+
+  LocalTailSamplingProcessor(
+      SpanProcessor next,
+      Duration latencyThreshold,
+      double fallbackProbability,
+      int maxTracesPerSecond,
+      int maxBufferedSpans,
+      Duration maxBufferAge,
+      OverflowPolicy overflowPolicy) {
+    super(next);
+    this.nextRequiresEnd = next.isEndRequired();
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.fallbackProbability = fallbackProbability;
+    this.maxBufferedSpans = maxBufferedSpans;
+    this.maxBufferAgeNanos = maxBufferAge.toNanos();
+    this.overflowPolicy = overflowPolicy;
+    this.rateLimiter = new RateLimiter(maxTracesPerSecond);
+  }
+
+  public static LocalTailSamplingProcessorBuilder builder(SpanProcessor next) {
+    return new LocalTailSamplingProcessorBuilder(next);
+  }
+
+  @Override
+  protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {
+    LocalRootSpan.onSpanStart(readWriteSpan, context);
+  }
+
+  @Override
+  protected boolean requiresStart() {
+    return true;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    evictExpiredTraces();
+    ReadableSpan localRoot = LocalRootSpan.getFor(span);
+    if (localRoot == null) {
+      passToNext(span);
+    } else if (localRoot == span) {
+      onLocalRootEnd(span);
+    } else {
+      onChildEnd(span, localRoot);
+    }
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return true;
+  }
+
+  @Override
+  protected CompletableResultCode doForceFlush() {
+    passOnBufferedTraces();
+    return CompletableResultCode.ofSuccess();
+  }
+
+  @Override
+  protected CompletableResultCode doShutdown() {
+    passOnBufferedTraces();
+    return CompletableResultCode.ofSuccess();
+  }
+
+  long getDroppedSpans() {
+    return droppedSpans.sum();
+  }
+
+  int getBufferedSpans() {
+    return bufferedSpans.get();
+  }
+
+  int getBufferingTraces() {
+    return bufferingTraces.size();
+  }
+
+  private void onChildEnd(ReadableSpan child, ReadableSpan localRoot) {
+    LocalTrace trace = localTrace.computeIfNull(localRoot, LocalTrace::new);
+    boolean isError = isError(child);
+    Boolean decision;
+    synchronized (trace) {
+      decision = trace.decision;
+      if (decision == null) {
+        if (isError) {
+          trace.hasError = true;
+        }
+        if (reserveBufferSlot()) {
+          trace.children.add(child);
+          bufferingTraces.addIfAbsent(trace);
+          return;
+        }
+      }
+    }
+    if (decision == null) {
+      // the buffer is full
+      onOverflow(child);
+    } else if (decision) {
+      passToNext(child);
+    } else {
+      droppedSpans.increment();
+    }
+  }
+
+  private void onLocalRootEnd(ReadableSpan localRoot) {
+    LocalTrace trace = localTrace.computeIfNull(localRoot, LocalTrace::new);
+    List<ReadableSpan> children;
+    boolean keep;
+    synchronized (trace) {
+      keep = shouldKeep(localRoot, trace.hasError || isError(localRoot));
+      trace.decision = keep;
+      children = trace.children;
+      // children ending from now on only need the decision
+      trace.children = null;
+      bufferingTraces.remove(trace);
+    }
+    bufferedSpans.addAndGet(-children.size());
+    if (keep) {
+      for (ReadableSpan child : children) {
+        passToNext(child);
+      }
+      passToNext(localRoot);
+    } else {
+      droppedSpans.add(children.size() + 1);
+    }
+  }
+
+  private void onOverflow(ReadableSpan child) {
+    if (overflowPolicy == OverflowPolicy.PASS_THROUGH) {
+      passToNext(child);
+    } else {
+      droppedSpans.increment();
+    }
+  }
+
+  private void evictExpiredTraces() {
+    if (bufferingTraces.isEmpty()) {
+      return;
+    }
+    long now = System.nanoTime();
+    LocalTrace expired;
+    // only the thread which removed the trace releases its children
+    while ((expired = bufferingTraces.pollExpired(now, maxBufferAgeNanos)) != null) {
+      for (ReadableSpan child : releaseChildren(expired)) {
+        onOverflow(child);
+      }
+    }
+  }
+
+  private void passOnBufferedTraces() {
+    LocalTrace trace;
+    while ((trace = bufferingTraces.poll()) != null) {
+      for (ReadableSpan child : releaseChildren(trace)) {
+        passToNext(child);
+      }
+    }
+  }
+
+  /** Removes the buffered children of a trace which is no longer queued and returns its budget. */
+  private List<ReadableSpan> releaseChildren(LocalTrace trace) {
+    List<ReadableSpan> children;
+    synchronized (trace) {
+      if (trace.decision != null || trace.children.isEmpty()) {
+        // the local root has ended in the meantime and took care of the children
+        return Collections.emptyList();
+      }
+      children = trace.children;
+      // the local root may still end, which decides about the children ending from now on
+      trace.children = new ArrayList<>();
+    }
+    bufferedSpans.addAndGet(-children.size());
+    return children;
+  }
+
+  private boolean shouldKeep(ReadableSpan localRoot, boolean hasError) {
+    boolean interesting =
+        hasError
+            || localRoot.getLatencyNanos() >= latencyThresholdNanos
+            || ThreadLocalRandom.current().nextDouble() < fallbackProbability;
+    return interesting && rateLimiter.tryAcquire();
+  }
+
+  private boolean reserveBufferSlot() {
+    while (true) {
+      int current = bufferedSpans.get();
+      if (current >= maxBufferedSpans) {
+        return false;
+      }
+      if (bufferedSpans.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private static boolean isError(ReadableSpan span) {
+    return SpanStatusCodes.of(span) == StatusCode.ERROR;
+  }
+
+  private void passToNext(ReadableSpan span) {
+    if (nextRequiresEnd) {
+      next.onEnd(span);
+    }
+  }
+
+  private static class LocalTrace {
+
+    List<ReadableSpan> children = new ArrayList<>();
+
+    boolean hasError;
+
+    // the following fields are guarded by the BufferingTraces lock
+
+    boolean linked;
+
+    @Nullable LocalTrace previous;
+
+    @Nullable LocalTrace next;
+
+    /** When the oldest currently buffered child was buffered, only valid while linked. */
+    long bufferingSinceNanos;
+
+    /** null while the local root hasn't ended yet. */
+    Boolean decision;
+  }
+
+  /**
+   * The local traces with buffered children, in the order in which they started buffering. This is
+   * an intrusive doubly linked list, so that local roots can unlink their trace in constant time.
+   * Only contains undecided traces, therefore its size is bounded by the maximum number of buffered
+   * spans.
+   */
+  private static class BufferingTraces {
+
+    @Nullable private LocalTrace head;
+
+    @Nullable private LocalTrace tail;
+
+    private int size;
+
+    // allows checking for expired traces without locking
+    private volatile boolean empty = true;
+
+    boolean isEmpty() {
+      return empty;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized void addIfAbsent(LocalTrace trace) {
+      if (trace.linked) {
+        return;
+      }
+      trace.linked = true;
+      trace.bufferingSinceNanos = System.nanoTime();
+      trace.previous = tail;
+      trace.next = null;
+      if (tail == null) {
+        head = trace;
+      } else {
+        tail.next = trace;
+      }
+      tail = trace;
+      size++;
+      empty = false;
+    }
+
+    synchronized void remove(LocalTrace trace) {
+      if (!trace.linked) {
+        return;
+      }
+      if (trace.previous == null) {
+        head = trace.next;
+      } else {
+        trace.previous.next = trace.next;
+      }
+      if (trace.next == null) {
+        tail = trace.previous;
+      } else {
+        trace.next.previous = trace.previous;
+      }
+      trace.linked = false;
+      trace.previous = null;
+      trace.next = null;
+      size--;
+      empty = size == 0;
+    }
+
+    /** Removes and returns the oldest trace, if it has been buffering for at least the max age. */
+    @Nullable
+    synchronized LocalTrace pollExpired(long nowNanos, long maxAgeNanos) {
+      LocalTrace oldest = head;
+      if (oldest == null || nowNanos - oldest.bufferingSinceNanos < maxAgeNanos) {
+        return null;
+      }
+      remove(oldest);
+      return oldest;
+    }
+
+    @Nullable
+    synchronized LocalTrace poll() {
+      LocalTrace oldest = head;
+      if (oldest != null) {
+        remove(oldest);
+      }
+      return oldest;
+    }
+  }
+
+  /** Allows up to the given number of permits per second, using fixed one-second windows. */
+  private static class RateLimiter {
+
+    private final int permitsPerSecond;
+
+    private long windowStartNanos = System.nanoTime();
+
+    private int used;
+
+    RateLimiter(int permitsPerSecond) {
+      this.permitsPerSecond = permitsPerSecond;
+    }
+
+    synchronized boolean tryAcquire() {
+      long now = System.nanoTime();
+      if (now - windowStartNanos >= TimeUnit.SECONDS.toNanos(1)) {
+        windowStartNanos = now;
+        used = 0;
+      }
+      if (used >= permitsPerSecond) {
+        return false;
+      }
+      used++;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import co.elastic.otel.common.config.PropertiesApplier;
+import com.google.auto.service.AutoService;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import java.util.Locale;
+
+@AutoService(ChainingSpanProcessorAutoConfiguration.class)
+public class LocalTailSamplingProcessorAutoConfig
+    implements ChainingSpanProcessorAutoConfiguration {
+
+  static final String ENABLED_OPTION = "elastic.otel.java.experimental.span.tail_sampling.enabled";
+  static final String LATENCY_THRESHOLD_OPTION =
+      "elastic.otel.java.experimental.span.tail_sampling.latency.threshold";
+  static final String FALLBACK_PROBABILITY_OPTION =
+      "elastic.otel.java.experimental.span.tail_sampling.fallback.probability";
+  static final String MAX_TRACES_PER_SECOND_OPTION =
+      "elastic.otel.java.experimental.span.tail_sampling.max.traces_per_second";
+  static final String MAX_BUFFERED_SPANS_OPTION =
+      "elastic.otel.java.experimental.span.tail_sampling.max.buffered_spans";
+  static final String MAX_BUFFER_AGE_OPTION =
+      "elastic.otel.java.experimental.span.tail_sampling.max.buffer_age";
+  static final String OVERFLOW_POLICY_OPTION =
+      "elastic.otel.java.experimental.span.tail_sampling.overflow.policy";
+
+  @Override
+  public void registerSpanProcessors(
+      ConfigProperties properties, ChainingSpanProcessorRegisterer registerer) {
+    if (!properties.getBoolean(ENABLED_OPTION, false)) {
+      return;
+    }
+    PropertiesApplier props = new PropertiesApplier(properties);
+    registerer.register(
+        next -> {
+          LocalTailSamplingProcessorBuilder builder = LocalTailSamplingProcessor.builder(next);
+          props.applyDuration(LATENCY_THRESHOLD_OPTION, builder::latencyThreshold);
+          Double fallbackProbability = properties.getDouble(FALLBACK_PROBABILITY_OPTION);
+          if (fallbackProbability != null) {
+            builder.fallbackProbability(fallbackProbability);
+          }
+          props.applyInt(MAX_TRACES_PER_SECOND_OPTION, builder::maxTracesPerSecond);
+          props.applyInt(MAX_BUFFERED_SPANS_OPTION, builder::maxBufferedSpans);
+          props.applyDuration(MAX_BUFFER_AGE_OPTION, builder::maxBufferAge);
+          props.applyString(
+              OVERFLOW_POLICY_OPTION,
+              policy ->
+                  builder.overflowPolicy(
+                      LocalTailSamplingProcessor.OverflowPolicy.valueOf(
+                          policy.toUpperCase(Locale.ROOT))));
+          return builder.build();
+        },
+        // after all processors which might still modify the spans
+        ChainingSpanProcessorRegisterer.ORDER_LAST);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.time.Duration;
+
+public class LocalTailSamplingProcessorBuilder {
+
+  private final SpanProcessor next;
+  private Duration latencyThreshold = Duration.ofMillis(500);
+  private double fallbackProbability = 0.1;
+  private int maxTracesPerSecond = 100;
+  private int maxBufferedSpans = 10_000;
+  private Duration maxBufferAge = Duration.ofMinutes(1);
+  private LocalTailSamplingProcessor.OverflowPolicy overflowPolicy =
+      LocalTailSamplingProcessor.OverflowPolicy.PASS_THROUGH;
+
+  LocalTailSamplingProcessorBuilder(SpanProcessor next) {
+    this.next = next;
+  }
+
+  public LocalTailSamplingProcessor build() {
+    return new LocalTailSamplingProcessor(
+        next,
+        latencyThreshold,
+        fallbackProbability,
+        maxTracesPerSecond,
+        maxBufferedSpans,
+        maxBufferAge,
+        overflowPolicy);
+  }
+
+  /** Local traces whose local root took at least this long are kept. */
+  public LocalTailSamplingProcessorBuilder latencyThreshold(Duration latencyThreshold) {
+    if (latencyThreshold.isNegative()) {
+      throw new IllegalArgumentException(
+          "latencyThreshold must not be negative, but was " + latencyThreshold);
+    }
+    this.latencyThreshold = latencyThreshold;
+    return this;
+  }
+
+  /** The probability for keeping local traces which are neither erroneous nor slow. */
+  public LocalTailSamplingProcessorBuilder fallbackProbability(double fallbackProbability) {
+    if (fallbackProbability < 0.0 || fallbackProbability > 1.0) {
+      throw new IllegalArgumentException(
+          "fallbackProbability must be between 0 and 1, but was " + fallbackProbability);
+    }
+    this.fallbackProbability = fallbackProbability;
+    return this;
+  }
+
+  /** The maximum number of local traces kept per second, regardless of why they are kept. */
+  public LocalTailSamplingProcessorBuilder maxTracesPerSecond(int maxTracesPerSecond) {
+    if (maxTracesPerSecond < 0) {
+      throw new IllegalArgumentException(
+          "maxTracesPerSecond must not be negative, but was " + maxTracesPerSecond);
+    }
+    this.maxTracesPerSecond = maxTracesPerSecond;
+    return this;
+  }
+
+  /** The maximum number of child spans buffered across all local traces awaiting a decision. */
+  public LocalTailSamplingProcessorBuilder maxBufferedSpans(int maxBufferedSpans) {
+    if (maxBufferedSpans < 0) {
+      throw new IllegalArgumentException(
+          "maxBufferedSpans must not be negative, but was " + maxBufferedSpans);
+    }
+    this.maxBufferedSpans = maxBufferedSpans;
+    return this;
+  }
+
+  /**
+   * The maximum time children are buffered while waiting for their local root to end. Afterwards,
+   * they are handled according to the {@link
+   * #overflowPolicy(LocalTailSamplingProcessor.OverflowPolicy) overflow policy} and their buffer
+   * slots are freed.
+   */
+  public LocalTailSamplingProcessorBuilder maxBufferAge(Duration maxBufferAge) {
+    if (maxBufferAge.isNegative()) {
+      throw new IllegalArgumentException(
+          "maxBufferAge must not be negative, but was " + maxBufferAge);
+    }
+    this.maxBufferAge = maxBufferAge;
+    return this;
+  }
+
+  /**
+   * Defines what happens with children which cannot be buffered. Defaults to {@link
+   * LocalTailSamplingProcessor.OverflowPolicy#PASS_THROUGH}, so that no spans are lost.
+   */
+  public LocalTailSamplingProcessorBuilder overflowPolicy(
+      LocalTailSamplingProcessor.OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.sdk.logs.ReadWriteLogRecord;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Utility for attaching any kind of objects to log records, the log counterpart of {@link
+ * SpanValue}. This allows {@link io.opentelemetry.sdk.logs.LogRecordProcessor}s to keep state per
+ * log record without maintaining external maps.
+ *
+ * <p>{@link LogRecordValue}s offer the same thread safety guarantees and the same dense and sparse
+ * variants as {@link SpanValue}s. They use the same storage model, but with their own indices:
+ * Dense {@link SpanValue}s don't occupy space on log records and vice versa.
+ *
+ * <p>NOTE: the stored values must not have strong reference to the log records they are attached
+ * to, as this will cause a memory leak!
+ *
+ * @param <V> the type of the value to be attached to the log records
+ */
+public class LogRecordValue<V> {
+
+  private static final LogRecordValueStorageProvider storageProvider =
+      LogRecordValueStorageProvider.get();
+
+  /** See {@link SpanValue#index}. */
+  private final int index;
+
+  private LogRecordValue(int index) {
+    this.index = index;
+  }
+
+  /**
+   * Create a dense {@link LogRecordValue}. Every instance of a dense LogRecordValue will require
+   * space on a log record, independent of whether the record has a value for it or not!
+   *
+   * <p>See {@link SpanValue#createDense()} for guidance on when to use dense values.
+   */
+  public static <V> LogRecordValue<V> createDense() {
+    return new LogRecordValue<>(LogRecordValueStorage.INDEX_SPACE.allocateDenseIndex());
+  }
+
+  /**
+   * Creates a sparse {@link LogRecordValue}. Sparse LogRecordValues only occupy memory on log
+   * records which actually have a value set.
+   */
+  public static <V> LogRecordValue<V> createSparse() {
+    return new LogRecordValue<>(ValueStorage.allocateSparseIndex());
+  }
+
+  /** Reads the current value for the given log record. */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V get(ReadWriteLogRecord logRecord) {
+    LogRecordValueStorage storage = storageProvider.get(logRecord, false);
+    if (storage != null) {
+      return (V) storage.getValue(index, this);
+    }
+    return null;
+  }
+
+  /**
+   * Sets the value for the given log record.
+   *
+   * @param logRecord the log record to attach the value to
+   * @param value the value to set. If null, has the same effect as calling {@link
+   *     LogRecordValue#clear(ReadWriteLogRecord)}
+   */
+  public void set(ReadWriteLogRecord logRecord, @Nullable V value) {
+    if (value == null) {
+      clear(logRecord);
+      return;
+    }
+    getStorageForWrite(logRecord).setValue(index, this, value);
+  }
+
+  /**
+   * Same as {@link LogRecordValue#set(ReadWriteLogRecord, Object)}, but only atomically performs
+   * the set if the current value for the given log record is null.
+   *
+   * @return true, if the value was set. false if the record already had a non-null value attached
+   */
+  public boolean setIfNull(ReadWriteLogRecord logRecord, @Nullable V value) {
+    if (value == null) {
+      return get(logRecord) == null; // setting to null if already null has no effect
+    }
+    return getStorageForWrite(logRecord).setValueIfNull(index, this, value);
+  }
+
+  /**
+   * Same as {@link LogRecordValue#setIfNull(ReadWriteLogRecord, Object)}, but lazily fetches the
+   * value from the provided {@link Supplier} if required.
+   *
+   * @return the value returned by valueInitializer if an initialization was performed, otherwise
+   *     returns the already attached non-null value
+   */
+  @SuppressWarnings("unchecked")
+  public V computeIfNull(ReadWriteLogRecord logRecord, Supplier<V> valueInitializer) {
+    return (V) getStorageForWrite(logRecord).computeValueIfNull(index, this, valueInitializer);
+  }
+
+  /** Removes the attached value for the given log record, if a non-null value was attached. */
+  public void clear(ReadWriteLogRecord logRecord) {
+    LogRecordValueStorage storage = storageProvider.get(logRecord, false);
+    if (storage != null) {
+      storage.clearValue(index, this);
+    }
+  }
+
+  private ValueStorage getStorageForWrite(ReadWriteLogRecord logRecord) {
+    return storageProvider.get(logRecord, true).withSlotFor(index, logRecord, storageProvider);
+  }
+}
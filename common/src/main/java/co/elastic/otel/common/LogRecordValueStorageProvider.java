@@ -0,0 +1,88 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.sdk.logs.FieldBackedLogRecordValueStorageProvider;
+import io.opentelemetry.sdk.logs.ReadWriteLogRecord;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public interface LogRecordValueStorageProvider
+    extends ValueStorageProvider<ReadWriteLogRecord, LogRecordValueStorage> {
+
+  Logger logger = Logger.getLogger(LogRecordValueStorageProvider.class.getName());
+
+  static LogRecordValueStorageProvider get() {
+    try {
+      Class<?> sdkLogRecord = Class.forName("io.opentelemetry.sdk.logs.SdkReadWriteLogRecord");
+      if (sdkLogRecord.getClassLoader() != LogRecordValueStorage.class.getClassLoader()) {
+        // If we are running in a different classloader, this means we aren't running in our distro
+        logger.log(
+            Level.FINE,
+            "Using map-backed storage for LogRecordValues because SdkReadWriteLogRecord lives in a different classloader and therefore is inaccessible");
+        return MapBacked.getInstance();
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Expected SdkReadWriteLogRecord class to exist", e);
+    }
+    return FieldBackedLogRecordValueStorageProvider.INSTANCE != null
+        ? FieldBackedLogRecordValueStorageProvider.INSTANCE
+        : MapBacked.getInstance();
+  }
+
+  class MapBacked implements LogRecordValueStorageProvider {
+
+    private static MapBacked INSTANCE;
+
+    public static synchronized MapBacked getInstance() {
+      // Lazy initialization to avoid unnecessary creation of the backing map
+      if (INSTANCE == null) {
+        INSTANCE = new MapBacked();
+      }
+      return INSTANCE;
+    }
+
+    private final WeakIdentityMap<ReadWriteLogRecord, LogRecordValueStorage> storageMap =
+        new WeakIdentityMap<>("log-record-value-storages");
+
+    @Override
+    public LogRecordValueStorage get(ReadWriteLogRecord logRecord, boolean initialize) {
+      LogRecordValueStorage storage = storageMap.get(logRecord);
+      if (storage == null && initialize) {
+        storage = new LogRecordValueStorage();
+        LogRecordValueStorage existing = storageMap.putIfAbsent(logRecord, storage);
+        if (existing == null) {
+          storage.countInstalled();
+          LogRecordValueStorage.INDEX_SPACE.mapBackedStorages.increment();
+        } else {
+          storage = existing;
+        }
+      }
+      return storage;
+    }
+
+    @Override
+    public boolean replace(
+        ReadWriteLogRecord logRecord,
+        LogRecordValueStorage expected,
+        LogRecordValueStorage replacement) {
+      return storageMap.replace(logRecord, expected, replacement);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+
+/**
+ * A {@link SpanValue} holding a primitive {@code long} without boxing. Spans without a value
+ * attached read as zero.
+ *
+ * <p>In addition to plain reads and writes, atomic updates via {@link #addAndGet(Span, long)} and
+ * {@link #compareAndSet(Span, long, long)} are supported. This makes it possible to maintain
+ * per-span counters from multiple threads and processors without allocations or locks.
+ *
+ * <p>Just like {@link SpanValue}s, {@link LongSpanValue}s can either be dense or sparse (see {@link
+ * SpanValue} for details).
+ */
+public final class LongSpanValue extends PrimitiveSpanValue {
+
+  private LongSpanValue(boolean dense) {
+    super(dense);
+  }
+
+  /**
+   * Creates a dense {@link LongSpanValue}, see {@link SpanValue#createDense()} for the
+   * implications.
+   */
+  public static LongSpanValue createDense() {
+    return new LongSpanValue(true);
+  }
+
+  /**
+   * Creates a sparse {@link LongSpanValue}, see {@link SpanValue#createSparse()} for the
+   * implications.
+   */
+  public static LongSpanValue createSparse() {
+    return new LongSpanValue(false);
+  }
+
+  /** Reads the current value for the given span, zero if none was set. */
+  public long get(Span span) {
+    return getRaw(span);
+  }
+
+  /** See {@link LongSpanValue#get(Span)}. */
+  public long get(ReadableSpan span) {
+    return getRaw(span);
+  }
+
+  /** See {@link LongSpanValue#get(Span)}. */
+  public long get(ReadWriteSpan span) {
+    return getRaw(span);
+  }
+
+  /** Sets the value for the given span. */
+  public void set(Span span, long value) {
+    setRaw(span, value);
+  }
+
+  /** See {@link LongSpanValue#set(Span, long)}. */
+  public void set(ReadableSpan span, long value) {
+    setRaw(span, value);
+  }
+
+  /** See {@link LongSpanValue#set(Span, long)}. */
+  public void set(ReadWriteSpan span, long value) {
+    setRaw(span, value);
+  }
+
+  /**
+   * Atomically adds the given delta to the value of the given span.
+   *
+   * @return the updated value
+   */
+  public long addAndGet(Span span, long delta) {
+    return addAndGetRaw(span, delta);
+  }
+
+  /** See {@link LongSpanValue#addAndGet(Span, long)}. */
+  public long addAndGet(ReadableSpan span, long delta) {
+    return addAndGetRaw(span, delta);
+  }
+
+  /** See {@link LongSpanValue#addAndGet(Span, long)}. */
+  public long addAndGet(ReadWriteSpan span, long delta) {
+    return addAndGetRaw(span, delta);
+  }
+
+  /**
+   * Atomically sets the value for the given span to {@code update} if the current value equals
+   * {@code expect}.
+   *
+   * @return true, if the value was updated
+   */
+  public boolean compareAndSet(Span span, long expect, long update) {
+    return compareAndSetRaw(span, expect, update);
+  }
+
+  /** See {@link LongSpanValue#compareAndSet(Span, long, long)}. */
+  public boolean compareAndSet(ReadableSpan span, long expect, long update) {
+    return compareAndSetRaw(span, expect, update);
+  }
+
+  /** See {@link LongSpanValue#compareAndSet(Span, long, long)}. */
+  public boolean compareAndSet(ReadWriteSpan span, long expect, long update) {
+    return compareAndSetRaw(span, expect, update);
+  }
+
+  /** Resets the value for the given span to zero. */
+  public void clear(Span span) {
+    clearRaw(span);
+  }
+
+  /** See {@link LongSpanValue#clear(Span)}. */
+  public void clear(ReadableSpan span) {
+    clearRaw(span);
+  }
+
+  /** See {@link LongSpanValue#clear(Span)}. */
+  public void clear(ReadWriteSpan span) {
+    clearRaw(span);
+  }
+}
@@ -69,11 +69,18 @@ class MutableCompositeSpanProcessor implements SpanProcessor {
 
   @Override
   public void onEnd(ReadableSpan readableSpan) {
-    composite.onEnd(readableSpan);
+    try {
+      composite.onEnd(readableSpan);
+    } finally {
+      // this is the terminal processor of the chain, so all chained processors are done with the
+      // span
+      SpanValue.releaseOnEnd(readableSpan);
+    }
   }
 
   @Override
   public boolean isEndRequired() {
-    return composite.isEndRequired();
+    // required for releasing SpanValues with ReleasePolicy.ON_END
+    return true;
   }
 }
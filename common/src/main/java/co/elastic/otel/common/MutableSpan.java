@@ -19,12 +19,18 @@
 package co.elastic.otel.common;
 
 import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
 import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
 import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
 import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
@@ -36,6 +42,10 @@ import javax.annotation.Nullable;
  *
  * <p>Note that after {@link #toSpanData()} has been called, no more mutation are allowed. This
  * guarantees that the returned SpanData is safe to use across threads.
+ *
+ * <p>All mutations are collected in a single {@link MutableSpanData}. Wrapping a frozen {@link
+ * MutableSpan} again carries over the previous mutations instead of nesting wrappers, so a span
+ * mutated by multiple processors is only copied once.
  */
 public class MutableSpan implements ReadableSpan {
 
@@ -72,7 +82,7 @@ public class MutableSpan implements ReadableSpan {
 
   private SpanData getDelegateSpanData() {
     if (cachedDelegateSpanData == null) {
-      cachedDelegateSpanData = delegate.toSpanData();
+      cachedDelegateSpanData = SpanDataSnapshots.get(delegate);
     }
     return cachedDelegateSpanData;
   }
@@ -115,6 +125,14 @@ public class MutableSpan implements ReadableSpan {
     mutate().setAttribute(key, value);
   }
 
+  @Override
+  public Attributes getAttributes() {
+    if (mutableSpanData != null) {
+      return mutableSpanData.getAttributes();
+    }
+    return delegate.getAttributes();
+  }
+
   @Override
   public String getName() {
     if (mutableSpanData != null) {
@@ -163,6 +181,90 @@ public class MutableSpan implements ReadableSpan {
 
   @Override
   public SpanKind getKind() {
+    if (mutableSpanData != null) {
+      return mutableSpanData.getKind();
+    }
     return delegate.getKind();
   }
+
+  public void setKind(SpanKind kind) {
+    if (kind == null) {
+      throw new IllegalArgumentException("kind must not be null");
+    }
+    mutate().setKind(kind);
+  }
+
+  public StatusData getStatus() {
+    return currentSpanData().getStatus();
+  }
+
+  /** Same as {@code getStatus().getStatusCode()}, but avoids snapshotting an unmodified span. */
+  StatusCode getStatusCode() {
+    if (mutableSpanData == null && cachedDelegateSpanData == null) {
+      return SpanStatusCodes.of(delegate);
+    }
+    return currentSpanData().getStatus().getStatusCode();
+  }
+
+  public void setStatus(StatusData status) {
+    if (status == null) {
+      throw new IllegalArgumentException("status must not be null");
+    }
+    mutate().setStatus(status);
+  }
+
+  public List<EventData> getEvents() {
+    return currentSpanData().getEvents();
+  }
+
+  /**
+   * Replaces the events of this span. Unless {@link #setTotalRecordedEvents(int)} is used, the
+   * number of dropped events stays the same.
+   */
+  public void setEvents(List<EventData> events) {
+    mutate().setEvents(events);
+  }
+
+  public int getTotalRecordedEvents() {
+    return currentSpanData().getTotalRecordedEvents();
+  }
+
+  public void setTotalRecordedEvents(int totalRecordedEvents) {
+    mutate().setTotalRecordedEvents(totalRecordedEvents);
+  }
+
+  public List<LinkData> getLinks() {
+    return currentSpanData().getLinks();
+  }
+
+  /**
+   * Replaces the links of this span. Unless {@link #setTotalRecordedLinks(int)} is used, the number
+   * of dropped links stays the same.
+   */
+  public void setLinks(List<LinkData> links) {
+    mutate().setLinks(links);
+  }
+
+  public int getTotalRecordedLinks() {
+    return currentSpanData().getTotalRecordedLinks();
+  }
+
+  public void setTotalRecordedLinks(int totalRecordedLinks) {
+    mutate().setTotalRecordedLinks(totalRecordedLinks);
+  }
+
+  public int getTotalAttributeCount() {
+    return currentSpanData().getTotalAttributeCount();
+  }
+
+  public void setTotalAttributeCount(int totalAttributeCount) {
+    mutate().setTotalAttributeCount(totalAttributeCount);
+  }
+
+  private SpanData currentSpanData() {
+    if (mutableSpanData != null) {
+      return mutableSpanData;
+    }
+    return getDelegateSpanData();
+  }
 }
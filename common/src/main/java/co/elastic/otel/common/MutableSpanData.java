@@ -20,66 +20,102 @@ package co.elastic.otel.common;
 
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
-import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.sdk.trace.data.DelegatingSpanData;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
 import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import javax.annotation.Nullable;
 
+/**
+ * A {@link SpanData} applying overrides on top of another {@link SpanData}.
+ *
+ * <p>When wrapping another {@link MutableSpanData}, its overrides are copied and the original
+ * {@link SpanData} is wrapped instead. This way a span mutated by multiple processors results in a
+ * single wrapper, no matter how often it has been frozen in between.
+ *
+ * <p>Unless explicitly overridden, the total recorded counts are adjusted so that the number of
+ * dropped attributes, events and links stays the same as for the original span.
+ */
 public class MutableSpanData extends DelegatingSpanData {
 
+  private static final int NOT_OVERRIDDEN = -1;
+
+  final SpanData original;
+
   @Nullable private Map<AttributeKey<?>, Object> attributeOverrides = null;
 
   private Attributes cachedMutatedAttributes = null;
 
   private String nameOverride = null;
 
+  @Nullable private SpanKind kindOverride = null;
+
+  @Nullable private StatusData statusOverride = null;
+
+  @Nullable private List<EventData> eventsOverride = null;
+
+  @Nullable private List<LinkData> linksOverride = null;
+
+  private int totalAttributeCountOverride = NOT_OVERRIDDEN;
+
+  private int totalRecordedEventsOverride = NOT_OVERRIDDEN;
+
+  private int totalRecordedLinksOverride = NOT_OVERRIDDEN;
+
   protected MutableSpanData(SpanData delegate) {
-    super(delegate);
+    super(unwrap(delegate));
+    this.original = unwrap(delegate);
+    if (delegate instanceof MutableSpanData) {
+      MutableSpanData other = (MutableSpanData) delegate;
+      if (other.attributeOverrides != null) {
+        attributeOverrides = new HashMap<>(other.attributeOverrides);
+      }
+      nameOverride = other.nameOverride;
+      kindOverride = other.kindOverride;
+      statusOverride = other.statusOverride;
+      eventsOverride = other.eventsOverride;
+      linksOverride = other.linksOverride;
+      totalAttributeCountOverride = other.totalAttributeCountOverride;
+      totalRecordedEventsOverride = other.totalRecordedEventsOverride;
+      totalRecordedLinksOverride = other.totalRecordedLinksOverride;
+    }
   }
 
-  public <T> void setAttribute(AttributeKey<T> key, @Nullable T value) {
-    if (attributeOverrides != null
-        && attributeOverrides.containsKey(key)
-        && Objects.equals(attributeOverrides.get(key), value)) {
-      return;
-    }
-    T originalValue = super.getAttributes().get(key);
-    if (Objects.equals(originalValue, value)) {
-      if (attributeOverrides != null) {
-        cachedMutatedAttributes = null;
-        attributeOverrides.remove(key);
-      }
-      return;
+  private static SpanData unwrap(SpanData spanData) {
+    if (spanData instanceof MutableSpanData) {
+      return ((MutableSpanData) spanData).original;
     }
+    return spanData;
+  }
+
+  public <T> void setAttribute(AttributeKey<T> key, @Nullable T value) {
     if (attributeOverrides == null) {
       attributeOverrides = new HashMap<>();
+    } else if (attributeOverrides.containsKey(key)
+        && Objects.equals(attributeOverrides.get(key), value)) {
+      return;
     }
+    // overrides equal to the original value are discarded lazily in getAttributes()
     cachedMutatedAttributes = null;
     attributeOverrides.put(key, value);
   }
 
   @Override
-  @SuppressWarnings({"rawtypes", "unchecked"})
   public Attributes getAttributes() {
-
     Attributes original = super.getAttributes();
     if (attributeOverrides == null || attributeOverrides.isEmpty()) {
       return original;
     }
     if (cachedMutatedAttributes == null) {
-      AttributesBuilder attributesBuilder = Attributes.builder().putAll(original);
-      for (AttributeKey overrideKey : attributeOverrides.keySet()) {
-        Object value = attributeOverrides.get(overrideKey);
-        if (value == null) {
-          attributesBuilder.remove(overrideKey);
-        } else {
-          attributesBuilder.put(overrideKey, value);
-        }
-      }
-      cachedMutatedAttributes = attributesBuilder.build();
+      cachedMutatedAttributes = OverlayAttributes.create(original, attributeOverrides);
     }
     return cachedMutatedAttributes;
   }
@@ -92,6 +128,19 @@ public class MutableSpanData extends DelegatingSpanData {
     return super.getAttributes().get(key);
   }
 
+  public void setTotalAttributeCount(int totalAttributeCount) {
+    totalAttributeCountOverride = checkCount(totalAttributeCount);
+  }
+
+  @Override
+  public int getTotalAttributeCount() {
+    if (totalAttributeCountOverride != NOT_OVERRIDDEN) {
+      return totalAttributeCountOverride;
+    }
+    return adjustTotal(
+        super.getTotalAttributeCount(), super.getAttributes().size(), getAttributes().size());
+  }
+
   public void setName(String name) {
     nameOverride = name;
   }
@@ -103,4 +152,96 @@ public class MutableSpanData extends DelegatingSpanData {
     }
     return super.getName();
   }
+
+  public void setKind(SpanKind kind) {
+    kindOverride = kind;
+  }
+
+  @Override
+  public SpanKind getKind() {
+    if (kindOverride != null) {
+      return kindOverride;
+    }
+    return super.getKind();
+  }
+
+  public void setStatus(StatusData status) {
+    statusOverride = status;
+  }
+
+  @Override
+  public StatusData getStatus() {
+    if (statusOverride != null) {
+      return statusOverride;
+    }
+    return super.getStatus();
+  }
+
+  public void setEvents(List<EventData> events) {
+    eventsOverride = Collections.unmodifiableList(new ArrayList<>(events));
+  }
+
+  @Override
+  public List<EventData> getEvents() {
+    if (eventsOverride != null) {
+      return eventsOverride;
+    }
+    return super.getEvents();
+  }
+
+  public void setTotalRecordedEvents(int totalRecordedEvents) {
+    totalRecordedEventsOverride = checkCount(totalRecordedEvents);
+  }
+
+  @Override
+  public int getTotalRecordedEvents() {
+    if (totalRecordedEventsOverride != NOT_OVERRIDDEN) {
+      return totalRecordedEventsOverride;
+    }
+    if (eventsOverride == null) {
+      return super.getTotalRecordedEvents();
+    }
+    return adjustTotal(
+        super.getTotalRecordedEvents(), super.getEvents().size(), eventsOverride.size());
+  }
+
+  public void setLinks(List<LinkData> links) {
+    linksOverride = Collections.unmodifiableList(new ArrayList<>(links));
+  }
+
+  @Override
+  public List<LinkData> getLinks() {
+    if (linksOverride != null) {
+      return linksOverride;
+    }
+    return super.getLinks();
+  }
+
+  public void setTotalRecordedLinks(int totalRecordedLinks) {
+    totalRecordedLinksOverride = checkCount(totalRecordedLinks);
+  }
+
+  @Override
+  public int getTotalRecordedLinks() {
+    if (totalRecordedLinksOverride != NOT_OVERRIDDEN) {
+      return totalRecordedLinksOverride;
+    }
+    if (linksOverride == null) {
+      return super.getTotalRecordedLinks();
+    }
+    return adjustTotal(
+        super.getTotalRecordedLinks(), super.getLinks().size(), linksOverride.size());
+  }
+
+  private static int adjustTotal(int originalTotal, int originalSize, int size) {
+    int dropped = Math.max(0, originalTotal - originalSize);
+    return size + dropped;
+  }
+
+  private static int checkCount(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative: " + count);
+    }
+    return count;
+  }
 }
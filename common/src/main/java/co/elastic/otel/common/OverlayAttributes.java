@@ -0,0 +1,162 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link Attributes} view layering overrides on top of other attributes without copying them. An
+ * override with a null value removes the attribute.
+ *
+ * <p>The overrides are copied on construction, so that this view stays immutable as long as the
+ * underlying attributes are.
+ *
+ * <p>Only other {@link OverlayAttributes} can be equal to this view. The SDK's attributes
+ * implementation only considers instances of its own class equal, so that comparing with those in
+ * either direction yields {@code false}. Use {@code toBuilder().build()} to compare with arbitrary
+ * {@link Attributes}.
+ */
+class OverlayAttributes implements Attributes {
+
+  private final Attributes delegate;
+
+  private final Map<AttributeKey<?>, Object> overrides;
+
+  private final int size;
+
+  @Nullable private Map<AttributeKey<?>, Object> asMap;
+
+  private OverlayAttributes(Attributes delegate, Map<AttributeKey<?>, Object> overrides, int size) {
+    this.delegate = delegate;
+    this.overrides = overrides;
+    this.size = size;
+  }
+
+  /**
+   * @return the attributes resulting from applying the overrides, which are the provided delegate
+   *     itself if none of the overrides changes it.
+   */
+  static Attributes create(Attributes delegate, Map<AttributeKey<?>, Object> overrides) {
+    Map<AttributeKey<?>, Object> effective = null;
+    int size = delegate.size();
+    for (Map.Entry<AttributeKey<?>, Object> override : overrides.entrySet()) {
+      Object originalValue = delegate.get(override.getKey());
+      Object value = override.getValue();
+      if (Objects.equals(originalValue, value)) {
+        continue;
+      }
+      if (effective == null) {
+        effective = new LinkedHashMap<>();
+      }
+      effective.put(override.getKey(), value);
+      if (originalValue == null) {
+        size++;
+      } else if (value == null) {
+        size--;
+      }
+    }
+    if (effective == null) {
+      return delegate;
+    }
+    return new OverlayAttributes(delegate, effective, size);
+  }
+
+  @Nullable
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(AttributeKey<T> key) {
+    if (overrides.containsKey(key)) {
+      return (T) overrides.get(key);
+    }
+    return delegate.get(key);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super AttributeKey<?>, ? super Object> consumer) {
+    delegate.forEach(
+        (key, value) -> {
+          if (!overrides.containsKey(key)) {
+            consumer.accept(key, value);
+          }
+        });
+    for (Map.Entry<AttributeKey<?>, Object> override : overrides.entrySet()) {
+      if (override.getValue() != null) {
+        consumer.accept(override.getKey(), override.getValue());
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public Map<AttributeKey<?>, Object> asMap() {
+    // only materialized on demand, exporters iterate via forEach
+    Map<AttributeKey<?>, Object> result = asMap;
+    if (result == null) {
+      Map<AttributeKey<?>, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+      forEach(map::put);
+      result = Collections.unmodifiableMap(map);
+      asMap = result;
+    }
+    return result;
+  }
+
+  @Override
+  public AttributesBuilder toBuilder() {
+    return Attributes.builder().putAll(this);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof OverlayAttributes)) {
+      // keeps equals symmetric, see class documentation
+      return false;
+    }
+    return asMap().equals(((OverlayAttributes) other).asMap());
+  }
+
+  @Override
+  public int hashCode() {
+    return asMap().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return asMap().toString();
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+/**
+ * Base class for {@link SpanValue} variants storing primitive values without boxing (see {@link
+ * LongSpanValue}, {@link IntSpanValue}, {@link DoubleSpanValue} and {@link BooleanSpanValue}).
+ *
+ * <p>All primitive variants are stored as raw long bits. A span without a value attached reads as
+ * zero (or {@code false} respectively).
+ */
+abstract class PrimitiveSpanValue {
+
+  /**
+   * The index within the primitive slots of {@link SpanValueStorage} reserved for this value. Same
+   * semantics as {@link SpanValue#index}: sparse values use {@link Integer#MAX_VALUE}.
+   */
+  final int index;
+
+  PrimitiveSpanValue(boolean dense) {
+    this.index =
+        dense
+            ? SpanValueStorage.INDEX_SPACE.allocateDensePrimitiveIndex()
+            : ValueStorage.allocateSparsePrimitiveIndex();
+  }
+
+  final long getRaw(Object span) {
+    SpanValueStorage storage = SpanValue.getStorage(span, false);
+    if (storage != null) {
+      return storage.getLong(this);
+    }
+    return 0L;
+  }
+
+  final void setRaw(Object span, long value) {
+    if (value == 0L) {
+      // avoid initializing the storage if we just reset to the default
+      clearRaw(span);
+      return;
+    }
+    SpanValue.getStorage(span, true).setLong(this, value);
+  }
+
+  final long addAndGetRaw(Object span, long delta) {
+    return SpanValue.getStorage(span, true).addAndGetLong(this, delta);
+  }
+
+  final boolean compareAndSetRaw(Object span, long expect, long update) {
+    SpanValueStorage storage = SpanValue.getStorage(span, expect == 0L && update != 0L);
+    if (storage == null) {
+      // no storage means the current value is zero
+      return expect == 0L;
+    }
+    return storage.compareAndSetLong(this, expect, update);
+  }
+
+  final void clearRaw(Object span) {
+    SpanValueStorage storage = SpanValue.getStorage(span, false);
+    if (storage != null) {
+      storage.clearLong(this);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+/** Defines how long a value attached via a {@link SpanValue} is kept. */
+public enum ReleasePolicy {
+
+  /** The value stays attached for as long as the span itself is reachable. */
+  RETAIN,
+
+  /**
+   * The value is cleared automatically once the span has ended and the last chained span processor
+   * (see {@link ChainingSpanProcessorAutoConfiguration}) has run. This shortens the retention of
+   * heavy objects, e.g. while the span is queued for export.
+   *
+   * <p>Only use this for values which are not needed by exporting span processors or processors
+   * registered outside of the chain. If the chain is not installed, the value is retained like with
+   * {@link #RETAIN}.
+   */
+  ON_END
+}
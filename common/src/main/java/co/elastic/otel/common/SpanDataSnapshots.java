@@ -0,0 +1,64 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+/**
+ * Shares the {@link SpanData} snapshot of an ended span between all processors of the chain and the
+ * exporting processors, so that {@link ReadableSpan#toSpanData()} is only invoked once per span.
+ *
+ * <p>Caching only pays off if the exporting processor takes its snapshot from here as well, which
+ * is the case for the {@link FanOutExportSpanProcessor}. It is therefore disabled unless the
+ * fan-out export is enabled, in which case {@link #get(ReadableSpan)} simply delegates to {@link
+ * ReadableSpan#toSpanData()}.
+ *
+ * <p>The snapshot is stored in a sparse {@link SpanValue} with {@link ReleasePolicy#ON_END} and
+ * therefore doesn't outlive the processing of the span. Spans which haven't ended yet are not
+ * cached, because their data may still change. {@link MutableSpan}s are not cached either: They
+ * provide their own snapshot, which reflects the mutations and is immutable once taken. Spans of
+ * other implementations than the SDK can't hold {@link SpanValue}s and are never cached.
+ */
+public class SpanDataSnapshots {
+
+  private static final SpanValue<SpanData> snapshot = SpanValue.createSparse(ReleasePolicy.ON_END);
+
+  private static volatile boolean enabled = false;
+
+  private SpanDataSnapshots() {}
+
+  static void setEnabled(boolean enabled) {
+    SpanDataSnapshots.enabled = enabled;
+  }
+
+  /**
+   * @return the {@link SpanData} of the given span, created at most once for ended spans if caching
+   *     is enabled.
+   */
+  public static SpanData get(ReadableSpan span) {
+    if (!enabled
+        || span instanceof MutableSpan
+        || !span.hasEnded()
+        || !SpanValue.isSupported(span)) {
+      return span.toSpanData();
+    }
+    return snapshot.computeIfNull(span, span::toSpanData);
+  }
+}
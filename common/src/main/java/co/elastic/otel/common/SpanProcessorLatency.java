@@ -0,0 +1,153 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+
+/**
+ * Optionally records the time spent in the start and end callbacks of each chained span processor.
+ *
+ * <p>Recording is disabled by default, in which case the overhead is a single volatile read per
+ * callback. When enabled, only one out of {@link #setSamplingInterval(int) n} invocations is timed.
+ * Samples are recorded into a histogram registered via {@link #registerMetrics(Meter)}, so that
+ * percentiles can be aggregated across instances and time ranges by the backend. Samples taken
+ * before the histogram has been registered are discarded.
+ */
+public class SpanProcessorLatency {
+
+  static final AttributeKey<String> PROCESSOR = AttributeKey.stringKey("processor");
+
+  static final AttributeKey<String> PHASE = AttributeKey.stringKey("span.phase");
+
+  static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  // callbacks usually take micro- rather than milliseconds
+  private static final List<Double> BUCKET_BOUNDARIES =
+      Arrays.asList(
+          0.000_001,
+          0.000_002_5,
+          0.000_005,
+          0.000_01,
+          0.000_025,
+          0.000_05,
+          0.000_1,
+          0.000_25,
+          0.000_5,
+          0.001,
+          0.002_5,
+          0.005,
+          0.01,
+          0.025,
+          0.05,
+          0.1);
+
+  enum Phase {
+    START("start"),
+    END("end"),
+    END_BATCH("end_batch");
+
+    private final String attributeValue;
+
+    Phase(String attributeValue) {
+      this.attributeValue = attributeValue;
+    }
+  }
+
+  private static final Map<Class<?>, Attributes[]> attributesByProcessor =
+      new ConcurrentHashMap<>();
+
+  // 0 means disabled
+  private static volatile int samplingInterval = 0;
+
+  @Nullable private static volatile DoubleHistogram histogram;
+
+  private SpanProcessorLatency() {}
+
+  /**
+   * @param interval record the latency of one out of this many invocations, 0 disables recording
+   */
+  public static void setSamplingInterval(int interval) {
+    if (interval < 0) {
+      throw new IllegalArgumentException("sampling interval must not be negative: " + interval);
+    }
+    samplingInterval = interval;
+  }
+
+  /**
+   * @return the current time if this invocation should be timed, {@link #NOT_SAMPLED} otherwise
+   */
+  static long startTimer() {
+    int interval = samplingInterval;
+    if (interval == 0 || (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0)) {
+      return NOT_SAMPLED;
+    }
+    return System.nanoTime();
+  }
+
+  static void stopTimer(long startNanos, Object processor, Phase phase) {
+    if (startNanos == NOT_SAMPLED) {
+      return;
+    }
+    long duration = Math.max(0, System.nanoTime() - startNanos);
+    DoubleHistogram target = histogram;
+    if (target == null) {
+      return;
+    }
+    Class<?> processorClass = processor.getClass();
+    Attributes[] attributes = attributesByProcessor.get(processorClass);
+    if (attributes == null) {
+      attributes =
+          attributesByProcessor.computeIfAbsent(
+              processorClass, SpanProcessorLatency::createAttributes);
+    }
+    target.record(duration / NANOS_PER_SECOND, attributes[phase.ordinal()]);
+  }
+
+  /** Registers the histogram the sampled latencies are recorded into on the given meter. */
+  public static void registerMetrics(Meter meter) {
+    histogram =
+        meter
+            .histogramBuilder("elastic.otel.span_processor.latency")
+            .setDescription("Sampled latencies of span processor callbacks")
+            .setUnit("s")
+            .setExplicitBucketBoundariesAdvice(BUCKET_BOUNDARIES)
+            .build();
+  }
+
+  private static Attributes[] createAttributes(Class<?> processorClass) {
+    Phase[] phases = Phase.values();
+    Attributes[] attributes = new Attributes[phases.length];
+    for (Phase phase : phases) {
+      attributes[phase.ordinal()] =
+          Attributes.of(PROCESSOR, processorClass.getName(), PHASE, phase.attributeValue);
+    }
+    return attributes;
+  }
+}
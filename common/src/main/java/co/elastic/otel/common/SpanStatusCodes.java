@@ -0,0 +1,86 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the status of ended spans, which {@link ReadableSpan} doesn't expose, without taking a
+ * {@link io.opentelemetry.sdk.trace.data.SpanData} snapshot.
+ *
+ * <p>The status of SDK spans is read from their private field. This is safe once the span has
+ * ended, because the status can't change afterwards and {@link ReadableSpan#hasEnded()}
+ * synchronizes with the end of the span. Other span implementations fall back to the shared {@link
+ * SpanDataSnapshots snapshot}.
+ */
+class SpanStatusCodes {
+
+  private static final Logger logger = Logger.getLogger(SpanStatusCodes.class.getName());
+
+  @Nullable private static final Class<?> SDK_SPAN_CLASS;
+
+  @Nullable private static final MethodHandle sdkSpanStatusGetter;
+
+  static {
+    Class<?> spanClass = null;
+    MethodHandle getter = null;
+    try {
+      spanClass = Class.forName("io.opentelemetry.sdk.trace.SdkSpan");
+      Field statusField = spanClass.getDeclaredField("status");
+      if (statusField.getType() != StatusData.class) {
+        throw new IllegalStateException("Unexpected field type: " + statusField.getType());
+      }
+      statusField.setAccessible(true);
+      getter = MethodHandles.lookup().unreflectGetter(statusField);
+    } catch (Exception e) {
+      logger.log(Level.FINE, "Reading the status of spans from their snapshot", e);
+      spanClass = null;
+    }
+    SDK_SPAN_CLASS = spanClass;
+    sdkSpanStatusGetter = getter;
+  }
+
+  private SpanStatusCodes() {}
+
+  /**
+   * @param span an ended span
+   * @return the status code of the span
+   */
+  static StatusCode of(ReadableSpan span) {
+    if (span instanceof MutableSpan) {
+      return ((MutableSpan) span).getStatusCode();
+    }
+    if (span.getClass() == SDK_SPAN_CLASS && span.hasEnded()) {
+      try {
+        return ((StatusData) sdkSpanStatusGetter.invoke(span)).getStatusCode();
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return SpanDataSnapshots.get(span).getStatus().getStatusCode();
+  }
+}
@@ -21,6 +21,7 @@ package co.elastic.otel.common;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.sdk.trace.ReadWriteSpan;
 import io.opentelemetry.sdk.trace.ReadableSpan;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
@@ -42,10 +43,10 @@ import javax.annotation.Nullable;
  *   <li>dense SpanValues are stored as array entries in a backing array: This means they occupy
  *       space on every span, even if the span doesn't have a value for the corresponding SpanValue.
  *       However, they are faster to access than sparse SpanValues and occupy less memory when most
- *       spans do have a value set due to not requiring a HashMap Node
+ *       spans do have a value set due to not requiring a map entry
  *   <li>sparse SpanValues are stored as entries in a backing Map: They don't occupy space on spans
- *       which do not have a value for them, but are slower to access and require a HashMap Node
- *       when stored.
+ *       which do not have a value for them, but are slower to access and require a map entry when
+ *       stored.
  * </ul>
  *
  * <p>NOTE: the stored values must not have strong reference to the spans they are attached to, as
@@ -58,36 +59,54 @@ public class SpanValue<V> {
   IMPLEMENTATION NOTES
   We attach a single AtomicReferenceArray (implemented via SpanValueStorage) to spans which is used
   as storage for ALL SpanValues.
-  The first entry in this array is always a Map<SpanValue, Object>: This map is used as storage for
-   * sparse SpanValues
-   * dense SpanValues which have been created AFTER the AtomicReferenceArray of the given span was initialized
+  The first entry in this array is always a SparseValueMap: This compact, lock-free map is used as
+  storage for sparse SpanValues.
+  The second entry holds the unboxed storage for dense primitive SpanValues (see PrimitiveSpanValue),
+  sparse primitive SpanValues use mutable AtomicLong holders in the SparseValueMap.
 
-  Every dense SpanValue has a unique, reserved index in the AtomicReference array (starting from 1).
+  Every dense SpanValue has a unique, reserved index in the AtomicReference array (starting from 2).
   They directly use the array at the corresponding index for storage.
 
   The AtomicReferenceArray is initialized the first time a SpanValue is written on the given span.
-  Its size is the number of dense SpanValues plus one (for the Map at index 0).
+  Its size is the number of dense SpanValues plus two (for the reserved entries).
 
   So if the array on a span has been initialized before a given dense SpanValue, the
   dense SpanValue has no space in the array.
-  In this case we simply fall back to the Map at index zero for storage.
+  In this case the first write of that SpanValue replaces the array with a larger one via the
+  SpanValueStorageProvider (e.g. a CAS on the injected field), migrating all existing entries.
+  This way dense SpanValues always end up at their reserved index.
+
+  WellKnownSpanValues bypass the AtomicReferenceArray: Each of them has its own field injected into
+  SdkSpan, saving the dependent load of the array and the bounds check on the hottest paths.
    */
 
   private static final Class<?> SDK_SPAN_CLASS = getSdkSpanClass();
 
   private static final SpanValueStorageProvider storageProvider = SpanValueStorageProvider.get();
 
+  private static final Object releasedOnEndLock = new Object();
+
+  /** All SpanValues created with {@link ReleasePolicy#ON_END}, copied on write. */
+  private static volatile SpanValue<?>[] releasedOnEnd = new SpanValue<?>[0];
+
   /**
    * The index within the {@link SpanValueStorage} which is reserved for this particular SpanValue.
-   * We use the {@link Integer#MAX_VALUE} for sparse SpanValues. This allows us to avoid special
-   * cases for sparse storage: If {@link AtomicReferenceArray#length()} < index => use the entry at
-   * index <br>
-   * else => use the Map at index 0
+   * We use the {@link Integer#MAX_VALUE} for sparse SpanValues, which are stored in the Map at
+   * index 0 instead. A dense index beyond {@link AtomicReferenceArray#length()} means that the
+   * storage needs to be grown before writing.
    */
   final int index;
 
+  /** The field to use instead of the {@link SpanValueStorage}, only set for well-known values. */
+  @Nullable private final DedicatedSpanField dedicatedField;
+
   private SpanValue(int index) {
+    this(index, null);
+  }
+
+  private SpanValue(int index, @Nullable DedicatedSpanField dedicatedField) {
     this.index = index;
+    this.dedicatedField = dedicatedField;
   }
 
   /**
@@ -106,7 +125,13 @@ public class SpanValue<V> {
    * <p>See {@link SpanValue#createSparse()}
    */
   public static <V> SpanValue<V> createDense() {
-    return new SpanValue<>(SpanValueStorage.allocateDenseIndex());
+    return createDense(ReleasePolicy.RETAIN);
+  }
+
+  /** Same as {@link SpanValue#createDense()}, but with the given {@link ReleasePolicy}. */
+  public static <V> SpanValue<V> createDense(ReleasePolicy releasePolicy) {
+    return register(
+        new SpanValue<>(SpanValueStorage.INDEX_SPACE.allocateDenseIndex()), releasePolicy);
   }
 
   /**
@@ -115,7 +140,62 @@ public class SpanValue<V> {
    * SpanValue#createDense()} ) if applicable.
    */
   public static <V> SpanValue<V> createSparse() {
-    return new SpanValue<>(SpanValueStorage.allocateSparseIndex());
+    return createSparse(ReleasePolicy.RETAIN);
+  }
+
+  /** Same as {@link SpanValue#createSparse()}, but with the given {@link ReleasePolicy}. */
+  public static <V> SpanValue<V> createSparse(ReleasePolicy releasePolicy) {
+    return register(new SpanValue<>(ValueStorage.allocateSparseIndex()), releasePolicy);
+  }
+
+  /**
+   * Creates the {@link SpanValue} for the given {@link WellKnownSpanValue}. If available, the value
+   * is stored in a field dedicated to it. Otherwise, a regular dense or sparse SpanValue is used.
+   *
+   * <p>Every {@link WellKnownSpanValue} can only be created once.
+   */
+  public static <V> SpanValue<V> createWellKnown(WellKnownSpanValue wellKnownValue) {
+    return createWellKnown(wellKnownValue, ReleasePolicy.RETAIN);
+  }
+
+  /**
+   * Same as {@link SpanValue#createWellKnown(WellKnownSpanValue)}, but with the given {@link
+   * ReleasePolicy}.
+   */
+  public static <V> SpanValue<V> createWellKnown(
+      WellKnownSpanValue wellKnownValue, ReleasePolicy releasePolicy) {
+    if (!wellKnownValue.claim()) {
+      throw new IllegalStateException(wellKnownValue + " has already been created");
+    }
+    DedicatedSpanField field = storageProvider.getDedicatedField(wellKnownValue);
+    if (field != null) {
+      return register(new SpanValue<>(ValueStorage.allocateSparseIndex(), field), releasePolicy);
+    }
+    return wellKnownValue.isDenseFallback()
+        ? createDense(releasePolicy)
+        : createSparse(releasePolicy);
+  }
+
+  private static <V> SpanValue<V> register(SpanValue<V> value, ReleasePolicy releasePolicy) {
+    if (releasePolicy == ReleasePolicy.ON_END) {
+      synchronized (releasedOnEndLock) {
+        SpanValue<?>[] current = releasedOnEnd;
+        SpanValue<?>[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = value;
+        releasedOnEnd = updated;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Clears all values created with {@link ReleasePolicy#ON_END} from the given span. Invoked once
+   * the last chained span processor has handled the ended span.
+   */
+  static void releaseOnEnd(ReadableSpan span) {
+    for (SpanValue<?> value : releasedOnEnd) {
+      value.clearImpl(span);
+    }
   }
 
   /** Reads the current value for the given span. */
@@ -217,10 +297,14 @@ public class SpanValue<V> {
     clearImpl(span);
   }
 
+  @SuppressWarnings("unchecked")
   private V getImpl(Object span) {
+    if (dedicatedField != null) {
+      return (V) dedicatedField.get(unwrap(span));
+    }
     SpanValueStorage storage = getStorage(span, false);
     if (storage != null) {
-      return storage.get(this);
+      return (V) storage.getValue(index, this);
     }
     return null;
   }
@@ -230,36 +314,69 @@ public class SpanValue<V> {
       clearImpl(span);
       return;
     }
-    SpanValueStorage storage = getStorage(span, true);
-    storage.set(this, value);
+    if (dedicatedField != null) {
+      dedicatedField.set(unwrap(span), value);
+      return;
+    }
+    ValueStorage storage = getStorageForWrite(span);
+    storage.setValue(index, this, value);
   }
 
   private boolean setIfNullImpl(Object span, @Nullable V value) {
     if (value == null) {
       return getImpl(span) == null; // setting to null if already null has no effect
     }
-    SpanValueStorage storage = getStorage(span, true);
-    return storage.setIfNull(this, value);
+    if (dedicatedField != null) {
+      return dedicatedField.compareAndSet(unwrap(span), null, value);
+    }
+    ValueStorage storage = getStorageForWrite(span);
+    return storage.setValueIfNull(index, this, value);
   }
 
+  @SuppressWarnings("unchecked")
   private V computeIfNullImpl(Object span, Supplier<V> valueInitializer) {
-    SpanValueStorage storage = getStorage(span, true);
-    return storage.computeIfNull(this, valueInitializer);
+    if (dedicatedField != null) {
+      Span unwrapped = unwrap(span);
+      V currentValue = (V) dedicatedField.get(unwrapped);
+      if (currentValue != null) {
+        return currentValue;
+      }
+      dedicatedField.compareAndSet(unwrapped, null, valueInitializer.get());
+      return (V) dedicatedField.get(unwrapped);
+    }
+    ValueStorage storage = getStorageForWrite(span);
+    return (V) storage.computeValueIfNull(index, this, valueInitializer);
   }
 
   private void clearImpl(Object span) {
+    if (dedicatedField != null) {
+      dedicatedField.set(unwrap(span), null);
+      return;
+    }
     SpanValueStorage storage = getStorage(span, false);
     if (storage != null) {
-      storage.clear(this);
+      storage.clearValue(index, this);
     }
   }
 
+  private ValueStorage getStorageForWrite(Object span) {
+    Span unwrapped = unwrap(span);
+    return storageProvider.get(unwrapped, true).withSlotFor(index, unwrapped, storageProvider);
+  }
+
   @Nullable
-  private static SpanValueStorage getStorage(Object span, boolean initialize) {
+  static SpanValueStorage getStorage(Object span, boolean initialize) {
     Span unwrapped = unwrap(span);
     return storageProvider.get(unwrapped, initialize);
   }
 
+  /**
+   * @return true, if values can be attached to the given span without unwrapping it
+   */
+  static boolean isSupported(Object span) {
+    return span.getClass() == SDK_SPAN_CLASS && ((Span) span).getSpanContext().isValid();
+  }
+
   /** Provides the underlying {@code SdkSpan} instance in case the given span is wrapped. */
   private static Span unwrap(Object span) {
     if (span.getClass() == SDK_SPAN_CLASS) {
@@ -18,18 +18,27 @@
  */
 package co.elastic.otel.common;
 
-import com.blogspot.mydailyjava.weaklockfree.WeakConcurrentMap;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.sdk.trace.FieldBackedSpanValueStorageProvider;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
-public interface SpanValueStorageProvider {
+public interface SpanValueStorageProvider extends ValueStorageProvider<Span, SpanValueStorage> {
 
   Logger logger = Logger.getLogger(SpanValueStorageProvider.class.getName());
 
+  /**
+   * System property to force the map-backed storage even if the field-backed one is available. Only
+   * intended for comparing both implementations in benchmarks.
+   */
+  String FORCE_MAP_BACKED_PROPERTY = "elastic.otel.internal.span-values.force-map-backed";
+
   static SpanValueStorageProvider get() {
+    if (Boolean.getBoolean(FORCE_MAP_BACKED_PROPERTY)) {
+      logger.log(Level.FINE, "Using map-backed storage for SpanValues as configured");
+      return MapBacked.getInstance();
+    }
     try {
       Class<?> sdkSpan = Class.forName("io.opentelemetry.sdk.trace.SdkSpan");
       if (sdkSpan.getClassLoader() != SpanValueStorage.class.getClassLoader()) {
@@ -47,8 +56,15 @@ public interface SpanValueStorageProvider {
         : MapBacked.getInstance();
   }
 
+  /**
+   * Provides access to the field injected into spans for the given {@link WellKnownSpanValue}.
+   *
+   * @return null, if this provider doesn't support dedicated fields or the field does not exist
+   */
   @Nullable
-  SpanValueStorage get(Span span, boolean initialize);
+  default DedicatedSpanField getDedicatedField(WellKnownSpanValue value) {
+    return null;
+  }
 
   class MapBacked implements SpanValueStorageProvider {
 
@@ -62,17 +78,28 @@ public interface SpanValueStorageProvider {
       return INSTANCE;
     }
 
-    private final WeakConcurrentMap<Span, SpanValueStorage> storageMap = WeakConcurrent.createMap();
+    private final WeakIdentityMap<Span, SpanValueStorage> storageMap =
+        new WeakIdentityMap<>("span-value-storages");
 
     @Override
     public SpanValueStorage get(Span span, boolean initialize) {
       SpanValueStorage storage = storageMap.get(span);
       if (storage == null && initialize) {
         storage = new SpanValueStorage();
-        storageMap.putIfAbsent(span, storage);
-        storage = storageMap.get(span);
+        SpanValueStorage existing = storageMap.putIfAbsent(span, storage);
+        if (existing == null) {
+          storage.countInstalled();
+          SpanValueStorage.INDEX_SPACE.mapBackedStorages.increment();
+        } else {
+          storage = existing;
+        }
       }
       return storage;
     }
+
+    @Override
+    public boolean replace(Span span, SpanValueStorage expected, SpanValueStorage replacement) {
+      return storageMap.replace(span, expected, replacement);
+    }
   }
 }
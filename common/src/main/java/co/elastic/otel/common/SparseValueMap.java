@@ -0,0 +1,215 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * A small, lock-free, identity-keyed map used by {@link SpanValueStorage} for sparse values. In
+ * contrast to a {@link java.util.concurrent.ConcurrentHashMap} it does not allocate any nodes and
+ * starts with a capacity of just four entries, which keeps the per-span overhead small: Most spans
+ * carry only very few sparse values, if any.
+ *
+ * <p>The entries are stored using open addressing with linear probing in a single array of
+ * alternating key and value slots. The last slot of the array is a link to the next, twice as large
+ * segment, which is only allocated when this segment is full. Growing therefore never needs to copy
+ * or move existing entries, which makes it easy to stay correct under concurrent writers.
+ *
+ * <p>Key slots are claimed exactly once via a CAS and never released: removing an entry only resets
+ * the value slot to null. Because a key never moves and there are only very few distinct keys
+ * (usually {@code static final} {@link SpanValue}s), this is fine. It also guarantees that a probe
+ * sequence reaching an empty key slot can stop, because the key cannot be stored anywhere else.
+ */
+// We use inheritance over composition here to not
+// waste space and time with an additional reference and object
+final class SparseValueMap extends AtomicReferenceArray<Object> {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  /** Returned by {@link #findKeySlot(Object, int)} if the key is not contained in any segment. */
+  private static final int ABSENT = -1;
+
+  /**
+   * Returned by {@link #findKeySlot(Object, int)} and {@link #claimKeySlot(Object, int)} if the
+   * next segment needs to be checked.
+   */
+  private static final int NOT_IN_SEGMENT = -2;
+
+  SparseValueMap() {
+    this(INITIAL_CAPACITY);
+  }
+
+  private SparseValueMap(int capacity) {
+    // two slots per entry plus one for the link to the next segment
+    super(capacity * 2 + 1);
+  }
+
+  @Nullable
+  Object get(Object key) {
+    int hash = hash(key);
+    for (SparseValueMap segment = this; segment != null; segment = segment.nextSegment(false)) {
+      int slot = segment.findKeySlot(key, hash);
+      if (slot >= 0) {
+        return segment.get(slot + 1);
+      }
+      if (slot == ABSENT) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  void set(Object key, @Nullable Object value) {
+    if (value == null) {
+      clear(key);
+      return;
+    }
+    int hash = hash(key);
+    for (SparseValueMap segment = this; ; segment = segment.nextSegment(true)) {
+      int slot = segment.claimKeySlot(key, hash);
+      if (slot >= 0) {
+        segment.set(slot + 1, value);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Atomically sets the value for the given key if it is currently null.
+   *
+   * @return true, if the value was set
+   */
+  boolean setIfNull(Object key, Object value) {
+    int hash = hash(key);
+    for (SparseValueMap segment = this; ; segment = segment.nextSegment(true)) {
+      int slot = segment.claimKeySlot(key, hash);
+      if (slot >= 0) {
+        return segment.compareAndSet(slot + 1, null, value);
+      }
+    }
+  }
+
+  /**
+   * Returns the current value for the given key. If it is null, it is atomically initialized with
+   * the value provided by the given supplier. Does not modify the map if the supplier returns null.
+   */
+  @Nullable
+  Object computeIfNull(Object key, Supplier<?> valueInitializer) {
+    Object current = get(key);
+    if (current != null) {
+      return current;
+    }
+    Object newValue = valueInitializer.get();
+    if (newValue == null) {
+      return null;
+    }
+    int hash = hash(key);
+    for (SparseValueMap segment = this; ; segment = segment.nextSegment(true)) {
+      int slot = segment.claimKeySlot(key, hash);
+      if (slot >= 0) {
+        if (segment.compareAndSet(slot + 1, null, newValue)) {
+          return newValue;
+        }
+        return segment.get(slot + 1);
+      }
+    }
+  }
+
+  void clear(Object key) {
+    int hash = hash(key);
+    for (SparseValueMap segment = this; segment != null; segment = segment.nextSegment(false)) {
+      int slot = segment.findKeySlot(key, hash);
+      if (slot >= 0) {
+        segment.set(slot + 1, null);
+        return;
+      }
+      if (slot == ABSENT) {
+        return;
+      }
+    }
+  }
+
+  private int capacity() {
+    return length() >>> 1;
+  }
+
+  /**
+   * @return the index of the key slot within this segment, {@link #ABSENT} if the key is not
+   *     contained in the map at all or {@link #NOT_IN_SEGMENT} if the next segment needs to be
+   *     searched.
+   */
+  private int findKeySlot(Object key, int hash) {
+    int capacity = capacity();
+    for (int i = 0; i < capacity; i++) {
+      int slot = ((hash + i) & (capacity - 1)) << 1;
+      Object current = get(slot);
+      if (current == key) {
+        return slot;
+      }
+      if (current == null) {
+        return ABSENT;
+      }
+    }
+    return NOT_IN_SEGMENT;
+  }
+
+  /**
+   * Finds the key slot for the given key within this segment. If the key is not present yet, the
+   * first free slot in the probe sequence is claimed for it.
+   *
+   * @return the index of the key slot or {@link #NOT_IN_SEGMENT} if this segment is full
+   */
+  private int claimKeySlot(Object key, int hash) {
+    int capacity = capacity();
+    for (int i = 0; i < capacity; i++) {
+      int slot = ((hash + i) & (capacity - 1)) << 1;
+      Object current = get(slot);
+      if (current == null) {
+        if (compareAndSet(slot, null, key)) {
+          return slot;
+        }
+        // another thread claimed the slot concurrently, potentially for the same key
+        current = get(slot);
+      }
+      if (current == key) {
+        return slot;
+      }
+    }
+    return NOT_IN_SEGMENT;
+  }
+
+  @Nullable
+  private SparseValueMap nextSegment(boolean initialize) {
+    int linkIndex = length() - 1;
+    SparseValueMap next = (SparseValueMap) get(linkIndex);
+    if (next == null && initialize) {
+      compareAndSet(linkIndex, null, new SparseValueMap(capacity() * 2));
+      next = (SparseValueMap) get(linkIndex);
+    }
+    return next;
+  }
+
+  private static int hash(Object key) {
+    int hash = System.identityHashCode(key);
+    // spread the higher bits, because only the lowest few are used for indexing
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,456 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Backing storage for all values attached to a single owner (e.g. all {@link SpanValue}s of a span
+ * or all {@link LogRecordValue}s of a log record), see the implementation notes of {@link
+ * SpanValue} for details. Every kind of owner has its own subclass with its own {@link IndexSpace}.
+ *
+ * <p>A storage which is too small for dense values registered after its allocation is replaced by a
+ * larger one (see {@link #withSlotFor(int, Object, ValueStorageProvider)}). When this happens,
+ * every slot of the old storage is sealed with a {@link Forwarded} marker after its value has been
+ * copied. Operations encountering such a marker simply retry on the replacement storage, which
+ * makes the migration safe in the presence of concurrent readers and writers.
+ */
+// We use inheritance over composition here to not
+// waste space and time with an additional reference and object
+public abstract class ValueStorage extends AtomicReferenceArray<Object> {
+
+  private static final int SPARSE_MAP_INDEX = 0;
+
+  private static final int PRIMITIVE_SLOTS_INDEX = 1;
+
+  private static final int SPARSE_INDEX = Integer.MAX_VALUE;
+
+  ValueStorage(IndexSpace indexSpace) {
+    super(indexSpace.nextDenseIndex.get());
+  }
+
+  /**
+   * Must be called by the {@link ValueStorageProvider} once this storage has been attached to its
+   * owner. Storages losing an installation race are discarded and therefore not counted.
+   */
+  public final void countInstalled() {
+    indexSpace().allocatedStorages.increment();
+  }
+
+  /** The dense indices allocated for the kind of owner this storage belongs to. */
+  abstract IndexSpace indexSpace();
+
+  /**
+   * Creates an empty storage of the same kind, sized according to the current {@link
+   * #indexSpace()}.
+   */
+  abstract ValueStorage createReplacement();
+
+  static int allocateSparseIndex() {
+    return SPARSE_INDEX;
+  }
+
+  static int allocateSparsePrimitiveIndex() {
+    return SPARSE_INDEX;
+  }
+
+  /**
+   * Returns a storage which has the slot with the given index reserved. If the index belongs to a
+   * dense value registered after this storage was allocated, the storage attached to the owner is
+   * replaced with a larger one first.
+   */
+  <T, S extends ValueStorage> ValueStorage withSlotFor(
+      int index, T owner, ValueStorageProvider<T, S> storageProvider) {
+    ValueStorage storage = this;
+    while (index != SPARSE_INDEX && index >= storage.length()) {
+      storage = storage.grow(owner, storageProvider);
+    }
+    return storage;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T, S extends ValueStorage> ValueStorage grow(
+      T owner, ValueStorageProvider<T, S> storageProvider) {
+    // Growing is rare (only after new dense values have been registered), so we simply use
+    // the monitor of the storage being replaced to ensure that only one replacement is created
+    synchronized (this) {
+      if (!(get(SPARSE_MAP_INDEX) instanceof Forwarded)) {
+        ValueStorage replacement = createReplacement();
+        migrateTo(replacement);
+        if (!storageProvider.replace(owner, (S) this, (S) replacement)) {
+          throw new IllegalStateException("Storage was replaced without being migrated");
+        }
+        replacement.countInstalled();
+        indexSpace().grownStorages.increment();
+      }
+    }
+    return storageProvider.get(owner, true);
+  }
+
+  private void migrateTo(ValueStorage replacement) {
+    Forwarded forwarded = new Forwarded(replacement);
+    // The sparse map is moved last: The replacement is only reachable via the storage provider
+    // or the sealed map slot after all other slots have been copied
+    for (int i = 1; i < length(); i++) {
+      moveSlot(i, forwarded);
+    }
+    moveSlot(SPARSE_MAP_INDEX, forwarded);
+  }
+
+  private void moveSlot(int index, Forwarded forwarded) {
+    while (true) {
+      Object value = get(index);
+      // the replacement slot is not visible to anyone else until this slot is sealed
+      forwarded.target.set(index, value);
+      if (compareAndSet(index, value, forwarded)) {
+        return;
+      }
+    }
+  }
+
+  /*
+  The operations below take the index of the value along with the key object (the SpanValue or
+  LogRecordValue instance), which is used for the SparseValueMap in case of sparse values.
+   */
+
+  @Nullable
+  Object getValue(int index, Object key) {
+    if (index == SPARSE_INDEX) {
+      SparseValueMap sparseStorage = getSparseValuesMap(false);
+      return sparseStorage != null ? sparseStorage.get(key) : null;
+    }
+    if (index >= length()) {
+      // the dense value was registered after this storage was allocated and
+      // has never been written, otherwise the storage would have been replaced
+      return null;
+    }
+    Object value = get(index);
+    if (value instanceof Forwarded) {
+      return ((Forwarded) value).target.getValue(index, key);
+    }
+    return value;
+  }
+
+  void setValue(int index, Object key, Object value) {
+    Objects.requireNonNull(value);
+    if (index == SPARSE_INDEX) {
+      getSparseValuesMap(true).set(key, value);
+      return;
+    }
+    ValueStorage storage = this;
+    while (true) {
+      Object current = storage.get(index);
+      if (current instanceof Forwarded) {
+        storage = ((Forwarded) current).target;
+      } else if (storage.compareAndSet(index, current, value)) {
+        return;
+      }
+    }
+  }
+
+  boolean setValueIfNull(int index, Object key, Object value) {
+    Objects.requireNonNull(value);
+    if (index == SPARSE_INDEX) {
+      return getSparseValuesMap(true).setIfNull(key, value);
+    }
+    ValueStorage storage = this;
+    while (true) {
+      Object current = storage.get(index);
+      if (current instanceof Forwarded) {
+        storage = ((Forwarded) current).target;
+      } else if (current != null) {
+        return false;
+      } else if (storage.compareAndSet(index, null, value)) {
+        return true;
+      }
+    }
+  }
+
+  @Nullable
+  Object computeValueIfNull(int index, Object key, Supplier<?> valueInitializer) {
+    if (index == SPARSE_INDEX) {
+      return getSparseValuesMap(true).computeIfNull(key, valueInitializer);
+    }
+    ValueStorage storage = this;
+    Object newValue = null;
+    while (true) {
+      Object current = storage.get(index);
+      if (current instanceof Forwarded) {
+        storage = ((Forwarded) current).target;
+      } else if (current != null) {
+        return current;
+      } else {
+        if (newValue == null) {
+          newValue = valueInitializer.get();
+          if (newValue == null) {
+            return null;
+          }
+        }
+        if (storage.compareAndSet(index, null, newValue)) {
+          return newValue;
+        }
+      }
+    }
+  }
+
+  void clearValue(int index, Object key) {
+    if (index == SPARSE_INDEX) {
+      SparseValueMap sparseStorage = getSparseValuesMap(false);
+      if (sparseStorage != null) {
+        sparseStorage.clear(key);
+      }
+      return;
+    }
+    if (index >= length()) {
+      return; // see getValue(int, Object)
+    }
+    ValueStorage storage = this;
+    while (true) {
+      Object current = storage.get(index);
+      if (current instanceof Forwarded) {
+        storage = ((Forwarded) current).target;
+      } else if (current == null || storage.compareAndSet(index, current, null)) {
+        return;
+      }
+    }
+  }
+
+  long getLong(PrimitiveSpanValue key) {
+    if (key.index == SPARSE_INDEX) {
+      AtomicLong holder = getPrimitiveHolder(key, false);
+      return holder != null ? holder.get() : 0L;
+    }
+    PrimitiveSlots slots = getPrimitiveSlots(key.index, false);
+    return slots != null ? slots.get(key.index - slots.offset) : 0L;
+  }
+
+  void setLong(PrimitiveSpanValue key, long value) {
+    if (key.index == SPARSE_INDEX) {
+      getPrimitiveHolder(key, true).set(value);
+    } else {
+      PrimitiveSlots slots = getPrimitiveSlots(key.index, true);
+      slots.set(key.index - slots.offset, value);
+    }
+  }
+
+  long addAndGetLong(PrimitiveSpanValue key, long delta) {
+    if (key.index == SPARSE_INDEX) {
+      return getPrimitiveHolder(key, true).addAndGet(delta);
+    }
+    PrimitiveSlots slots = getPrimitiveSlots(key.index, true);
+    return slots.addAndGet(key.index - slots.offset, delta);
+  }
+
+  boolean compareAndSetLong(PrimitiveSpanValue key, long expect, long update) {
+    // a missing holder or slot means the current value is zero, so we only need to create it if
+    // required
+    boolean initialize = expect == 0L;
+    if (key.index == SPARSE_INDEX) {
+      AtomicLong holder = getPrimitiveHolder(key, initialize);
+      return holder != null && holder.compareAndSet(expect, update);
+    }
+    PrimitiveSlots slots = getPrimitiveSlots(key.index, initialize);
+    return slots != null && slots.compareAndSet(key.index - slots.offset, expect, update);
+  }
+
+  void clearLong(PrimitiveSpanValue key) {
+    if (key.index == SPARSE_INDEX) {
+      AtomicLong holder = getPrimitiveHolder(key, false);
+      if (holder != null) {
+        holder.set(0L);
+      }
+    } else {
+      PrimitiveSlots slots = getPrimitiveSlots(key.index, false);
+      if (slots != null) {
+        slots.set(key.index - slots.offset, 0L);
+      }
+    }
+  }
+
+  /**
+   * Sparse primitive values are stored as mutable {@link AtomicLong} holders in the sparse map.
+   * This way only the first write allocates, subsequent updates happen in-place without boxing.
+   *
+   * <p>Holders are never removed once installed, clearing a value resets it to zero instead. This
+   * ensures that concurrent updates can't get lost on a holder which has been detached.
+   */
+  @Nullable
+  private AtomicLong getPrimitiveHolder(PrimitiveSpanValue key, boolean initialize) {
+    SparseValueMap sparseStorage = getSparseValuesMap(initialize);
+    if (sparseStorage == null) {
+      return null;
+    }
+    if (initialize) {
+      return (AtomicLong) sparseStorage.computeIfNull(key, AtomicLong::new);
+    }
+    return (AtomicLong) sparseStorage.get(key);
+  }
+
+  /** Provides the chunk of primitive slots containing the given dense primitive index. */
+  @Nullable
+  private PrimitiveSlots getPrimitiveSlots(int index, boolean initialize) {
+    PrimitiveSlots first = (PrimitiveSlots) getOrInitializeSlot(PRIMITIVE_SLOTS_INDEX, initialize);
+    return first != null ? first.chunkFor(index, initialize ? indexSpace() : null) : null;
+  }
+
+  @Nullable
+  private SparseValueMap getSparseValuesMap(boolean initialize) {
+    return (SparseValueMap) getOrInitializeSlot(SPARSE_MAP_INDEX, initialize);
+  }
+
+  /**
+   * Reads one of the reserved slots (sparse map or primitive slots), following forwarding markers.
+   * Empty slots are lazily populated if requested.
+   */
+  @Nullable
+  private Object getOrInitializeSlot(int index, boolean initialize) {
+    ValueStorage storage = this;
+    while (true) {
+      Object value = storage.get(index);
+      if (value instanceof Forwarded) {
+        storage = ((Forwarded) value).target;
+      } else if (value != null || !initialize) {
+        return value;
+      } else {
+        Object newValue =
+            index == SPARSE_MAP_INDEX
+                ? new SparseValueMap()
+                : new PrimitiveSlots(0, Math.max(1, indexSpace().nextDensePrimitiveIndex.get()));
+        if (storage.compareAndSet(index, null, newValue) && index == SPARSE_MAP_INDEX) {
+          indexSpace().sparseMaps.increment();
+        }
+      }
+    }
+  }
+
+  /**
+   * The dense indices handed out for one kind of owner (e.g. spans). Storages are sized according
+   * to the indices allocated so far.
+   */
+  static final class IndexSpace {
+
+    // index zero is reserved for the map of sparse values, index one for the primitive slots
+    private final AtomicInteger nextDenseIndex = new AtomicInteger(2);
+
+    private final AtomicInteger nextDensePrimitiveIndex = new AtomicInteger(0);
+
+    /** The kind of owner, used as attribute value for the {@link ValueStorageMetrics}. */
+    final String ownerKind;
+
+    // Striped counters, so that tracking them doesn't introduce contention on the hot path
+    final LongAdder allocatedStorages = new LongAdder();
+    final LongAdder grownStorages = new LongAdder();
+    final LongAdder sparseMaps = new LongAdder();
+    final LongAdder mapBackedStorages = new LongAdder();
+
+    IndexSpace(String ownerKind) {
+      this.ownerKind = ownerKind;
+    }
+
+    int allocateDenseIndex() {
+      return nextDenseIndex.getAndIncrement();
+    }
+
+    int allocateDensePrimitiveIndex() {
+      return nextDensePrimitiveIndex.getAndIncrement();
+    }
+
+    /** The number of reference slots (reserved and dense) of a newly allocated storage. */
+    int denseSlots() {
+      return nextDenseIndex.get();
+    }
+
+    /**
+     * Estimates the shallow size in bytes of a newly allocated storage, assuming compressed
+     * references. The lazily allocated sparse map and primitive slots are not included, because
+     * most owners never need them.
+     */
+    long estimatedStorageBytes() {
+      // AtomicReferenceArray object + backing Object[] (header, length, references)
+      return align(16) + align(16 + 4L * denseSlots());
+    }
+
+    private static long align(long size) {
+      return (size + 7) & ~7L;
+    }
+  }
+
+  /** Marker stored in all slots of a storage which has been replaced by a larger one. */
+  private static final class Forwarded {
+    final ValueStorage target;
+
+    Forwarded(ValueStorage target) {
+      this.target = target;
+    }
+  }
+
+  /**
+   * Storage for dense {@link PrimitiveSpanValue}s, which are kept unboxed as raw long bits. If
+   * dense primitive values are registered after the slots were allocated, an additional chunk is
+   * chained instead of copying the existing values. This way values never move and no updates can
+   * get lost.
+   */
+  private static final class PrimitiveSlots extends AtomicLongArray {
+
+    private static final AtomicReferenceFieldUpdater<PrimitiveSlots, PrimitiveSlots> NEXT =
+        AtomicReferenceFieldUpdater.newUpdater(PrimitiveSlots.class, PrimitiveSlots.class, "next");
+
+    /** The primitive index stored at position zero of this chunk. */
+    final int offset;
+
+    @Nullable private volatile PrimitiveSlots next;
+
+    PrimitiveSlots(int offset, int length) {
+      super(length);
+      this.offset = offset;
+    }
+
+    /**
+     * Provides the chunk containing the given index. If an {@link IndexSpace} is passed, missing
+     * chunks are allocated according to it.
+     */
+    @Nullable
+    PrimitiveSlots chunkFor(int index, @Nullable IndexSpace indexSpace) {
+      PrimitiveSlots chunk = this;
+      while (index >= chunk.offset + chunk.length()) {
+        PrimitiveSlots nextChunk = chunk.next;
+        if (nextChunk == null) {
+          if (indexSpace == null) {
+            return null;
+          }
+          int nextOffset = chunk.offset + chunk.length();
+          int nextLength =
+              Math.max(index + 1, indexSpace.nextDensePrimitiveIndex.get()) - nextOffset;
+          NEXT.compareAndSet(chunk, null, new PrimitiveSlots(nextOffset, nextLength));
+          nextChunk = chunk.next;
+        }
+        chunk = nextChunk;
+      }
+      return chunk;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongMeasurement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Self-telemetry for the storages backing {@link SpanValue}s and {@link LogRecordValue}s.
+ *
+ * <p>The counters are maintained unconditionally using striped {@link
+ * java.util.concurrent.atomic.LongAdder}s, which are cheap enough to be always on. They are only
+ * read when a meter collects the instruments registered via {@link #register(Meter)}.
+ */
+public class ValueStorageMetrics {
+
+  public static final String INSTRUMENTATION_SCOPE = "co.elastic.otel.common";
+
+  static final AttributeKey<String> OWNER_KIND = AttributeKey.stringKey("owner.kind");
+
+  private static final List<ValueStorage.IndexSpace> INDEX_SPACES =
+      Arrays.asList(SpanValueStorage.INDEX_SPACE, LogRecordValueStorage.INDEX_SPACE);
+
+  private ValueStorageMetrics() {}
+
+  /** Registers asynchronous instruments reporting the storage statistics on the given meter. */
+  public static void register(Meter meter) {
+    meter
+        .counterBuilder("elastic.otel.value_storage.allocated")
+        .setDescription("Number of value storages allocated, including replacements due to growth")
+        .setUnit("{storage}")
+        .buildWithCallback(measurement -> observe(measurement, is -> is.allocatedStorages.sum()));
+    meter
+        .counterBuilder("elastic.otel.value_storage.grown")
+        .setDescription(
+            "Number of value storages replaced by a larger one due to dense values registered after their allocation")
+        .setUnit("{storage}")
+        .buildWithCallback(measurement -> observe(measurement, is -> is.grownStorages.sum()));
+    meter
+        .counterBuilder("elastic.otel.value_storage.sparse_maps")
+        .setDescription("Number of maps allocated for storing sparse values")
+        .setUnit("{map}")
+        .buildWithCallback(measurement -> observe(measurement, is -> is.sparseMaps.sum()));
+    meter
+        .counterBuilder("elastic.otel.value_storage.map_backed")
+        .setDescription(
+            "Number of value storages attached via a weak map, because no injected field is available")
+        .setUnit("{storage}")
+        .buildWithCallback(measurement -> observe(measurement, is -> is.mapBackedStorages.sum()));
+    meter
+        .gaugeBuilder("elastic.otel.value_storage.dense_slots")
+        .ofLongs()
+        .setDescription("Number of reference slots of a newly allocated value storage")
+        .setUnit("{slot}")
+        .buildWithCallback(measurement -> observe(measurement, is -> is.denseSlots()));
+    meter
+        .gaugeBuilder("elastic.otel.value_storage.estimated_size")
+        .ofLongs()
+        .setDescription("Estimated shallow size of a newly allocated value storage")
+        .setUnit("By")
+        .buildWithCallback(measurement -> observe(measurement, is -> is.estimatedStorageBytes()));
+  }
+
+  private static void observe(
+      ObservableLongMeasurement measurement, ToLongFunction<ValueStorage.IndexSpace> value) {
+    for (ValueStorage.IndexSpace indexSpace : INDEX_SPACES) {
+      measurement.record(
+          value.applyAsLong(indexSpace), Attributes.of(OWNER_KIND, indexSpace.ownerKind));
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import javax.annotation.Nullable;
+
+/**
+ * Attaches {@link ValueStorage}s to their owners (e.g. spans or log records).
+ *
+ * @param <T> the type of the owner
+ * @param <S> the type of the storage
+ */
+public interface ValueStorageProvider<T, S extends ValueStorage> {
+
+  @Nullable
+  S get(T owner, boolean initialize);
+
+  /**
+   * Replaces the storage attached to the given owner with a larger one. Callers must ensure that
+   * only a single replacement for a given storage is attempted, {@link ValueStorage} does so by
+   * synchronizing on the storage being replaced.
+   *
+   * @return true, if the storage attached to the owner was the expected one and has been replaced
+   */
+  boolean replace(T owner, S expected, S replacement);
+}
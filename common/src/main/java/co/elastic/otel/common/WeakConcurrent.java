@@ -20,13 +20,17 @@ package co.elastic.otel.common;
 
 import co.elastic.otel.common.util.ExecutorUtils;
 import com.blogspot.mydailyjava.weaklockfree.WeakConcurrentMap;
-import com.blogspot.mydailyjava.weaklockfree.WeakConcurrentSet;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,49 +38,210 @@ public class WeakConcurrent {
 
   private static final Logger logger = Logger.getLogger(WeakConcurrent.class.getName());
 
-  private static final Duration CLEANUP_FREQUENCY = Duration.ofMillis(100);
+  static final Duration MIN_CLEANUP_DELAY = Duration.ofMillis(10);
 
-  private static final WeakConcurrentSet<WeakConcurrentMap<?, ?>> registeredMaps =
-      new WeakConcurrentSet<>(WeakConcurrentSet.Cleaner.MANUAL);
+  static final Duration DEFAULT_CLEANUP_DELAY = Duration.ofMillis(100);
 
-  private static volatile ScheduledFuture<?> cleaningTask = null;
+  static final Duration MAX_CLEANUP_DELAY = Duration.ofSeconds(5);
 
   /**
-   * Creates a new {@link WeakConcurrentMap} which is periodically cleaned up by a shared background
-   * thread.
+   * If a single sweep removes at least this many stale entries, garbage accumulates faster than we
+   * clean it up and the cleanup delay is reduced.
+   */
+  static final int HIGH_STALE_ENTRIES_PER_SWEEP = 1024;
+
+  private static final AttributeKey<String> MAP_NAME = AttributeKey.stringKey("map.name");
+
+  /** Keys are either {@link WeakConcurrentMap}s or {@link WeakIdentityMap}s. */
+  private static final WeakConcurrentMap<Object, MapStats> registeredMaps =
+      new WeakConcurrentMap<>(false);
+
+  private static final AtomicLong cleanupDelayMillis =
+      new AtomicLong(DEFAULT_CLEANUP_DELAY.toMillis());
+
+  private static volatile ScheduledExecutorService cleanerExecutor = null;
+
+  /**
+   * Creates a new {@link WeakConcurrentMap} which is cleaned up by a shared background thread. The
+   * cleanup frequency adapts to the amount of stale entries found: The thread backs off while
+   * nothing is collected and speeds up if many entries are.
    */
   public static <K, V> WeakConcurrentMap<K, V> createMap() {
-    WeakConcurrentMap<K, V> result = new WeakConcurrentMap<>(false);
-    registeredMaps.add(result);
+    return createMap("unnamed", false);
+  }
+
+  /**
+   * Creates a new {@link WeakConcurrentMap}, see {@link #createMap()}.
+   *
+   * @param name the name of the map used for the self-telemetry metrics
+   * @param expungeOnWrite if true, stale entries are additionally removed on every write to the
+   *     map. This keeps the footprint of maps with a high turnover of keys small independently of
+   *     the background cleanup at the cost of slightly slower writes.
+   */
+  public static <K, V> WeakConcurrentMap<K, V> createMap(String name, boolean expungeOnWrite) {
+    WeakConcurrentMap<K, V> result =
+        expungeOnWrite ? new ExpungingOnWrite<>() : new WeakConcurrentMap<>(false);
+    registeredMaps.put(result, new MapStats(name));
     ensureCleaningTaskStarted();
     return result;
   }
 
+  /**
+   * Includes the given map in the background cleanup. While the map removes stale entries on writes
+   * already, this ensures that entries are released even if no more writes happen.
+   */
+  static void registerForCleanup(WeakIdentityMap<?, ?> map, String name) {
+    registeredMaps.put(map, new MapStats(name));
+    ensureCleaningTaskStarted();
+  }
+
+  /**
+   * Registers asynchronous instruments reporting the stale entries removed and the duration of the
+   * last sweep per map, as well as the current cleanup delay.
+   */
+  public static void registerMetrics(Meter meter) {
+    meter
+        .counterBuilder("elastic.otel.weak_map.stale_entries")
+        .setDescription("Number of stale entries removed from the map by the background cleanup")
+        .setUnit("{entry}")
+        .buildWithCallback(
+            measurement -> {
+              for (Map.Entry<Object, MapStats> entry : registeredMaps) {
+                MapStats stats = entry.getValue();
+                measurement.record(stats.staleEntries.sum(), stats.attributes);
+              }
+            });
+    meter
+        .gaugeBuilder("elastic.otel.weak_map.sweep_duration")
+        .setDescription("Duration of the last background cleanup of the map")
+        .setUnit("s")
+        .buildWithCallback(
+            measurement -> {
+              for (Map.Entry<Object, MapStats> entry : registeredMaps) {
+                MapStats stats = entry.getValue();
+                measurement.record(stats.lastSweepNanos / 1_000_000_000.0, stats.attributes);
+              }
+            });
+    meter
+        .gaugeBuilder("elastic.otel.weak_map.cleanup_delay")
+        .ofLongs()
+        .setDescription("Current delay between two background cleanups of all maps")
+        .setUnit("ms")
+        .buildWithCallback(measurement -> measurement.record(cleanupDelayMillis.get()));
+  }
+
   private static void ensureCleaningTaskStarted() {
-    if (cleaningTask == null) {
+    if (cleanerExecutor == null) {
       synchronized (WeakConcurrent.class) {
-        if (cleaningTask == null) {
+        if (cleanerExecutor == null) {
           ThreadFactory threadFactory = ExecutorUtils.threadFactory("weakmap-cleaner", true);
           ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor(threadFactory);
-          cleaningTask =
-              exec.scheduleAtFixedRate(
-                  WeakConcurrent::expungeStaleEntries,
-                  CLEANUP_FREQUENCY.toMillis(),
-                  CLEANUP_FREQUENCY.toMillis(),
-                  TimeUnit.MILLISECONDS);
+          // assigned before scheduling, because the task reschedules itself using the field
+          cleanerExecutor = exec;
+          exec.schedule(
+              WeakConcurrent::cleanupAndReschedule,
+              cleanupDelayMillis.get(),
+              TimeUnit.MILLISECONDS);
         }
       }
     }
   }
 
-  private static void expungeStaleEntries() {
+  private static void cleanupAndReschedule() {
+    long delay = cleanupDelayMillis.get();
     try {
-      registeredMaps.expungeStaleEntries();
-      for (WeakConcurrentMap<?, ?> map : registeredMaps) {
-        map.expungeStaleEntries();
-      }
+      delay = nextCleanupDelay(delay, expungeStaleEntries());
     } catch (Throwable t) {
       logger.log(Level.SEVERE, "Failed to cleanup weak maps", t);
+    } finally {
+      cleanupDelayMillis.set(delay);
+      cleanerExecutor.schedule(WeakConcurrent::cleanupAndReschedule, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Sweeps all registered maps once.
+   *
+   * @return the total number of stale entries removed
+   */
+  static long expungeStaleEntries() {
+    registeredMaps.expungeStaleEntries();
+    long totalStale = 0;
+    for (Map.Entry<Object, MapStats> entry : registeredMaps) {
+      Object map = entry.getKey();
+      MapStats stats = entry.getValue();
+      long start = System.nanoTime();
+      int sizeBefore = approximateSize(map);
+      if (map instanceof WeakIdentityMap) {
+        ((WeakIdentityMap<?, ?>) map).expungeStaleEntries();
+      } else {
+        ((WeakConcurrentMap<?, ?>) map).expungeStaleEntries();
+      }
+      // concurrent writes make this an approximation, which is good enough for adapting the delay
+      int stale = Math.max(0, sizeBefore - approximateSize(map));
+      stats.lastSweepNanos = System.nanoTime() - start;
+      stats.staleEntries.add(stale);
+      totalStale += stale;
+    }
+    return totalStale;
+  }
+
+  private static int approximateSize(Object map) {
+    if (map instanceof WeakIdentityMap) {
+      return ((WeakIdentityMap<?, ?>) map).approximateSize();
+    }
+    return ((WeakConcurrentMap<?, ?>) map).approximateSize();
+  }
+
+  static long nextCleanupDelay(long currentDelayMillis, long staleEntries) {
+    if (staleEntries == 0) {
+      // exponential back-off while there is nothing to collect, so that idle services don't pay
+      // for constant wakeups
+      return Math.min(currentDelayMillis * 2, MAX_CLEANUP_DELAY.toMillis());
+    }
+    if (staleEntries >= HIGH_STALE_ENTRIES_PER_SWEEP) {
+      return Math.max(currentDelayMillis / 2, MIN_CLEANUP_DELAY.toMillis());
+    }
+    // garbage is being produced, so return to the default pace if we were backing off
+    return Math.min(currentDelayMillis, DEFAULT_CLEANUP_DELAY.toMillis());
+  }
+
+  private static class MapStats {
+
+    final Attributes attributes;
+
+    final LongAdder staleEntries = new LongAdder();
+
+    // only written by the cleaner thread
+    volatile long lastSweepNanos;
+
+    MapStats(String name) {
+      attributes = Attributes.of(MAP_NAME, name);
+    }
+  }
+
+  private static class ExpungingOnWrite<K, V> extends WeakConcurrentMap<K, V> {
+
+    ExpungingOnWrite() {
+      super(false);
+    }
+
+    @Override
+    public V put(K key, V value) {
+      expungeStaleEntries();
+      return super.put(key, value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+      expungeStaleEntries();
+      return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public V putIfProbablyAbsent(K key, V value) {
+      expungeStaleEntries();
+      return super.putIfProbablyAbsent(key, value);
     }
   }
 }
@@ -0,0 +1,254 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+
+/**
+ * A concurrent map with weakly referenced keys which are compared by identity. Used by the
+ * map-backed {@link ValueStorageProvider}s, which attach one entry to every span or log record and
+ * therefore see a very high rate of short-lived keys.
+ *
+ * <p>In contrast to a {@link WeakConcurrent#createMap() WeakConcurrentMap} this map does not depend
+ * on a background thread for removing stale entries under load. Instead, every write to a segment
+ * first drains a bounded number of collected keys from the {@link ReferenceQueue} of that segment,
+ * which amortizes the cleanup over the writers and keeps the footprint bounded even under bursts.
+ * The shared {@link WeakConcurrent} cleaner still sweeps the map periodically, so that the values
+ * of collected keys are released as well when a burst is followed by no further writes.
+ *
+ * <p>The map is split into independently locked segments, so that writers on different cores rarely
+ * contend. Reads never lock: Buckets are only modified by replacing volatile links and resizing
+ * copies the entries into a new table, so a concurrent reader always observes a consistent chain.
+ */
+final class WeakIdentityMap<K, V> {
+
+  /** Upper bound of stale entries removed per write, to keep the latency of writes predictable. */
+  private static final int MAX_EXPUNGE_PER_WRITE = 16;
+
+  private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+  private final Segment<K, V>[] segments;
+
+  private final int segmentShift;
+
+  /**
+   * @param name the name of the map used for the self-telemetry metrics of the background cleanup
+   */
+  WeakIdentityMap(String name) {
+    this(name, Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  WeakIdentityMap(String name, int concurrencyLevel) {
+    int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, 1 << 16)) - 1);
+    segmentCount = Math.max(1, segmentCount << 1);
+    segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment<>();
+    }
+    // the highest bits of the hash select the segment, the lowest ones the bucket
+    segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+    WeakConcurrent.registerForCleanup(this, name);
+  }
+
+  @Nullable
+  V get(K key) {
+    int hash = hash(key);
+    return segmentFor(hash).get(key, hash);
+  }
+
+  /**
+   * Associates the given value with the key, unless the key already has a value.
+   *
+   * @return the value which was associated with the key before, null if the given value was stored
+   */
+  @Nullable
+  V putIfAbsent(K key, V value) {
+    int hash = hash(key);
+    return segmentFor(hash).putIfAbsent(key, hash, value);
+  }
+
+  /**
+   * Replaces the value associated with the key, if the current value is the expected one (compared
+   * by identity).
+   */
+  boolean replace(K key, V expected, V replacement) {
+    int hash = hash(key);
+    return segmentFor(hash).replace(key, hash, expected, replacement);
+  }
+
+  /** The number of entries, including those whose keys have been collected but not yet removed. */
+  int approximateSize() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      size += segment.count;
+    }
+    return size;
+  }
+
+  /**
+   * Removes all entries whose keys have been collected, regardless of any write activity. Invoked
+   * periodically by the {@link WeakConcurrent} cleaner.
+   */
+  void expungeStaleEntries() {
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.expungeStaleEntries(Integer.MAX_VALUE);
+      }
+    }
+  }
+
+  private Segment<K, V> segmentFor(int hash) {
+    return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+  }
+
+  private static int hash(Object key) {
+    int h = System.identityHashCode(key);
+    // identity hashes are not guaranteed to be well distributed in the high bits
+    return h ^ (h >>> 16) ^ (h << 16);
+  }
+
+  private static final class Entry<K, V> extends WeakReference<K> {
+
+    final int hash;
+
+    @Nullable volatile V value;
+
+    @Nullable volatile Entry<K, V> next;
+
+    Entry(K key, int hash, @Nullable V value, @Nullable Entry<K, V> next, ReferenceQueue<K> queue) {
+      super(key, queue);
+      this.hash = hash;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  private static final class Segment<K, V> {
+
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    private volatile AtomicReferenceArray<Entry<K, V>> table =
+        new AtomicReferenceArray<>(INITIAL_SEGMENT_CAPACITY);
+
+    // only modified while holding the lock of the segment
+    private volatile int count;
+
+    @Nullable
+    V get(K key, int hash) {
+      Entry<K, V> entry = find(key, hash);
+      return entry != null ? entry.value : null;
+    }
+
+    @Nullable
+    private Entry<K, V> find(K key, int hash) {
+      AtomicReferenceArray<Entry<K, V>> tab = table;
+      for (Entry<K, V> e = tab.get(hash & (tab.length() - 1)); e != null; e = e.next) {
+        if (e.hash == hash && e.get() == key) {
+          return e;
+        }
+      }
+      return null;
+    }
+
+    @Nullable
+    synchronized V putIfAbsent(K key, int hash, V value) {
+      expungeStaleEntries(MAX_EXPUNGE_PER_WRITE);
+      Entry<K, V> existing = find(key, hash);
+      if (existing != null) {
+        return existing.value;
+      }
+      AtomicReferenceArray<Entry<K, V>> tab = table;
+      int index = hash & (tab.length() - 1);
+      if (count + 1 > tab.length() - (tab.length() >>> 2)) {
+        tab = resize(tab);
+        index = hash & (tab.length() - 1);
+      }
+      tab.set(index, new Entry<>(key, hash, value, tab.get(index), queue));
+      count = count + 1;
+      return null;
+    }
+
+    synchronized boolean replace(K key, int hash, V expected, V replacement) {
+      expungeStaleEntries(MAX_EXPUNGE_PER_WRITE);
+      Entry<K, V> existing = find(key, hash);
+      if (existing == null || existing.value != expected) {
+        return false;
+      }
+      existing.value = replacement;
+      return true;
+    }
+
+    /** Must be called while holding the lock of this segment. */
+    void expungeStaleEntries(int limit) {
+      Reference<? extends K> ref;
+      for (int i = 0; i < limit && (ref = queue.poll()) != null; i++) {
+        @SuppressWarnings("unchecked")
+        Entry<K, V> stale = (Entry<K, V>) ref;
+        unlink(stale);
+      }
+    }
+
+    private void unlink(Entry<K, V> entry) {
+      AtomicReferenceArray<Entry<K, V>> tab = table;
+      int index = entry.hash & (tab.length() - 1);
+      Entry<K, V> prev = null;
+      for (Entry<K, V> e = tab.get(index); e != null; e = e.next) {
+        if (e == entry) {
+          // Readers currently positioned at the removed entry can still continue via its next link
+          if (prev == null) {
+            tab.set(index, e.next);
+          } else {
+            prev.next = e.next;
+          }
+          count = count - 1;
+          return;
+        }
+        prev = e;
+      }
+      // Not found: the entry has already been removed or was replaced by a copy when resizing,
+      // in which case the copy is enqueued as well
+    }
+
+    private AtomicReferenceArray<Entry<K, V>> resize(AtomicReferenceArray<Entry<K, V>> oldTable) {
+      // Entries are copied instead of being relinked, so that concurrent readers which still
+      // traverse the old table never miss an entry
+      AtomicReferenceArray<Entry<K, V>> newTable =
+          new AtomicReferenceArray<>(oldTable.length() << 1);
+      int newCount = 0;
+      for (int i = 0; i < oldTable.length(); i++) {
+        for (Entry<K, V> e = oldTable.get(i); e != null; e = e.next) {
+          K key = e.get();
+          if (key != null) {
+            int index = e.hash & (newTable.length() - 1);
+            newTable.set(index, new Entry<>(key, e.hash, e.value, newTable.get(index), queue));
+            newCount++;
+          }
+        }
+      }
+      table = newTable;
+      count = newCount;
+      return newTable;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registry of {@link SpanValue}s which are accessed on very hot paths (e.g. on every span start or
+ * end). Instead of being stored in the shared {@link SpanValueStorage}, each of them gets its own
+ * field injected into the SDK span class at packaging time, saving the indirection through the
+ * storage array.
+ *
+ * <p>The field names must be kept in sync with {@code ValueStorageFieldInjector} in buildSrc. If
+ * the fields are not available (e.g. when not running in our distro), the values fall back to
+ * regular {@link SpanValue}s.
+ */
+public enum WellKnownSpanValue {
+  LOCAL_ROOT("$elasticLocalRoot", true),
+  PROFILER_STACK_TRACE_IDS("$elasticProfilerStackTraceIds", false);
+
+  private final String fieldName;
+  private final boolean denseFallback;
+  private final AtomicBoolean claimed = new AtomicBoolean();
+
+  WellKnownSpanValue(String fieldName, boolean denseFallback) {
+    this.fieldName = fieldName;
+    this.denseFallback = denseFallback;
+  }
+
+  /** The name of the field injected into the SDK span class. */
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /** Whether a dense or a sparse {@link SpanValue} is used when the field is not available. */
+  boolean isDenseFallback() {
+    return denseFallback;
+  }
+
+  boolean claim() {
+    return claimed.compareAndSet(false, true);
+  }
+}
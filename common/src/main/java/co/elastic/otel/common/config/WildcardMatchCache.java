@@ -0,0 +1,241 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.config;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Memoizes the results of a {@link WildcardMatcherSet} for strings which are matched repeatedly,
+ * such as class names, span names or header keys.
+ *
+ * <p>The cache is a fixed size, two-way set associative table without locks: Every string maps to
+ * two adjacent slots, verified by hash and content. On a miss, an empty slot or one not hit since
+ * it was added is replaced, which approximates LRU within the pair. A hit for the same {@link
+ * String} instance is a single hash probe and reference comparison, other inputs are compared char
+ * by char. Lookups never allocate, only caching a new result allocates its entry (and the
+ * concatenated key for the two part variant).
+ *
+ * <p>Strings longer than {@link #MAX_KEY_LENGTH} are not cached, so that the memory held by the
+ * cache stays bounded.
+ */
+// don't use for-each as it allocates memory by instantiating an iterator
+@SuppressWarnings("ForLoopReplaceableByForEach")
+public final class WildcardMatchCache {
+
+  static final int MAX_KEY_LENGTH = 512;
+
+  private static final AttributeKey<String> CACHE_NAME = AttributeKey.stringKey("cache.name");
+
+  private static final int NO_MATCH = -1;
+
+  private final WildcardMatcherSet matcherSet;
+
+  private final AtomicReferenceArray<Entry> table;
+
+  private final int mask;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private WildcardMatchCache(WildcardMatcherSet matcherSet, int capacity) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("capacity must be at least two, but was " + capacity);
+    }
+    this.matcherSet = matcherSet;
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    this.table = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * @param capacity the maximum number of cached strings, rounded up to the next power of two
+   */
+  public static WildcardMatchCache of(WildcardMatcherSet matcherSet, int capacity) {
+    return new WildcardMatchCache(matcherSet, capacity);
+  }
+
+  /** See {@link #of(WildcardMatcherSet, int)}. */
+  public static WildcardMatchCache of(List<WildcardMatcher> matchers, int capacity) {
+    return new WildcardMatchCache(WildcardMatcherSet.of(matchers), capacity);
+  }
+
+  public boolean isAnyMatch(@Nullable CharSequence s) {
+    return firstMatch(s) != null;
+  }
+
+  /** See {@link WildcardMatcherSet#firstMatch(CharSequence)}. */
+  @Nullable
+  public WildcardMatcher firstMatch(@Nullable CharSequence s) {
+    if (s == null) {
+      return null;
+    }
+    return firstMatch(s, "");
+  }
+
+  /** See {@link WildcardMatcherSet#firstMatch(CharSequence, CharSequence)}. */
+  @Nullable
+  public WildcardMatcher firstMatch(CharSequence firstPart, @Nullable CharSequence secondPart) {
+    if (secondPart == null) {
+      secondPart = "";
+    }
+    int length = firstPart.length() + secondPart.length();
+    if (length > MAX_KEY_LENGTH) {
+      misses.increment();
+      return matcherSet.firstMatch(firstPart, secondPart);
+    }
+    int hash = hash(firstPart, secondPart);
+    int slot = spread(hash) & mask & ~1;
+    for (int i = 0; i < 2; i++) {
+      Entry entry = table.get(slot + i);
+      if (entry != null && entry.matches(hash, firstPart, secondPart, length)) {
+        entry.referenced = true;
+        hits.increment();
+        return entry.matchIndex == NO_MATCH ? null : matcherSet.getMatchers().get(entry.matchIndex);
+      }
+    }
+    misses.increment();
+    WildcardMatcher match = matcherSet.firstMatch(firstPart, secondPart);
+    String key =
+        secondPart.length() == 0 && firstPart instanceof String
+            ? (String) firstPart
+            : firstPart.toString() + secondPart;
+    int matchIndex = match == null ? NO_MATCH : indexOf(match);
+    table.set(victim(slot), new Entry(key, hash, matchIndex));
+    return match;
+  }
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Registers asynchronous counters for the hits and misses of this cache on the given meter. Their
+   * ratio tells whether the capacity is sufficient for the strings being matched.
+   */
+  public void registerMetrics(Meter meter, String cacheName) {
+    Attributes attributes = Attributes.of(CACHE_NAME, cacheName);
+    meter
+        .counterBuilder("elastic.otel.wildcard_cache.hits")
+        .setDescription("Number of wildcard lookups answered from the cache")
+        .setUnit("{lookup}")
+        .buildWithCallback(measurement -> measurement.record(hits.sum(), attributes));
+    meter
+        .counterBuilder("elastic.otel.wildcard_cache.misses")
+        .setDescription("Number of wildcard lookups which had to run the matchers")
+        .setUnit("{lookup}")
+        .buildWithCallback(measurement -> measurement.record(misses.sum(), attributes));
+  }
+
+  private int indexOf(WildcardMatcher match) {
+    List<WildcardMatcher> matchers = matcherSet.getMatchers();
+    for (int i = 0; i < matchers.size(); i++) {
+      if (matchers.get(i) == match) {
+        return i;
+      }
+    }
+    return NO_MATCH;
+  }
+
+  /**
+   * Picks the slot of the pair to replace: an empty one, otherwise one not used since it was added.
+   * If both were used, their referenced flags are cleared so that they have to be used again.
+   */
+  private int victim(int slot) {
+    Entry first = table.get(slot);
+    Entry second = table.get(slot + 1);
+    if (first == null) {
+      return slot;
+    }
+    if (second == null) {
+      return slot + 1;
+    }
+    if (!first.referenced) {
+      return slot;
+    }
+    if (!second.referenced) {
+      return slot + 1;
+    }
+    first.referenced = false;
+    second.referenced = false;
+    return slot + 1;
+  }
+
+  /** Equal to the {@link String#hashCode()} of the concatenated parts. */
+  private static int hash(CharSequence firstPart, CharSequence secondPart) {
+    int hash;
+    if (firstPart instanceof String) {
+      hash = firstPart.hashCode();
+    } else {
+      hash = 0;
+      for (int i = 0; i < firstPart.length(); i++) {
+        hash = 31 * hash + firstPart.charAt(i);
+      }
+    }
+    for (int i = 0; i < secondPart.length(); i++) {
+      hash = 31 * hash + secondPart.charAt(i);
+    }
+    return hash;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static class Entry {
+    final String key;
+    final int hash;
+    final int matchIndex;
+
+    /** Racy updates are fine, this is only a hint for eviction. */
+    boolean referenced;
+
+    Entry(String key, int hash, int matchIndex) {
+      this.key = key;
+      this.hash = hash;
+      this.matchIndex = matchIndex;
+    }
+
+    boolean matches(int hash, CharSequence firstPart, CharSequence secondPart, int length) {
+      if (this.hash != hash || key.length() != length) {
+        return false;
+      }
+      if (key == firstPart) {
+        return true;
+      }
+      int firstLength = firstPart.length();
+      for (int i = 0; i < length; i++) {
+        if (key.charAt(i) != WildcardMatcher.charAt(i, firstPart, secondPart, firstLength)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,589 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Matches a string against a whole list of {@link WildcardMatcher}s in a single pass.
+ *
+ * <p>{@link WildcardMatcher#anyMatch(List, CharSequence)} tries each matcher in turn, so that a
+ * lookup takes time proportional to the number of matchers times the length of the string. This
+ * class instead splits all matchers into their literal segments and compiles them into an
+ * Aho-Corasick automaton. Case insensitive and case sensitive matchers use separate automata, the
+ * former operating on case-folded characters. While the string is scanned once, every segment
+ * occurrence reported by the automata advances the matchers expecting this segment next.
+ *
+ * <p>The results are the same as the ones of {@link WildcardMatcher#anyMatch(List, CharSequence)},
+ * including its less obvious cases. For a pattern with several segments, the last one is checked
+ * against the end of the string regardless of where the previous segment was found, so that {@code
+ * a*a} matches {@code a}. An empty segment ({@code **}) searches the following segments from the
+ * start of the string again. Segments in between never overlap each other.
+ *
+ * <p>The first matcher in list order is reported if several match. Instances are immutable and
+ * thread-safe. Lookups don't allocate, apart from a per-thread scratch buffer created on first use.
+ */
+// don't use for-each as it allocates memory by instantiating an iterator
+@SuppressWarnings("ForLoopReplaceableByForEach")
+public final class WildcardMatcherSet {
+
+  private static final String CASE_INSENSITIVE_PREFIX = "(?i)";
+  private static final String CASE_SENSITIVE_PREFIX = "(?-i)";
+  private static final char WILDCARD = '*';
+  private static final int NO_MATCH = Integer.MAX_VALUE;
+
+  private final List<WildcardMatcher> matchers;
+
+  /**
+   * Each matcher consists of one or more chains of segments which have to be found in order, one
+   * after the other. A new chain starts after an empty segment, as the search continues at the
+   * start of the string then.
+   */
+  private final int[] chainLengths;
+
+  /** Whether the first segment of a chain has to be found at the start of the string. */
+  private final boolean[] chainAnchoredStart;
+
+  /** The number of chains a matcher has to complete. */
+  private final int[] chainCounts;
+
+  /** Whether the last segment of a matcher has to be found at the end of the string. */
+  private final boolean[] anchoredEnd;
+
+  /**
+   * The trailing segment of a matcher with several segments, which is checked against the end of
+   * the string once all chains are complete, case-folded for case insensitive matchers.
+   */
+  private final String[] suffixes;
+
+  private final boolean[] suffixIgnoreCase;
+
+  /** Index of the first matcher which matches any string, {@link #NO_MATCH} if there is none. */
+  private final int firstMatchAll;
+
+  /** Index of the first matcher which only matches the empty string. */
+  private final int firstMatchEmpty;
+
+  @Nullable private final Automaton caseInsensitive;
+  @Nullable private final Automaton caseSensitive;
+
+  private final ThreadLocal<Scratch> scratch;
+
+  private WildcardMatcherSet(List<WildcardMatcher> matchers) {
+    this.matchers = Collections.unmodifiableList(new ArrayList<>(matchers));
+    int count = matchers.size();
+    chainCounts = new int[count];
+    anchoredEnd = new boolean[count];
+    suffixes = new String[count];
+    suffixIgnoreCase = new boolean[count];
+    List<Integer> lengths = new ArrayList<>();
+    List<Boolean> anchors = new ArrayList<>();
+    int matchAll = NO_MATCH;
+    int matchEmpty = NO_MATCH;
+    AutomatonBuilder insensitiveBuilder = new AutomatonBuilder(true);
+    AutomatonBuilder sensitiveBuilder = new AutomatonBuilder(false);
+    for (int i = 0; i < count; i++) {
+      String pattern = matchers.get(i).toString();
+      boolean ignoreCase = true;
+      if (pattern.startsWith(CASE_SENSITIVE_PREFIX)) {
+        ignoreCase = false;
+        pattern = pattern.substring(CASE_SENSITIVE_PREFIX.length());
+      } else if (pattern.startsWith(CASE_INSENSITIVE_PREFIX)) {
+        pattern = pattern.substring(CASE_INSENSITIVE_PREFIX.length());
+      }
+      // split the same way as WildcardMatcher.valueOf, which drops trailing empty segments only
+      String[] segments = pattern.split("\\*");
+      if (segments.length == 0) {
+        matchAll = Math.min(matchAll, i);
+        continue;
+      }
+      if (segments.length == 1 && segments[0].isEmpty()) {
+        matchEmpty = Math.min(matchEmpty, i);
+        continue;
+      }
+      boolean wildcardAtEnd = pattern.charAt(pattern.length() - 1) == WILDCARD;
+      List<List<String>> chains = new ArrayList<>();
+      if (segments.length == 1) {
+        chains.add(Collections.singletonList(segments[0]));
+        anchoredEnd[i] = !wildcardAtEnd;
+      } else {
+        int last = segments.length - 1;
+        int chainEnd = wildcardAtEnd ? segments.length : last;
+        List<String> chain = new ArrayList<>();
+        for (int s = 0; s < chainEnd; s++) {
+          if (!segments[s].isEmpty()) {
+            chain.add(segments[s]);
+          } else if (!chain.isEmpty()) {
+            chains.add(chain);
+            chain = new ArrayList<>();
+          }
+        }
+        if (!chain.isEmpty()) {
+          chains.add(chain);
+        }
+        if (!wildcardAtEnd) {
+          if (chains.isEmpty()) {
+            // only wildcards in front of the last segment, same as a single segment
+            chains.add(Collections.singletonList(segments[last]));
+            anchoredEnd[i] = true;
+          } else {
+            suffixes[i] = ignoreCase ? fold(segments[last]) : segments[last];
+            suffixIgnoreCase[i] = ignoreCase;
+          }
+        }
+      }
+      chainCounts[i] = chains.size();
+      AutomatonBuilder builder = ignoreCase ? insensitiveBuilder : sensitiveBuilder;
+      for (int c = 0; c < chains.size(); c++) {
+        List<String> chain = chains.get(c);
+        int chainIndex = lengths.size();
+        lengths.add(chain.size());
+        anchors.add(c == 0 && pattern.charAt(0) != WILDCARD);
+        for (int s = 0; s < chain.size(); s++) {
+          builder.addSegment(chain.get(s), i, chainIndex, s);
+        }
+      }
+    }
+    chainLengths = new int[lengths.size()];
+    chainAnchoredStart = new boolean[lengths.size()];
+    for (int c = 0; c < chainLengths.length; c++) {
+      chainLengths[c] = lengths.get(c);
+      chainAnchoredStart[c] = anchors.get(c);
+    }
+    firstMatchAll = matchAll;
+    firstMatchEmpty = matchEmpty;
+    caseInsensitive = insensitiveBuilder.build();
+    caseSensitive = sensitiveBuilder.build();
+    int chainCount = chainLengths.length;
+    scratch = ThreadLocal.withInitial(() -> new Scratch(count, chainCount));
+  }
+
+  /** Compiles the given matchers, the order of the list is retained for reporting matches. */
+  public static WildcardMatcherSet of(List<WildcardMatcher> matchers) {
+    return new WildcardMatcherSet(matchers);
+  }
+
+  public List<WildcardMatcher> getMatchers() {
+    return matchers;
+  }
+
+  /**
+   * Returns {@code true}, if any of the matchers match the provided string.
+   *
+   * @see WildcardMatcher#isAnyMatch(List, CharSequence)
+   */
+  public boolean isAnyMatch(@Nullable CharSequence s) {
+    return firstMatch(s) != null;
+  }
+
+  /**
+   * Returns the first {@link WildcardMatcher} in list order matching the provided string.
+   *
+   * @see WildcardMatcher#anyMatch(List, CharSequence)
+   */
+  @Nullable
+  public WildcardMatcher firstMatch(@Nullable CharSequence s) {
+    if (s == null) {
+      return null;
+    }
+    return firstMatch(s, null);
+  }
+
+  /**
+   * Returns the first {@link WildcardMatcher} in list order matching the concatenation of the
+   * provided parts, without allocating the concatenated string.
+   *
+   * @see WildcardMatcher#anyMatch(List, CharSequence, CharSequence)
+   */
+  @Nullable
+  public WildcardMatcher firstMatch(CharSequence firstPart, @Nullable CharSequence secondPart) {
+    int index = firstMatchIndex(firstPart, secondPart == null ? "" : secondPart);
+    return index == NO_MATCH ? null : matchers.get(index);
+  }
+
+  private int firstMatchIndex(CharSequence firstPart, CharSequence secondPart) {
+    int firstLength = firstPart.length();
+    int length = firstLength + secondPart.length();
+    int best = firstMatchAll;
+    if (length == 0) {
+      return Math.min(best, firstMatchEmpty);
+    }
+    if (best == 0 || (caseInsensitive == null && caseSensitive == null)) {
+      return best;
+    }
+    Scratch state = scratch.get();
+    state.startLookup();
+    int insensitiveState = 0;
+    int sensitiveState = 0;
+    for (int pos = 0; pos < length; pos++) {
+      char c = WildcardMatcher.charAt(pos, firstPart, secondPart, firstLength);
+      if (caseInsensitive != null) {
+        insensitiveState = caseInsensitive.next(insensitiveState, toLowerCase(c));
+        best =
+            onSegmentsEnded(
+                caseInsensitive, insensitiveState, pos, firstPart, secondPart, state, best);
+      }
+      if (caseSensitive != null) {
+        sensitiveState = caseSensitive.next(sensitiveState, c);
+        best =
+            onSegmentsEnded(caseSensitive, sensitiveState, pos, firstPart, secondPart, state, best);
+      }
+      if (best == 0) {
+        // no matcher can come before the first one
+        break;
+      }
+    }
+    return best;
+  }
+
+  static char toLowerCase(char c) {
+    if (c < 128) {
+      return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+    return Character.toLowerCase(c);
+  }
+
+  private int onSegmentsEnded(
+      Automaton automaton,
+      int automatonState,
+      int end,
+      CharSequence firstPart,
+      CharSequence secondPart,
+      Scratch state,
+      int best) {
+    int length = firstPart.length() + secondPart.length();
+    int[] keywords = automaton.outputs[automatonState];
+    for (int k = 0; k < keywords.length; k++) {
+      int keyword = keywords[k];
+      int start = end - automaton.keywordLengths[keyword] + 1;
+      int[] matcherIndices = automaton.keywordMatchers[keyword];
+      int[] chainIndices = automaton.keywordChains[keyword];
+      int[] segmentIndices = automaton.keywordSegments[keyword];
+      for (int o = 0; o < matcherIndices.length; o++) {
+        int matcher = matcherIndices[o];
+        if (matcher >= best) {
+          // sorted by matcher index, later ones can't improve the result
+          break;
+        }
+        int chain = chainIndices[o];
+        int segment = segmentIndices[o];
+        if (state.progress(chain) != segment
+            || start < state.offset(chain)
+            || (segment == 0 && chainAnchoredStart[chain] && start != 0)) {
+          continue;
+        }
+        boolean isLast = segment == chainLengths[chain] - 1;
+        if (isLast && anchoredEnd[matcher] && end != length - 1) {
+          continue;
+        }
+        state.advance(chain, end + 1);
+        if (isLast
+            && state.completeChain(matcher) == chainCounts[matcher]
+            && (suffixes[matcher] == null
+                || endsWith(
+                    firstPart, secondPart, length, suffixes[matcher], suffixIgnoreCase[matcher]))) {
+          best = matcher;
+        }
+      }
+    }
+    return best;
+  }
+
+  private static boolean endsWith(
+      CharSequence firstPart,
+      CharSequence secondPart,
+      int length,
+      String suffix,
+      boolean ignoreCase) {
+    int start = length - suffix.length();
+    if (start < 0) {
+      return false;
+    }
+    int firstLength = firstPart.length();
+    for (int i = 0; i < suffix.length(); i++) {
+      char c = WildcardMatcher.charAt(start + i, firstPart, secondPart, firstLength);
+      if ((ignoreCase ? toLowerCase(c) : c) != suffix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String fold(String segment) {
+    char[] chars = new char[segment.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = toLowerCase(segment.charAt(i));
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Per-thread progress of each chain and the number of completed chains of each matcher during a
+   * lookup. Generations avoid having to reset the arrays for each lookup.
+   */
+  private static class Scratch {
+    private final int[] chainGenerations;
+    private final int[] progress;
+    private final int[] offsets;
+    private final int[] matcherGenerations;
+    private final int[] completedChains;
+    private int generation;
+
+    Scratch(int matcherCount, int chainCount) {
+      chainGenerations = new int[chainCount];
+      progress = new int[chainCount];
+      offsets = new int[chainCount];
+      matcherGenerations = new int[matcherCount];
+      completedChains = new int[matcherCount];
+    }
+
+    void startLookup() {
+      generation++;
+      if (generation == 0) {
+        // wrapped around, stale entries could be mistaken for current ones
+        Arrays.fill(chainGenerations, 0);
+        Arrays.fill(matcherGenerations, 0);
+        generation = 1;
+      }
+    }
+
+    int progress(int chain) {
+      return chainGenerations[chain] == generation ? progress[chain] : 0;
+    }
+
+    int offset(int chain) {
+      return chainGenerations[chain] == generation ? offsets[chain] : 0;
+    }
+
+    void advance(int chain, int offset) {
+      if (chainGenerations[chain] != generation) {
+        chainGenerations[chain] = generation;
+        progress[chain] = 0;
+      }
+      progress[chain]++;
+      offsets[chain] = offset;
+    }
+
+    /** Returns the number of completed chains of the matcher, including the one just completed. */
+    int completeChain(int matcher) {
+      if (matcherGenerations[matcher] != generation) {
+        matcherGenerations[matcher] = generation;
+        completedChains[matcher] = 0;
+      }
+      return ++completedChains[matcher];
+    }
+  }
+
+  /**
+   * Aho-Corasick automaton over the distinct segments (keywords) of the matchers. Transitions of
+   * each state are stored as sorted character arrays for binary search.
+   */
+  private static class Automaton {
+    private static final int ROOT_TABLE_SIZE = 128;
+
+    /** The transitions of the root state for ASCII characters, where most lookups start over. */
+    private final int[] rootTable = new int[ROOT_TABLE_SIZE];
+
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+    private final int[] failure;
+
+    /** The keywords ending in each state, including those reachable via failure links. */
+    private final int[][] outputs;
+
+    private final int[] keywordLengths;
+    private final int[][] keywordMatchers;
+    private final int[][] keywordChains;
+    private final int[][] keywordSegments;
+
+    Automaton(
+        char[][] transitionChars,
+        int[][] transitionTargets,
+        int[] failure,
+        int[][] outputs,
+        int[] keywordLengths,
+        int[][] keywordMatchers,
+        int[][] keywordChains,
+        int[][] keywordSegments) {
+      this.transitionChars = transitionChars;
+      this.transitionTargets = transitionTargets;
+      this.failure = failure;
+      this.outputs = outputs;
+      this.keywordLengths = keywordLengths;
+      this.keywordMatchers = keywordMatchers;
+      this.keywordChains = keywordChains;
+      this.keywordSegments = keywordSegments;
+      for (int i = 0; i < transitionChars[0].length; i++) {
+        if (transitionChars[0][i] < ROOT_TABLE_SIZE) {
+          rootTable[transitionChars[0][i]] = transitionTargets[0][i];
+        }
+      }
+    }
+
+    int next(int state, char c) {
+      while (true) {
+        if (state == 0 && c < ROOT_TABLE_SIZE) {
+          return rootTable[c];
+        }
+        int index = Arrays.binarySearch(transitionChars[state], c);
+        if (index >= 0) {
+          return transitionTargets[state][index];
+        }
+        if (state == 0) {
+          return 0;
+        }
+        state = failure[state];
+      }
+    }
+  }
+
+  private static class AutomatonBuilder {
+    private final boolean foldCase;
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<List<Integer>> stateKeywords = new ArrayList<>();
+    private final Map<String, Integer> keywordIds = new HashMap<>();
+    private final List<String> keywords = new ArrayList<>();
+    private final List<List<int[]>> keywordOccurrences = new ArrayList<>();
+
+    AutomatonBuilder(boolean foldCase) {
+      this.foldCase = foldCase;
+      newState();
+    }
+
+    private int newState() {
+      transitions.add(new HashMap<>());
+      stateKeywords.add(new ArrayList<>());
+      return transitions.size() - 1;
+    }
+
+    void addSegment(String segment, int matcher, int chain, int segmentIndex) {
+      String keyword = foldCase ? fold(segment) : segment;
+      Integer id = keywordIds.get(keyword);
+      if (id == null) {
+        id = keywords.size();
+        keywordIds.put(keyword, id);
+        keywords.add(keyword);
+        keywordOccurrences.add(new ArrayList<>());
+        int state = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+          Integer target = transitions.get(state).get(keyword.charAt(i));
+          if (target == null) {
+            target = newState();
+            transitions.get(state).put(keyword.charAt(i), target);
+          }
+          state = target;
+        }
+        stateKeywords.get(state).add(id);
+      }
+      // added in matcher order, which lets lookups stop early
+      keywordOccurrences.get(id).add(new int[] {matcher, chain, segmentIndex});
+    }
+
+    @Nullable
+    Automaton build() {
+      if (keywords.isEmpty()) {
+        return null;
+      }
+      int stateCount = transitions.size();
+      char[][] transitionChars = new char[stateCount][];
+      int[][] transitionTargets = new int[stateCount][];
+      for (int state = 0; state < stateCount; state++) {
+        List<Character> chars = new ArrayList<>(transitions.get(state).keySet());
+        Collections.sort(chars);
+        transitionChars[state] = new char[chars.size()];
+        transitionTargets[state] = new int[chars.size()];
+        for (int i = 0; i < chars.size(); i++) {
+          transitionChars[state][i] = chars.get(i);
+          transitionTargets[state][i] = transitions.get(state).get(chars.get(i));
+        }
+      }
+
+      // breadth first, so that failure links always point to already completed states
+      int[] failure = new int[stateCount];
+      List<List<Integer>> outputs = new ArrayList<>(stateKeywords);
+      int[] queue = new int[stateCount];
+      int head = 0;
+      int tail = 0;
+      for (int target : transitionTargets[0]) {
+        queue[tail++] = target;
+      }
+      while (head < tail) {
+        int state = queue[head++];
+        for (int i = 0; i < transitionChars[state].length; i++) {
+          char c = transitionChars[state][i];
+          int target = transitionTargets[state][i];
+          int fallback = failure[state];
+          while (fallback != 0 && Arrays.binarySearch(transitionChars[fallback], c) < 0) {
+            fallback = failure[fallback];
+          }
+          int index = Arrays.binarySearch(transitionChars[fallback], c);
+          failure[target] = index >= 0 ? transitionTargets[fallback][index] : 0;
+          List<Integer> merged = new ArrayList<>(outputs.get(target));
+          merged.addAll(outputs.get(failure[target]));
+          outputs.set(target, merged);
+          queue[tail++] = target;
+        }
+      }
+
+      int[][] outputArrays = new int[stateCount][];
+      for (int state = 0; state < stateCount; state++) {
+        outputArrays[state] = toArray(outputs.get(state));
+      }
+      int[] keywordLengths = new int[keywords.size()];
+      int[][] keywordMatchers = new int[keywords.size()][];
+      int[][] keywordChains = new int[keywords.size()][];
+      int[][] keywordSegments = new int[keywords.size()][];
+      for (int id = 0; id < keywords.size(); id++) {
+        keywordLengths[id] = keywords.get(id).length();
+        List<int[]> occurrences = keywordOccurrences.get(id);
+        keywordMatchers[id] = new int[occurrences.size()];
+        keywordChains[id] = new int[occurrences.size()];
+        keywordSegments[id] = new int[occurrences.size()];
+        for (int i = 0; i < occurrences.size(); i++) {
+          keywordMatchers[id][i] = occurrences.get(i)[0];
+          keywordChains[id][i] = occurrences.get(i)[1];
+          keywordSegments[id][i] = occurrences.get(i)[2];
+        }
+      }
+      return new Automaton(
+          transitionChars,
+          transitionTargets,
+          failure,
+          outputArrays,
+          keywordLengths,
+          keywordMatchers,
+          keywordChains,
+          keywordSegments);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+      int[] result = new int[list.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = list.get(i);
+      }
+      return result;
+    }
+  }
+}
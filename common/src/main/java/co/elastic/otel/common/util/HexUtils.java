@@ -19,11 +19,26 @@
 package co.elastic.otel.common.util;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class HexUtils {
 
   public static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
 
+  /** Maps ASCII chars to their hex value, -1 for chars which are not hex digits. */
+  private static final byte[] HEX_VALUES = new byte[128];
+
+  static {
+    Arrays.fill(HEX_VALUES, (byte) -1);
+    for (int i = 0; i < 10; i++) {
+      HEX_VALUES['0' + i] = (byte) i;
+    }
+    for (int i = 0; i < 6; i++) {
+      HEX_VALUES['a' + i] = (byte) (10 + i);
+      HEX_VALUES['A' + i] = (byte) (10 + i);
+    }
+  }
+
   private HexUtils() {
     // only static utility methods, don't instantiate
   }
@@ -55,6 +70,14 @@ public class HexUtils {
     }
   }
 
+  /** Writes the 16 hex chars of the given value into {@code dest}, starting at {@code offset}. */
+  public static void writeLongAsHex(long value, char[] dest, int offset) {
+    for (int i = 15; i >= 0; i--) {
+      dest[offset + i] = HEX_CHARS[(int) (value & 0x0F)];
+      value >>>= 4;
+    }
+  }
+
   private static void appendHexChar(long value, StringBuilder sb) {
     sb.append(HEX_CHARS[(int) (value & 0x0F)]);
   }
@@ -92,15 +115,10 @@ public class HexUtils {
   }
 
   private static long hexCharToBinary(char ch) {
-    if ('0' <= ch && ch <= '9') {
-      return ch - '0';
-    }
-    if ('A' <= ch && ch <= 'F') {
-      return ch - 'A' + 10;
-    }
-    if ('a' <= ch && ch <= 'f') {
-      return ch - 'a' + 10;
+    int value = ch < 128 ? HEX_VALUES[ch] : -1;
+    if (value < 0) {
+      throw new IllegalArgumentException("Not a hex char: " + ch);
     }
-    throw new IllegalArgumentException("Not a hex char: " + ch);
+    return value;
   }
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Immutable binary representation of a span id, stored as a single long. Compared to the hex {@link
+ * String} exposed by {@link io.opentelemetry.api.trace.SpanContext#getSpanId()}, instances can be
+ * compared, hashed and serialized without allocating.
+ */
+public final class SpanId {
+
+  public static final int BINARY_LENGTH = 8;
+
+  public static final int HEX_LENGTH = 2 * BINARY_LENGTH;
+
+  public static final SpanId INVALID = new SpanId(0);
+
+  private final long value;
+
+  private SpanId(long value) {
+    this.value = value;
+  }
+
+  public static SpanId fromLong(long value) {
+    return value == 0 ? INVALID : new SpanId(value);
+  }
+
+  /** Parses the {@value #HEX_LENGTH} hex chars of the given string, case-insensitive. */
+  public static SpanId fromHex(CharSequence hex) {
+    checkLength(hex, HEX_LENGTH);
+    return fromLong(HexUtils.hexToLong(hex, 0));
+  }
+
+  public static SpanId fromBytes(byte[] bytes, int offset) {
+    return fromLong(readLong(bytes, offset));
+  }
+
+  /**
+   * Reads the id from the given absolute buffer offset in network byte order, independent of the
+   * {@link ByteBuffer#order()} of the buffer. The position of the buffer is not changed.
+   */
+  public static SpanId readFrom(ByteBuffer buffer, int offset) {
+    return fromLong(readLong(buffer, offset));
+  }
+
+  /**
+   * Writes the id to the given absolute buffer offset in network byte order, independent of the
+   * {@link ByteBuffer#order()} of the buffer. The position of the buffer is not changed.
+   */
+  public void writeTo(ByteBuffer buffer, int offset) {
+    writeLong(buffer, offset, value);
+  }
+
+  public long toLong() {
+    return value;
+  }
+
+  public boolean isValid() {
+    return value != 0;
+  }
+
+  public void appendHex(StringBuilder builder) {
+    HexUtils.appendLongAsHex(value, builder);
+  }
+
+  /** Returns the lower case hex representation, as used by the OpenTelemetry API. */
+  public String toHex() {
+    char[] chars = new char[HEX_LENGTH];
+    HexUtils.writeLongAsHex(value, chars, 0);
+    return new String(chars);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SpanId)) {
+      return false;
+    }
+    return value == ((SpanId) o).value;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(value);
+  }
+
+  @Override
+  public String toString() {
+    return toHex();
+  }
+
+  static void checkLength(CharSequence hex, int expectedLength) {
+    if (hex.length() != expectedLength) {
+      throw new IllegalArgumentException(
+          "Expected " + expectedLength + " hex chars but got '" + hex + "'");
+    }
+  }
+
+  static long readLong(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result = (result << 8) | (bytes[offset + i] & 0xFF);
+    }
+    return result;
+  }
+
+  static long readLong(ByteBuffer buffer, int offset) {
+    long result = buffer.getLong(offset);
+    return buffer.order() == ByteOrder.BIG_ENDIAN ? result : Long.reverseBytes(result);
+  }
+
+  static void writeLong(ByteBuffer buffer, int offset, long value) {
+    buffer.putLong(
+        offset, buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+  }
+}
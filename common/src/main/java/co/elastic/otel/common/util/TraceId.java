@@ -0,0 +1,124 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable binary representation of a trace id, stored as two longs. Compared to the hex {@link
+ * String} exposed by {@link io.opentelemetry.api.trace.SpanContext#getTraceId()}, instances can be
+ * compared, hashed and serialized without allocating.
+ */
+public final class TraceId {
+
+  public static final int BINARY_LENGTH = 16;
+
+  public static final int HEX_LENGTH = 2 * BINARY_LENGTH;
+
+  public static final TraceId INVALID = new TraceId(0, 0);
+
+  private final long high;
+
+  private final long low;
+
+  private TraceId(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  public static TraceId fromLongs(long high, long low) {
+    return high == 0 && low == 0 ? INVALID : new TraceId(high, low);
+  }
+
+  /** Parses the {@value #HEX_LENGTH} hex chars of the given string, case-insensitive. */
+  public static TraceId fromHex(CharSequence hex) {
+    SpanId.checkLength(hex, HEX_LENGTH);
+    return fromLongs(HexUtils.hexToLong(hex, 0), HexUtils.hexToLong(hex, 16));
+  }
+
+  public static TraceId fromBytes(byte[] bytes, int offset) {
+    return fromLongs(SpanId.readLong(bytes, offset), SpanId.readLong(bytes, offset + 8));
+  }
+
+  /**
+   * Reads the id from the given absolute buffer offset in network byte order, independent of the
+   * {@link ByteBuffer#order()} of the buffer. The position of the buffer is not changed.
+   */
+  public static TraceId readFrom(ByteBuffer buffer, int offset) {
+    return fromLongs(SpanId.readLong(buffer, offset), SpanId.readLong(buffer, offset + 8));
+  }
+
+  /**
+   * Writes the id to the given absolute buffer offset in network byte order, independent of the
+   * {@link ByteBuffer#order()} of the buffer. The position of the buffer is not changed.
+   */
+  public void writeTo(ByteBuffer buffer, int offset) {
+    SpanId.writeLong(buffer, offset, high);
+    SpanId.writeLong(buffer, offset + 8, low);
+  }
+
+  /** The first eight bytes of the id, interpreted as big endian long. */
+  public long getHigh() {
+    return high;
+  }
+
+  /** The last eight bytes of the id, interpreted as big endian long. */
+  public long getLow() {
+    return low;
+  }
+
+  public boolean isValid() {
+    return high != 0 || low != 0;
+  }
+
+  public void appendHex(StringBuilder builder) {
+    HexUtils.appendLongAsHex(high, builder);
+    HexUtils.appendLongAsHex(low, builder);
+  }
+
+  /** Returns the lower case hex representation, as used by the OpenTelemetry API. */
+  public String toHex() {
+    char[] chars = new char[HEX_LENGTH];
+    HexUtils.writeLongAsHex(high, chars, 0);
+    HexUtils.writeLongAsHex(low, chars, 16);
+    return new String(chars);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TraceId)) {
+      return false;
+    }
+    TraceId that = (TraceId) o;
+    return high == that.high && low == that.low;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(high) + Long.hashCode(low);
+  }
+
+  @Override
+  public String toString() {
+    return toHex();
+  }
+}
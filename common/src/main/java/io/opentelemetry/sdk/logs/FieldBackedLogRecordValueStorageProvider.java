@@ -0,0 +1,124 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.opentelemetry.sdk.logs;
+
+import co.elastic.otel.common.LogRecordValueStorage;
+import co.elastic.otel.common.LogRecordValueStorageProvider;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * This class enables {@link co.elastic.otel.common.LogRecordValue}s to be stored directly as fields
+ * on log records. The field ($elasticLogRecordValues) is injected at packaging time via the shadow
+ * plugin to our agent distro.
+ *
+ * <p>This class needs to live in the same package as the OpenTelemetry SdkReadWriteLogRecord,
+ * otherwise it is not possible to create an {@link AtomicReferenceFieldUpdater} for safely
+ * initializing the field.
+ */
+public class FieldBackedLogRecordValueStorageProvider implements LogRecordValueStorageProvider {
+
+  private static final String FIELD_NAME = "$elasticLogRecordValues";
+
+  private static final Logger logger = Logger.getLogger(LogRecordValueStorage.class.getName());
+
+  public static final FieldBackedLogRecordValueStorageProvider INSTANCE;
+
+  private static final MethodHandle logRecordFieldGetter;
+  private static final AtomicReferenceFieldUpdater<SdkReadWriteLogRecord, Object>
+      logRecordFieldSetter;
+
+  static {
+    FieldBackedLogRecordValueStorageProvider resultInstance = null;
+    MethodHandle getter = null;
+    AtomicReferenceFieldUpdater<SdkReadWriteLogRecord, Object> setter = null;
+    try {
+      Field storageField = SdkReadWriteLogRecord.class.getDeclaredField(FIELD_NAME);
+      if (storageField.getType() != Object.class) {
+        throw new IllegalStateException("Unexpected field type: " + storageField.getType());
+      }
+
+      getter = MethodHandles.lookup().unreflectGetter(storageField);
+      setter =
+          AtomicReferenceFieldUpdater.newUpdater(
+              SdkReadWriteLogRecord.class, Object.class, FIELD_NAME);
+
+      logger.log(Level.FINE, "Using field-backed storage for LogRecordValues");
+      resultInstance = new FieldBackedLogRecordValueStorageProvider();
+
+    } catch (NoSuchFieldException e) {
+      logger.log(
+          Level.FINE,
+          "Using map-backed storage for LogRecordValues because Field '{0}' does not exist on SdkReadWriteLogRecord",
+          FIELD_NAME);
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "Failed to initialize log record value storage", e);
+      throw new IllegalStateException(e);
+    }
+
+    logRecordFieldGetter = getter;
+    logRecordFieldSetter = setter;
+    INSTANCE = resultInstance;
+  }
+
+  @Nullable
+  @Override
+  public LogRecordValueStorage get(ReadWriteLogRecord logRecord, boolean initialize) {
+    SdkReadWriteLogRecord sdkLogRecord = toSdkLogRecord(logRecord);
+
+    LogRecordValueStorage value = getFieldValue(sdkLogRecord);
+    if (value == null && initialize) {
+      LogRecordValueStorage storage = new LogRecordValueStorage();
+      if (logRecordFieldSetter.compareAndSet(sdkLogRecord, null, storage)) {
+        storage.countInstalled();
+      }
+      value = getFieldValue(sdkLogRecord);
+    }
+    return value;
+  }
+
+  @Override
+  public boolean replace(
+      ReadWriteLogRecord logRecord,
+      LogRecordValueStorage expected,
+      LogRecordValueStorage replacement) {
+    return logRecordFieldSetter.compareAndSet(toSdkLogRecord(logRecord), expected, replacement);
+  }
+
+  private static SdkReadWriteLogRecord toSdkLogRecord(ReadWriteLogRecord logRecord) {
+    if (!(logRecord instanceof SdkReadWriteLogRecord)) {
+      throw new IllegalStateException("unknown log record type: " + logRecord.getClass().getName());
+    }
+    return (SdkReadWriteLogRecord) logRecord;
+  }
+
+  private static LogRecordValueStorage getFieldValue(SdkReadWriteLogRecord sdkLogRecord) {
+    try {
+      // double cast is required here because invokeExact is signature polymorphic
+      return (LogRecordValueStorage) (Object) logRecordFieldGetter.invokeExact(sdkLogRecord);
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
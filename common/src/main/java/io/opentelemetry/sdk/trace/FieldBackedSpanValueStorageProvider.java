@@ -18,8 +18,10 @@
  */
 package io.opentelemetry.sdk.trace;
 
+import co.elastic.otel.common.DedicatedSpanField;
 import co.elastic.otel.common.SpanValueStorage;
 import co.elastic.otel.common.SpanValueStorageProvider;
+import co.elastic.otel.common.WellKnownSpanValue;
 import io.opentelemetry.api.trace.Span;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
@@ -32,7 +34,7 @@ import javax.annotation.Nullable;
 /**
  * This class enables {@link co.elastic.otel.common.SpanValue}s to be stored directly as fields on
  * spans. The field ($elasticSpanValues) is injected at packaging time via the shadow plugin to our
- * agent distro.
+ * agent distro. In addition, every {@link WellKnownSpanValue} gets its own dedicated field.
  *
  * <p>This class needs to live in the same package as the OpenTelemetry SdkSpan, otherwise it is not
  * possible to create an {@link AtomicReferenceFieldUpdater} for safely initializing the field.
@@ -87,12 +89,40 @@ public class FieldBackedSpanValueStorageProvider implements SpanValueStorageProv
 
     SpanValueStorage value = getFieldValue(sdkSpan);
     if (value == null && initialize) {
-      spanFieldSetter.compareAndSet(sdkSpan, null, new SpanValueStorage());
+      SpanValueStorage storage = new SpanValueStorage();
+      if (spanFieldSetter.compareAndSet(sdkSpan, null, storage)) {
+        storage.countInstalled();
+      }
       value = getFieldValue(sdkSpan);
     }
     return value;
   }
 
+  @Override
+  public boolean replace(Span span, SpanValueStorage expected, SpanValueStorage replacement) {
+    return spanFieldSetter.compareAndSet((SdkSpan) span, expected, replacement);
+  }
+
+  @Nullable
+  @Override
+  public DedicatedSpanField getDedicatedField(WellKnownSpanValue value) {
+    String fieldName = value.getFieldName();
+    try {
+      Field field = SdkSpan.class.getDeclaredField(fieldName);
+      if (field.getType() != Object.class) {
+        throw new IllegalStateException("Unexpected field type: " + field.getType());
+      }
+    } catch (NoSuchFieldException e) {
+      logger.log(
+          Level.FINE,
+          "Using regular storage for {0} because Field '{1}' does not exist on SdkSpan",
+          new Object[] {value, fieldName});
+      return null;
+    }
+    return new UpdaterBackedField(
+        AtomicReferenceFieldUpdater.newUpdater(SdkSpan.class, Object.class, fieldName));
+  }
+
   private static SpanValueStorage getFieldValue(SdkSpan sdkSpan) {
     try {
       // double cast is required here because invokeExact is signature polymorphic
@@ -101,4 +131,28 @@ public class FieldBackedSpanValueStorageProvider implements SpanValueStorageProv
       throw new IllegalStateException(e);
     }
   }
+
+  private static class UpdaterBackedField implements DedicatedSpanField {
+
+    private final AtomicReferenceFieldUpdater<SdkSpan, Object> updater;
+
+    private UpdaterBackedField(AtomicReferenceFieldUpdater<SdkSpan, Object> updater) {
+      this.updater = updater;
+    }
+
+    @Override
+    public Object get(Span span) {
+      return updater.get((SdkSpan) span);
+    }
+
+    @Override
+    public void set(Span span, Object value) {
+      updater.set((SdkSpan) span, value);
+    }
+
+    @Override
+    public boolean compareAndSet(Span span, Object expect, Object update) {
+      return updater.compareAndSet((SdkSpan) span, expect, update);
+    }
+  }
 }
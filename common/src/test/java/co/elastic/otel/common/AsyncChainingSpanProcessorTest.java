@@ -0,0 +1,305 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AsyncChainingSpanProcessorTest {
+
+  private SdkTracerProvider tracerProvider;
+
+  private RecordingProcessor next;
+
+  private AsyncChainingSpanProcessor processor;
+
+  @BeforeEach
+  public void setup() {
+    tracerProvider = SdkTracerProvider.builder().build();
+    next = new RecordingProcessor();
+  }
+
+  @AfterEach
+  public void cleanup() {
+    next.unblock();
+    if (processor != null) {
+      assertThat(processor.shutdown().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    }
+    tracerProvider.close();
+  }
+
+  @Test
+  public void spansPassedOnFromWorkerThreads() {
+    processor = AsyncChainingSpanProcessor.builder(next).workerCount(2).build();
+
+    for (int i = 0; i < 1000; i++) {
+      processor.onEnd(newSpan());
+    }
+    assertThat(processor.forceFlush().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+
+    assertThat(next.ended).hasSize(1000);
+    assertThat(next.endingThreads)
+        .allSatisfy(name -> assertThat(name).startsWith("elastic-span-processor-async"));
+    assertThat(next.flushed.get()).isTrue();
+  }
+
+  @Test
+  public void onStartIsSynchronous() {
+    processor = AsyncChainingSpanProcessor.builder(next).build();
+    assertThat(processor.isStartRequired()).isTrue();
+    assertThat(processor.isEndRequired()).isTrue();
+
+    processor.onStart(Context.root(), (ReadWriteSpan) newSpan());
+    assertThat(next.started).hasSize(1);
+  }
+
+  @Test
+  public void dropOnOverflow() {
+    processor =
+        AsyncChainingSpanProcessor.builder(next)
+            .queueCapacity(2)
+            .overflowPolicy(AsyncChainingSpanProcessor.OverflowPolicy.DROP)
+            .build();
+    next.block();
+
+    ReadableSpan first = newSpan();
+    processor.onEnd(first);
+    await().atMost(Duration.ofSeconds(10)).until(() -> next.blockedSpans.getCount() == 0);
+    for (int i = 0; i < 10; i++) {
+      processor.onEnd(newSpan());
+    }
+    assertThat(processor.getDroppedSpans()).isEqualTo(8);
+
+    next.unblock();
+    assertThat(processor.forceFlush().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(next.ended).hasSize(3).first().isSameAs(first);
+  }
+
+  @Test
+  public void callerRunsOnOverflow() {
+    processor =
+        AsyncChainingSpanProcessor.builder(next)
+            .queueCapacity(2)
+            .overflowPolicy(AsyncChainingSpanProcessor.OverflowPolicy.CALLER_RUNS)
+            .build();
+    next.block();
+
+    processor.onEnd(newSpan());
+    await().atMost(Duration.ofSeconds(10)).until(() -> next.blockedSpans.getCount() == 0);
+    for (int i = 0; i < 10; i++) {
+      processor.onEnd(newSpan());
+    }
+    assertThat(next.endingThreads)
+        .filteredOn(name -> name.equals(Thread.currentThread().getName()))
+        .hasSize(8);
+
+    next.unblock();
+    assertThat(processor.forceFlush().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(next.ended).hasSize(11);
+    assertThat(processor.getDroppedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void blockOnOverflow() throws InterruptedException {
+    processor =
+        AsyncChainingSpanProcessor.builder(next)
+            .queueCapacity(2)
+            .overflowPolicy(AsyncChainingSpanProcessor.OverflowPolicy.BLOCK)
+            .build();
+    next.block();
+
+    processor.onEnd(newSpan());
+    await().atMost(Duration.ofSeconds(10)).until(() -> next.blockedSpans.getCount() == 0);
+    CountDownLatch producerDone = new CountDownLatch(1);
+    Thread producer =
+        new Thread(
+            () -> {
+              for (int i = 0; i < 10; i++) {
+                processor.onEnd(newSpan());
+              }
+              producerDone.countDown();
+            });
+    producer.start();
+    assertThat(producerDone.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+    next.unblock();
+    assertThat(producerDone.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(processor.forceFlush().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(next.ended).hasSize(11);
+    assertThat(processor.getDroppedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void shutdownDrainsQueue() {
+    processor = AsyncChainingSpanProcessor.builder(next).build();
+    for (int i = 0; i < 100; i++) {
+      processor.onEnd(newSpan());
+    }
+    assertThat(processor.shutdown().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(next.ended).hasSize(100);
+    assertThat(next.shutdown.get()).isTrue();
+
+    processor.onEnd(newSpan());
+    assertThat(processor.getDroppedSpans()).isEqualTo(1);
+    processor = null;
+  }
+
+  @Test
+  public void forceFlushAfterShutdownCompletesImmediately() {
+    processor = AsyncChainingSpanProcessor.builder(next).queueCapacity(16).build();
+    assertThat(processor.shutdown().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+
+    CompletableResultCode flushResult = processor.forceFlush();
+    assertThat(flushResult.isDone()).isTrue();
+    assertThat(flushResult.isSuccess()).isTrue();
+    processor = null;
+  }
+
+  @Test
+  public void idleWorkerParksUntilSpanIsEnqueued() {
+    processor = AsyncChainingSpanProcessor.builder(next).workerCount(1).build();
+    Thread worker =
+        Thread.getAllStackTraces().keySet().stream()
+            .filter(t -> t.getName().startsWith("elastic-span-processor-async"))
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("worker thread not found"));
+
+    // parked without a timeout, so an idle worker doesn't wake up periodically
+    await().atMost(Duration.ofSeconds(5)).until(() -> worker.getState() == Thread.State.WAITING);
+
+    processor.onEnd(newSpan());
+    await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(next.ended).hasSize(1));
+  }
+
+  @Test
+  public void spansEndedConcurrentlyToShutdownAreNotLost() throws InterruptedException {
+    processor = AsyncChainingSpanProcessor.builder(next).workerCount(2).build();
+    int threadCount = 4;
+    int spansPerThread = 5_000;
+    CountDownLatch started = new CountDownLatch(threadCount);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                started.countDown();
+                for (int i = 0; i < spansPerThread; i++) {
+                  processor.onEnd(newSpan());
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    started.await();
+    CompletableResultCode shutdownResult = processor.shutdown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(shutdownResult.join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(next.ended.size() + processor.getDroppedSpans())
+        .isEqualTo(threadCount * spansPerThread);
+    processor = null;
+  }
+
+  private ReadableSpan newSpan() {
+    return (ReadableSpan) tracerProvider.get("test").spanBuilder("span").startSpan();
+  }
+
+  private static class RecordingProcessor implements SpanProcessor {
+
+    final List<ReadableSpan> started = new CopyOnWriteArrayList<>();
+    final List<ReadableSpan> ended = new CopyOnWriteArrayList<>();
+    final List<String> endingThreads = new CopyOnWriteArrayList<>();
+    final AtomicBoolean flushed = new AtomicBoolean();
+    final AtomicBoolean shutdown = new AtomicBoolean();
+
+    // counted down by the first span blocking the worker thread
+    volatile CountDownLatch blockedSpans = new CountDownLatch(0);
+    volatile CountDownLatch unblock = new CountDownLatch(0);
+
+    void block() {
+      blockedSpans = new CountDownLatch(1);
+      unblock = new CountDownLatch(1);
+    }
+
+    void unblock() {
+      unblock.countDown();
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+      started.add(span);
+    }
+
+    @Override
+    public boolean isStartRequired() {
+      return true;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      ended.add(span);
+      String threadName = Thread.currentThread().getName();
+      endingThreads.add(threadName);
+      if (threadName.startsWith("elastic-span-processor-async")) {
+        blockedSpans.countDown();
+        try {
+          unblock.await();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      flushed.set(true);
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      shutdown.set(true);
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BatchCollectingSpanProcessorTest {
+
+  private InMemorySpanExporter spans;
+  private SpanProcessor exportProcessor;
+  private SdkTracerProvider tracerProvider;
+  private List<Integer> batchSizes;
+
+  @BeforeEach
+  public void setup() {
+    spans = InMemorySpanExporter.create();
+    exportProcessor = SimpleSpanProcessor.create(spans);
+    batchSizes = new CopyOnWriteArrayList<>();
+  }
+
+  @AfterEach
+  public void cleanup() {
+    if (tracerProvider != null) {
+      tracerProvider.close();
+    }
+  }
+
+  @Test
+  public void batchesFormedBySize() {
+    SpanProcessor batchProcessor = recordingBatchProcessor(exportProcessor, batch -> {});
+    init(new BatchCollectingSpanProcessor(batchProcessor, 3, Duration.ofHours(1)));
+
+    for (int i = 0; i < 7; i++) {
+      endSpan("span");
+    }
+    assertThat(batchSizes).containsExactly(3, 3);
+    assertThat(spans.getFinishedSpanItems()).hasSize(6);
+
+    tracerProvider.forceFlush().join(10, TimeUnit.SECONDS);
+    assertThat(batchSizes).containsExactly(3, 3, 1);
+    assertThat(spans.getFinishedSpanItems()).hasSize(7);
+  }
+
+  @Test
+  public void batchesFormedByTime() {
+    SpanProcessor batchProcessor = recordingBatchProcessor(exportProcessor, batch -> {});
+    init(new BatchCollectingSpanProcessor(batchProcessor, 100, Duration.ofMillis(50)));
+
+    endSpan("first");
+    endSpan("second");
+    assertThat(batchSizes).isEmpty();
+
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(() -> assertThat(batchSizes).containsExactly(2));
+    assertThat(spans.getFinishedSpanItems()).hasSize(2);
+  }
+
+  @Test
+  public void batchesCanBeModifiedInPlace() {
+    AttributeKey<String> key = AttributeKey.stringKey("batch");
+    SpanProcessor second =
+        recordingBatchProcessor(
+            exportProcessor,
+            batch ->
+                batch.replaceAll(
+                    span -> {
+                      MutableSpan mutable = MutableSpan.makeMutable(span);
+                      mutable.setAttribute(key, "size-" + batch.size());
+                      return mutable;
+                    }));
+    SpanProcessor first =
+        recordingBatchProcessor(
+            second, batch -> batch.removeIf(span -> span.getName().equals("dropMe")));
+    init(new BatchCollectingSpanProcessor(first, 4, Duration.ofHours(1)));
+
+    endSpan("sendMe");
+    endSpan("dropMe");
+    endSpan("sendMe");
+    endSpan("dropMe");
+
+    // both batch processors see the whole batch
+    assertThat(batchSizes).containsExactly(4, 2);
+    assertThat(spans.getFinishedSpanItems())
+        .hasSize(2)
+        .allSatisfy(span -> assertThat(span).hasName("sendMe").hasAttribute(key, "size-2"));
+  }
+
+  @Test
+  public void singleSpansProcessedAsBatchOfOne() {
+    init(recordingBatchProcessor(exportProcessor, batch -> {}));
+
+    endSpan("first");
+    endSpan("second");
+
+    assertThat(batchSizes).containsExactly(1, 1);
+    assertThat(spans.getFinishedSpanItems()).hasSize(2);
+  }
+
+  @Test
+  public void spansEndedAfterShutdownPassedOnDirectly() {
+    List<ReadableSpan> passedOn = new CopyOnWriteArrayList<>();
+    SpanProcessor next =
+        new SpanProcessor() {
+          @Override
+          public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+          @Override
+          public boolean isStartRequired() {
+            return false;
+          }
+
+          @Override
+          public void onEnd(ReadableSpan span) {
+            passedOn.add(span);
+          }
+
+          @Override
+          public boolean isEndRequired() {
+            return true;
+          }
+        };
+    BatchCollectingSpanProcessor processor =
+        new BatchCollectingSpanProcessor(next, 100, Duration.ofHours(1));
+    init(processor);
+
+    endSpan("before");
+    assertThat(passedOn).isEmpty();
+    tracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+    assertThat(passedOn).hasSize(1);
+
+    try (SdkTracerProvider otherProvider = SdkTracerProvider.builder().build()) {
+      Span late = otherProvider.get("test").spanBuilder("late").startSpan();
+      late.end();
+      processor.onEnd((ReadableSpan) late);
+    }
+    assertThat(passedOn).hasSize(2);
+    assertThat(passedOn.get(1).getName()).isEqualTo("late");
+  }
+
+  private void init(SpanProcessor processor) {
+    tracerProvider = SdkTracerProvider.builder().addSpanProcessor(processor).build();
+  }
+
+  private void endSpan(String name) {
+    tracerProvider.get("test").spanBuilder(name).startSpan().end();
+  }
+
+  private SpanProcessor recordingBatchProcessor(
+      SpanProcessor next, Consumer<List<ReadableSpan>> action) {
+    return new AbstractBatchChainingSpanProcessor(next) {
+      @Override
+      protected void doOnEndBatch(List<ReadableSpan> spans) {
+        batchSizes.add(spans.size());
+        action.accept(spans);
+      }
+
+      @Override
+      protected boolean requiresStart() {
+        return false;
+      }
+
+      @Override
+      protected boolean requiresEnd() {
+        return true;
+      }
+    };
+  }
+}
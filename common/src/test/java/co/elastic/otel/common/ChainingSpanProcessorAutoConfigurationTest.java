@@ -19,6 +19,7 @@
 package co.elastic.otel.common;
 
 import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+import static org.awaitility.Awaitility.await;
 import static org.mockito.Mockito.verifyNoInteractions;
 
 import co.elastic.otel.testing.AssertionCollector;
@@ -37,6 +38,7 @@ import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
 import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -123,6 +125,51 @@ public class ChainingSpanProcessorAutoConfigurationTest {
     }
   }
 
+  @Test
+  public void fanOutExportReplacesBatchSpanProcessors() {
+    AtomicReference<AbstractSimpleChainingSpanProcessor> chainingProcessor =
+        new AtomicReference<>();
+
+    AutoConfigA.delegate =
+        (props, registerer) ->
+            registerer.register(
+                next -> {
+                  chainingProcessor.set(
+                      new AbstractSimpleChainingSpanProcessor(next) {
+                        @Override
+                        protected boolean requiresEnd() {
+                          return false;
+                        }
+
+                        @Override
+                        protected boolean requiresStart() {
+                          return false;
+                        }
+                      });
+                  return chainingProcessor.get();
+                });
+
+    try (AutoConfigTestProperties props =
+        new AutoConfigTestProperties()
+            .put("otel.traces.exporter", "logging,otlp")
+            .put(ChainingSpanProcessorsInstaller.FAN_OUT_EXPORT_ENABLED_OPTION, "true")) {
+
+      GlobalOpenTelemetry.get();
+      assertThat(chainingProcessor.get()).isNotNull();
+
+      SpanProcessor terminal = chainingProcessor.get().next;
+      assertThat(terminal).isInstanceOf(MutableCompositeSpanProcessor.class);
+      List<SpanProcessor> exportingProcessors =
+          OtelReflectionUtils.flattenCompositeProcessors(
+              ((MutableCompositeSpanProcessor) terminal).composite);
+
+      assertThat(exportingProcessors)
+          .hasSize(2)
+          .anySatisfy(proc -> assertThat(proc).isInstanceOf(FanOutExportSpanProcessor.class))
+          .anySatisfy(proc -> assertThat(proc).isInstanceOf(SimpleSpanProcessor.class));
+    }
+  }
+
   @Test
   public void verifyProcessorOrder() {
 
@@ -288,6 +335,63 @@ public class ChainingSpanProcessorAutoConfigurationTest {
     }
   }
 
+  @Test
+  public void asyncStageRunsLaterProcessorsOffThread() {
+    AtomicReference<String> firstThread = new AtomicReference<>();
+    AtomicReference<String> lastThread = new AtomicReference<>();
+
+    AutoConfigA.delegate =
+        (props, registry) -> {
+          registry.register(
+              next -> new ThreadRecordingProcessor(next, firstThread),
+              ChainingSpanProcessorRegisterer.ORDER_FIRST);
+          registry.register(
+              next -> new ThreadRecordingProcessor(next, lastThread),
+              ChainingSpanProcessorRegisterer.ORDER_LAST);
+        };
+
+    try (AutoConfigTestProperties props =
+        new AutoConfigTestProperties()
+            .put(AsyncChainingSpanProcessorAutoConfig.ENABLED_OPTION, "true")) {
+      OpenTelemetry otel = GlobalOpenTelemetry.get();
+      Tracer tracer = otel.getTracer("dummy-tracer");
+
+      tracer.spanBuilder("span").startSpan().end();
+
+      await()
+          .atMost(Duration.ofSeconds(10))
+          .untilAsserted(() -> assertThat(AutoConfiguredDataCapture.getSpans()).hasSize(1));
+      assertThat(firstThread.get()).isEqualTo(Thread.currentThread().getName());
+      assertThat(lastThread.get()).startsWith("elastic-span-processor-async");
+    }
+  }
+
+  private static class ThreadRecordingProcessor extends AbstractSimpleChainingSpanProcessor {
+
+    private final AtomicReference<String> endingThread;
+
+    ThreadRecordingProcessor(SpanProcessor next, AtomicReference<String> endingThread) {
+      super(next);
+      this.endingThread = endingThread;
+    }
+
+    @Override
+    protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+      endingThread.set(Thread.currentThread().getName());
+      return readableSpan;
+    }
+
+    @Override
+    protected boolean requiresStart() {
+      return false;
+    }
+
+    @Override
+    protected boolean requiresEnd() {
+      return true;
+    }
+  }
+
   @AutoService(ChainingSpanProcessorAutoConfiguration.class)
   public static class AutoConfigA implements ChainingSpanProcessorAutoConfiguration {
     public static ChainingSpanProcessorAutoConfiguration delegate = (a, b) -> {};
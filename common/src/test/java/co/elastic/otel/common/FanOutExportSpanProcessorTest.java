@@ -0,0 +1,289 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class FanOutExportSpanProcessorTest {
+
+  private SdkTracerProvider tracerProvider;
+
+  @AfterEach
+  public void cleanup() {
+    if (tracerProvider != null) {
+      tracerProvider.close();
+    }
+  }
+
+  @Test
+  public void exportersShareSnapshots() {
+    InMemorySpanExporter first = InMemorySpanExporter.create();
+    InMemorySpanExporter second = InMemorySpanExporter.create();
+    FanOutExportSpanProcessor fanOut = createFanOut(Duration.ofMillis(10));
+    fanOut.addExporter(BatchSpanProcessor.builder(first).build());
+    fanOut.addExporter(BatchSpanProcessor.builder(second).build());
+    init(fanOut);
+
+    for (int i = 0; i < 5; i++) {
+      tracerProvider.get("test").spanBuilder("span-" + i).startSpan().end();
+    }
+    assertThat(tracerProvider.forceFlush().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+
+    List<SpanData> firstSpans = first.getFinishedSpanItems();
+    List<SpanData> secondSpans = second.getFinishedSpanItems();
+    assertThat(firstSpans).hasSize(5);
+    assertThat(secondSpans).hasSize(5);
+    for (int i = 0; i < 5; i++) {
+      assertThat(firstSpans.get(i)).isSameAs(secondSpans.get(i));
+    }
+  }
+
+  @Test
+  public void failedExportRetriedWithoutBlockingOtherExporters() {
+    InMemorySpanExporter healthy = InMemorySpanExporter.create();
+    FlakyExporter flaky = new FlakyExporter(2);
+    FanOutExportSpanProcessor fanOut = createFanOut(Duration.ofMillis(10));
+    fanOut.addExporter(BatchSpanProcessor.builder(flaky).build());
+    fanOut.addExporter(BatchSpanProcessor.builder(healthy).build());
+    init(fanOut);
+
+    tracerProvider.get("test").spanBuilder("span").startSpan().end();
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> healthy.getFinishedSpanItems().size() == 1);
+    await().atMost(Duration.ofSeconds(10)).until(() -> flaky.exported.size() == 1);
+    assertThat(flaky.attempts.get()).isEqualTo(3);
+    assertThat(flaky.exported.get(0)).isSameAs(healthy.getFinishedSpanItems().get(0));
+    assertThat(fanOut.getDroppedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void spansDroppedAfterRetriesExhausted() {
+    FlakyExporter failing = new FlakyExporter(Integer.MAX_VALUE);
+    FanOutExportSpanProcessor fanOut = createFanOut(Duration.ofMillis(10));
+    fanOut.addExporter(BatchSpanProcessor.builder(failing).build());
+    init(fanOut);
+
+    tracerProvider.get("test").spanBuilder("span").startSpan().end();
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> fanOut.getDroppedSpans() == 1);
+    assertThat(failing.attempts.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void shutdownShutsDownExporters() {
+    InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    FanOutExportSpanProcessor fanOut = createFanOut(Duration.ofHours(1));
+    fanOut.addExporter(BatchSpanProcessor.builder(exporter).build());
+    init(fanOut);
+
+    tracerProvider.get("test").spanBuilder("span").startSpan().end();
+    assertThat(exporter.getFinishedSpanItems()).isEmpty();
+
+    FlakyExporter shutdownTracker = new FlakyExporter(0);
+    fanOut.addExporter(BatchSpanProcessor.builder(shutdownTracker).build());
+    assertThat(tracerProvider.shutdown().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    tracerProvider = null;
+
+    assertThat(shutdownTracker.shutdown).isTrue();
+    assertThat(exporter.export(shutdownTracker.exported).isSuccess()).isFalse();
+  }
+
+  @Test
+  public void stalledExporterDoesNotBlockOtherExporters() {
+    InMemorySpanExporter healthy = InMemorySpanExporter.create();
+    StalledExporter stalled = new StalledExporter();
+    // lanes hold up to two batches of a single span
+    FanOutExportSpanProcessor fanOut =
+        new FanOutExportSpanProcessor(2, 1, Duration.ofMillis(10), Duration.ofSeconds(10));
+    fanOut.addExporter(BatchSpanProcessor.builder(stalled).build());
+    fanOut.addExporter(BatchSpanProcessor.builder(healthy).build());
+    init(fanOut);
+
+    for (int i = 0; i < 5; i++) {
+      tracerProvider.get("test").spanBuilder("span-" + i).startSpan().end();
+      int expected = i + 1;
+      await()
+          .atMost(Duration.ofSeconds(10))
+          .until(() -> healthy.getFinishedSpanItems().size() == expected);
+    }
+    CompletableResultCode flushResult = fanOut.forceFlush();
+
+    tracerProvider.get("test").spanBuilder("after-flush").startSpan().end();
+    await().atMost(Duration.ofSeconds(10)).until(() -> healthy.getFinishedSpanItems().size() == 6);
+    assertThat(flushResult.isDone()).isFalse();
+
+    stalled.release.countDown();
+    assertThat(flushResult.join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    // the flush completes only after the batches queued before it have been handled
+    assertThat(stalled.exported).extracting(SpanData::getName).contains("span-0", "span-4");
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> stalled.exported.size() == 3);
+    assertThat(stalled.exported)
+        .extracting(SpanData::getName)
+        .containsExactly("span-0", "span-4", "after-flush");
+    assertThat(fanOut.getDroppedSpans()).isEqualTo(3);
+  }
+
+  @Test
+  public void exporterTakenOverFromBatchSpanProcessor() {
+    FlakyExporter exporter = new FlakyExporter(0);
+    BatchSpanProcessor processor =
+        BatchSpanProcessor.builder(FanOutExportSpanProcessor.detachableLifecycle(exporter)).build();
+    FanOutExportSpanProcessor fanOut = createFanOut(Duration.ofMillis(10));
+    fanOut.addExporter(processor);
+    init(fanOut);
+
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .until(
+            () ->
+                Thread.getAllStackTraces().keySet().stream()
+                    .noneMatch(
+                        thread -> thread.getName().startsWith("BatchSpanProcessor_WorkerThread")));
+    assertThat(exporter.shutdown).isFalse();
+
+    tracerProvider.get("test").spanBuilder("span").startSpan().end();
+    await().atMost(Duration.ofSeconds(10)).until(() -> exporter.exported.size() == 1);
+
+    assertThat(tracerProvider.shutdown().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    tracerProvider = null;
+    assertThat(exporter.shutdown).isTrue();
+  }
+
+  @Test
+  public void spansEndedConcurrentlyToShutdownAreAccountedFor() throws InterruptedException {
+    FlakyExporter exporter = new FlakyExporter(0);
+    FanOutExportSpanProcessor fanOut = createFanOut(Duration.ofMillis(1));
+    fanOut.addExporter(BatchSpanProcessor.builder(exporter).build());
+    init(fanOut);
+
+    int threadCount = 4;
+    int spansPerThread = 5_000;
+    CountDownLatch started = new CountDownLatch(threadCount);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                started.countDown();
+                for (int i = 0; i < spansPerThread; i++) {
+                  tracerProvider.get("test").spanBuilder("span").startSpan().end();
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    started.await();
+    CompletableResultCode shutdownResult = fanOut.shutdown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(shutdownResult.join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    // every span has either been exported or counted as dropped
+    assertThat(exporter.exported.size() + fanOut.getDroppedSpans())
+        .isEqualTo(threadCount * spansPerThread);
+  }
+
+  private static FanOutExportSpanProcessor createFanOut(Duration scheduleDelay) {
+    return new FanOutExportSpanProcessor(2048, 512, scheduleDelay, Duration.ofSeconds(10));
+  }
+
+  private void init(FanOutExportSpanProcessor processor) {
+    tracerProvider = SdkTracerProvider.builder().addSpanProcessor(processor).build();
+  }
+
+  private static class StalledExporter implements SpanExporter {
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<SpanData> exported = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exported.addAll(spans);
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      release.countDown();
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+
+  private static class FlakyExporter implements SpanExporter {
+
+    final int failures;
+    final AtomicInteger attempts = new AtomicInteger();
+    final List<SpanData> exported = new CopyOnWriteArrayList<>();
+    volatile boolean shutdown = false;
+
+    FlakyExporter(int failures) {
+      this.failures = failures;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      if (attempts.incrementAndGet() <= failures) {
+        return CompletableResultCode.ofFailure();
+      }
+      exported.addAll(spans);
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      shutdown = true;
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
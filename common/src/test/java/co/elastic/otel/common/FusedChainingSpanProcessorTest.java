@@ -0,0 +1,256 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class FusedChainingSpanProcessorTest {
+
+  private InMemorySpanExporter spans;
+  private SpanProcessor exportProcessor;
+  private List<String> invocations;
+  private Map<String, SpanProcessor> downstreams;
+
+  @BeforeEach
+  public void setup() {
+    spans = InMemorySpanExporter.create();
+    exportProcessor = SimpleSpanProcessor.create(spans);
+    invocations = new ArrayList<>();
+    downstreams = new HashMap<>();
+  }
+
+  @Test
+  public void consecutiveSimpleProcessorsAreFused() {
+    SpanProcessor chain =
+        FusedChainingSpanProcessor.createChain(
+            Arrays.asList(
+                stage("A", true, UnaryOperator.identity()),
+                stage("B", false, UnaryOperator.identity()),
+                stage("C", true, UnaryOperator.identity())),
+            exportProcessor);
+    assertThat(chain).isInstanceOf(FusedChainingSpanProcessor.class);
+
+    try (OpenTelemetrySdk sdk = sdkWith(chain)) {
+      sdk.getTracer("test").spanBuilder("span").startSpan().end();
+      assertThat(spans.getFinishedSpanItems()).hasSize(1);
+    }
+    assertThat(invocations)
+        .containsExactly(
+            "start A",
+            "start C",
+            "end A",
+            "end B",
+            "end C",
+            "shutdown A",
+            "shutdown B",
+            "shutdown C");
+  }
+
+  @Test
+  public void stagesAreCreatedWithTheirSuccessor() {
+    SpanProcessor chain =
+        FusedChainingSpanProcessor.createChain(
+            Arrays.asList(
+                stage("A", false, UnaryOperator.identity()),
+                stage("B", false, UnaryOperator.identity()),
+                stage("C", false, UnaryOperator.identity())),
+            exportProcessor);
+
+    assertThat(chain).isInstanceOf(FusedChainingSpanProcessor.class);
+    assertThat(downstreams.get("C")).isSameAs(exportProcessor);
+    assertThat(((AbstractChainingSpanProcessor) downstreams.get("B")).next)
+        .isSameAs(exportProcessor);
+    assertThat(((AbstractChainingSpanProcessor) downstreams.get("A")).next)
+        .isSameAs(downstreams.get("B"));
+  }
+
+  @Test
+  public void singleProcessorIsNotWrapped() {
+    SpanProcessor chain =
+        FusedChainingSpanProcessor.createChain(
+            Arrays.asList(stage("A", false, UnaryOperator.identity())), exportProcessor);
+    assertThat(chain).isInstanceOf(AbstractSimpleChainingSpanProcessor.class);
+    assertThat(((AbstractSimpleChainingSpanProcessor) chain).next).isSameAs(exportProcessor);
+  }
+
+  @Test
+  public void otherChainingProcessorsSplitTheFusedGroups() {
+    Function<SpanProcessor, SpanProcessor> opaque =
+        next -> {
+          downstreams.put("opaque", next);
+          return new AbstractChainingSpanProcessor(next) {
+            @Override
+            protected boolean requiresStart() {
+              return false;
+            }
+
+            @Override
+            public void onEnd(ReadableSpan span) {
+              invocations.add("end opaque");
+              next.onEnd(span);
+            }
+
+            @Override
+            public boolean isEndRequired() {
+              return true;
+            }
+          };
+        };
+    SpanProcessor chain =
+        FusedChainingSpanProcessor.createChain(
+            Arrays.asList(
+                stage("A", false, UnaryOperator.identity()),
+                stage("B", false, UnaryOperator.identity()),
+                opaque,
+                stage("C", false, UnaryOperator.identity()),
+                stage("D", false, UnaryOperator.identity())),
+            exportProcessor);
+
+    try (OpenTelemetrySdk sdk = sdkWith(chain)) {
+      sdk.getTracer("test").spanBuilder("span").startSpan().end();
+      assertThat(spans.getFinishedSpanItems()).hasSize(1);
+    }
+    assertThat(invocations).startsWith("end A", "end B", "end opaque", "end C", "end D");
+    // the group after the opaque processor is fused as well, its first stage forwards to it
+    assertThat(((AbstractChainingSpanProcessor) downstreams.get("opaque")).fusedGroup)
+        .isInstanceOf(FusedChainingSpanProcessor.class);
+  }
+
+  @Test
+  public void droppingAndReplacingSpans() {
+    AttributeKey<String> key = AttributeKey.stringKey("replaced-by");
+    SpanProcessor chain =
+        FusedChainingSpanProcessor.createChain(
+            Arrays.asList(
+                stage("A", false, span -> span.getName().equals("dropMe") ? null : span),
+                stage(
+                    "B",
+                    false,
+                    span -> {
+                      MutableSpan mutable = MutableSpan.makeMutable(span);
+                      mutable.setAttribute(key, "B");
+                      return mutable;
+                    }),
+                stage(
+                    "C",
+                    false,
+                    span -> {
+                      assertThat(span.getAttribute(key)).isEqualTo("B");
+                      return span;
+                    })),
+            exportProcessor);
+
+    try (OpenTelemetrySdk sdk = sdkWith(chain)) {
+      Tracer tracer = sdk.getTracer("test");
+      tracer.spanBuilder("dropMe").startSpan().end();
+      tracer.spanBuilder("sendMe").startSpan().end();
+      assertThat(spans.getFinishedSpanItems())
+          .hasSize(1)
+          .first()
+          .satisfies(span -> assertThat(span).hasName("sendMe").hasAttribute(key, "B"));
+    }
+    assertThat(invocations).startsWith("end A", "end A", "end B", "end C");
+  }
+
+  @Test
+  public void failingStageDoesNotBreakTheChain() {
+    SpanProcessor chain =
+        FusedChainingSpanProcessor.createChain(
+            Arrays.asList(
+                stage(
+                    "A",
+                    false,
+                    span -> {
+                      throw new IllegalStateException("A failed");
+                    }),
+                stage("B", false, UnaryOperator.identity())),
+            exportProcessor);
+
+    try (OpenTelemetrySdk sdk = sdkWith(chain)) {
+      ReadableSpan span =
+          (ReadableSpan) sdk.getTracer("test").spanBuilder("span").setNoParent().startSpan();
+      assertThatThrownBy(() -> chain.onEnd(span)).hasMessage("A failed");
+      assertThat(spans.getFinishedSpanItems()).hasSize(1);
+    }
+    assertThat(invocations).startsWith("end A", "end B");
+  }
+
+  private Function<SpanProcessor, SpanProcessor> stage(
+      String name, boolean requiresStart, Function<ReadableSpan, ReadableSpan> onEnd) {
+    return next -> {
+      downstreams.put(name, next);
+      return new AbstractSimpleChainingSpanProcessor(next) {
+        @Override
+        protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {
+          invocations.add("start " + name);
+        }
+
+        @Override
+        protected boolean requiresStart() {
+          return requiresStart;
+        }
+
+        @Override
+        protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+          invocations.add("end " + name);
+          return onEnd.apply(readableSpan);
+        }
+
+        @Override
+        protected boolean requiresEnd() {
+          return true;
+        }
+
+        @Override
+        protected CompletableResultCode doShutdown() {
+          invocations.add("shutdown " + name);
+          return CompletableResultCode.ofSuccess();
+        }
+      };
+    };
+  }
+
+  private static OpenTelemetrySdk sdkWith(SpanProcessor processor) {
+    return OpenTelemetrySdk.builder()
+        .setTracerProvider(SdkTracerProvider.builder().addSpanProcessor(processor).build())
+        .build();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.equalTo;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LocalRootSummaryProcessorTest {
+
+  // a start timestamp of zero would be replaced with the current time
+  private static final long BASE_MILLIS = 1000;
+
+  private InMemorySpanExporter spans;
+  private SdkTracerProvider tracerProvider;
+  private Tracer tracer;
+
+  @BeforeEach
+  public void setup() {
+    spans = InMemorySpanExporter.create();
+    MutableCompositeSpanProcessor terminal = new MutableCompositeSpanProcessor();
+    terminal.addDelegate(SimpleSpanProcessor.create(spans));
+    tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(new LocalRootSummaryProcessor(terminal))
+            .build();
+    tracer = tracerProvider.get("test");
+  }
+
+  @AfterEach
+  public void cleanup() {
+    tracerProvider.close();
+  }
+
+  @Test
+  public void childrenAggregatedIntoLocalRoot() {
+    Span root = startSpan("root", SpanKind.SERVER, null, 0);
+    Span internal = startSpan("internal", SpanKind.INTERNAL, root, 10);
+    Span nested = startSpan("nested-client", SpanKind.CLIENT, internal, 20);
+    nested.setStatus(StatusCode.ERROR);
+    end(nested, 50);
+    end(internal, 60);
+    Span direct = startSpan("direct-client", SpanKind.CLIENT, root, 70);
+    end(direct, 80);
+    end(root, 100);
+
+    assertThat(spans.getFinishedSpanItems()).hasSize(4);
+    assertThat(exported("root"))
+        .hasAttributesSatisfying(
+            equalTo(ElasticAttributes.LOCAL_ROOT_SPAN_COUNT, 3),
+            equalTo(AttributeKey.longKey("elastic.local_root.span_count_by_kind.client"), 2),
+            equalTo(AttributeKey.longKey("elastic.local_root.span_count_by_kind.internal"), 1),
+            equalTo(ElasticAttributes.LOCAL_ROOT_ERROR_COUNT, 1),
+            equalTo(
+                ElasticAttributes.LOCAL_ROOT_CHILDREN_DURATION,
+                TimeUnit.MILLISECONDS.toNanos(30 + 50 + 10)),
+            // only direct children (internal: 50ms, direct-client: 10ms) reduce the self time
+            equalTo(ElasticAttributes.LOCAL_ROOT_SELF_TIME, TimeUnit.MILLISECONDS.toNanos(40)),
+            equalTo(ElasticAttributes.LOCAL_ROOT_SLOWEST_CHILD_NAME, "internal"),
+            equalTo(
+                ElasticAttributes.LOCAL_ROOT_SLOWEST_CHILD_DURATION,
+                TimeUnit.MILLISECONDS.toNanos(50)));
+    assertThat(
+            exported("root")
+                .getAttributes()
+                .get(AttributeKey.longKey("elastic.local_root.span_count_by_kind.server")))
+        .isNull();
+    assertThat(exported("internal").getAttributes().get(ElasticAttributes.LOCAL_ROOT_SPAN_COUNT))
+        .isNull();
+  }
+
+  @Test
+  public void rootWithoutChildren() {
+    end(startSpan("root", SpanKind.SERVER, null, 0), 10);
+
+    assertThat(exported("root"))
+        .hasAttributesSatisfyingExactly(equalTo(ElasticAttributes.LOCAL_ROOT_SPAN_COUNT, 0));
+  }
+
+  @Test
+  public void childrenEndingAfterRootIgnored() {
+    Span root = startSpan("root", SpanKind.SERVER, null, 0);
+    Span child = startSpan("child", SpanKind.INTERNAL, root, 10);
+    end(root, 20);
+    end(child, 30);
+
+    assertThat(exported("root"))
+        .hasAttributesSatisfying(equalTo(ElasticAttributes.LOCAL_ROOT_SPAN_COUNT, 0));
+    assertThat(exported("child").getAttributes().get(ElasticAttributes.LOCAL_ROOT_SPAN_COUNT))
+        .isNull();
+  }
+
+  private Span startSpan(String name, SpanKind kind, Span parent, long startMillis) {
+    return tracer
+        .spanBuilder(name)
+        .setSpanKind(kind)
+        .setParent(parent == null ? Context.root() : Context.root().with(parent))
+        .setStartTimestamp(BASE_MILLIS + startMillis, TimeUnit.MILLISECONDS)
+        .startSpan();
+  }
+
+  private static void end(Span span, long endMillis) {
+    span.end(BASE_MILLIS + endMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private SpanData exported(String name) {
+    return spans.getFinishedSpanItems().stream()
+        .filter(span -> span.getName().equals(name))
+        .findFirst()
+        .get();
+  }
+}
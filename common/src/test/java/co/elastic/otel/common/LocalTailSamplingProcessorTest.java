@@ -0,0 +1,277 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LocalTailSamplingProcessorTest {
+
+  private InMemorySpanExporter spans;
+  private SdkTracerProvider tracerProvider;
+  private LocalTailSamplingProcessor processor;
+
+  @BeforeEach
+  public void setup() {
+    spans = InMemorySpanExporter.create();
+  }
+
+  @AfterEach
+  public void cleanup() {
+    if (tracerProvider != null) {
+      tracerProvider.close();
+    }
+  }
+
+  @Test
+  public void childrenBufferedUntilLocalRootEnds() {
+    init(builder -> builder.fallbackProbability(1.0));
+
+    Span root = startSpan("root", null);
+    startSpan("child", root).end();
+    assertThat(spans.getFinishedSpanItems()).isEmpty();
+    assertThat(processor.getBufferedSpans()).isEqualTo(1);
+
+    root.end();
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("child", "root");
+    assertThat(processor.getBufferedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void decidedTracesNoLongerQueued() {
+    init(builder -> builder.fallbackProbability(0.5));
+
+    for (int i = 0; i < 100; i++) {
+      Span root = startSpan("root", null);
+      startSpan("first", root).end();
+      startSpan("second", root).end();
+      assertThat(processor.getBufferingTraces()).isEqualTo(1);
+      root.end();
+      assertThat(processor.getBufferingTraces()).isEqualTo(0);
+    }
+    assertThat(processor.getBufferedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void boringTraceDropped() {
+    init(builder -> builder.fallbackProbability(0.0));
+
+    Span root = startSpan("root", null);
+    startSpan("child", root).end();
+    root.end();
+
+    assertThat(spans.getFinishedSpanItems()).isEmpty();
+    assertThat(processor.getDroppedSpans()).isEqualTo(2);
+    assertThat(processor.getBufferedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void traceWithErrorKept() {
+    init(builder -> builder.fallbackProbability(0.0));
+
+    Span root = startSpan("root", null);
+    Span child = startSpan("child", root);
+    child.setStatus(StatusCode.ERROR);
+    child.end();
+    root.end();
+
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("child", "root");
+  }
+
+  @Test
+  public void slowTraceKept() {
+    init(builder -> builder.fallbackProbability(0.0).latencyThreshold(Duration.ofMillis(100)));
+
+    Span fast = startSpan("fast", null, 1000);
+    fast.end(1050, TimeUnit.MILLISECONDS);
+    Span slow = startSpan("slow", null, 1000);
+    slow.end(1100, TimeUnit.MILLISECONDS);
+
+    assertThat(spans.getFinishedSpanItems()).extracting(SpanData::getName).containsExactly("slow");
+  }
+
+  @Test
+  public void keptTracesRateLimited() {
+    init(builder -> builder.fallbackProbability(1.0).maxTracesPerSecond(2));
+
+    for (int i = 0; i < 5; i++) {
+      Span root = startSpan("root-" + i, null);
+      startSpan("child-" + i, root).end();
+      root.end();
+    }
+
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("child-0", "root-0", "child-1", "root-1");
+    assertThat(processor.getDroppedSpans()).isEqualTo(6);
+  }
+
+  @Test
+  public void overflowingChildrenPassedThrough() {
+    init(builder -> builder.fallbackProbability(0.0).maxBufferedSpans(1));
+
+    Span root = startSpan("root", null);
+    startSpan("buffered", root).end();
+    startSpan("overflow", root).end();
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("overflow");
+
+    root.end();
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("overflow");
+    assertThat(processor.getDroppedSpans()).isEqualTo(2);
+  }
+
+  @Test
+  public void overflowingChildrenDropped() {
+    init(
+        builder ->
+            builder
+                .fallbackProbability(1.0)
+                .maxBufferedSpans(1)
+                .overflowPolicy(LocalTailSamplingProcessor.OverflowPolicy.DROP));
+
+    Span root = startSpan("root", null);
+    startSpan("buffered", root).end();
+    startSpan("overflow", root).end();
+    root.end();
+
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("buffered", "root");
+    assertThat(processor.getDroppedSpans()).isEqualTo(1);
+  }
+
+  @Test
+  public void lateChildrenFollowDecision() {
+    init(builder -> builder.fallbackProbability(0.0).latencyThreshold(Duration.ofMillis(100)));
+
+    Span keptRoot = startSpan("kept-root", null, 1000);
+    Span keptChild = startSpan("kept-child", keptRoot);
+    keptRoot.end(1100, TimeUnit.MILLISECONDS);
+    keptChild.end();
+
+    Span droppedRoot = startSpan("dropped-root", null);
+    Span droppedChild = startSpan("dropped-child", droppedRoot);
+    droppedRoot.end();
+    droppedChild.end();
+
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("kept-root", "kept-child");
+    assertThat(processor.getDroppedSpans()).isEqualTo(2);
+  }
+
+  @Test
+  public void expiredChildrenReleased() throws InterruptedException {
+    init(builder -> builder.fallbackProbability(0.0).maxBufferAge(Duration.ofMillis(50)));
+
+    Span root = startSpan("root", null);
+    startSpan("expiring", root).end();
+    assertThat(processor.getBufferedSpans()).isEqualTo(1);
+
+    Thread.sleep(100);
+    // eviction is triggered by ending spans
+    startSpan("unrelated", null).end();
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("expiring");
+    assertThat(processor.getBufferedSpans()).isEqualTo(0);
+
+    // the local root still decides about the children ending afterwards
+    startSpan("buffered", root).end();
+    assertThat(processor.getBufferedSpans()).isEqualTo(1);
+    root.end();
+    assertThat(spans.getFinishedSpanItems())
+        .extracting(SpanData::getName)
+        .containsExactly("expiring");
+    assertThat(processor.getBufferedSpans()).isEqualTo(0);
+    assertThat(processor.getDroppedSpans()).isEqualTo(3);
+  }
+
+  @Test
+  public void bufferedChildrenPassedOnFlush() {
+    init(builder -> builder.fallbackProbability(0.0));
+
+    Span root = startSpan("root", null);
+    startSpan("child", root).end();
+    assertThat(tracerProvider.forceFlush().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+
+    assertThat(spans.getFinishedSpanItems()).extracting(SpanData::getName).containsExactly("child");
+    assertThat(processor.getBufferedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void bufferedChildrenPassedOnShutdown() {
+    init(builder -> builder.fallbackProbability(0.0));
+
+    Span root = startSpan("root", null);
+    startSpan("child", root).end();
+    // only the part of the shutdown before the exporter is shut down, which clears its spans
+    assertThat(processor.doShutdown().isSuccess()).isTrue();
+
+    assertThat(spans.getFinishedSpanItems()).extracting(SpanData::getName).containsExactly("child");
+    assertThat(processor.getBufferedSpans()).isEqualTo(0);
+  }
+
+  private void init(Consumer<LocalTailSamplingProcessorBuilder> customizer) {
+    MutableCompositeSpanProcessor terminal = new MutableCompositeSpanProcessor();
+    terminal.addDelegate(SimpleSpanProcessor.create(spans));
+    LocalTailSamplingProcessorBuilder builder = LocalTailSamplingProcessor.builder(terminal);
+    customizer.accept(builder);
+    processor = builder.build();
+    tracerProvider = SdkTracerProvider.builder().addSpanProcessor(processor).build();
+  }
+
+  private Span startSpan(String name, Span parent) {
+    return tracerProvider
+        .get("test")
+        .spanBuilder(name)
+        .setParent(parent == null ? Context.root() : Context.root().with(parent))
+        .startSpan();
+  }
+
+  private Span startSpan(String name, Span parent, long startMillis) {
+    return tracerProvider
+        .get("test")
+        .spanBuilder(name)
+        .setParent(parent == null ? Context.root() : Context.root().with(parent))
+        .setStartTimestamp(startMillis, TimeUnit.MILLISECONDS)
+        .startSpan();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.logs.Logger;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.logs.LogRecordProcessor;
+import io.opentelemetry.sdk.logs.ReadWriteLogRecord;
+import io.opentelemetry.sdk.logs.SdkLoggerProvider;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class LogRecordValueTest {
+
+  private static SdkLoggerProvider loggerProvider;
+
+  private static Logger logger;
+
+  private static ReadWriteLogRecord lastEmitted;
+
+  private static ReadWriteLogRecord earlyRecord;
+
+  @BeforeAll
+  static void initSdk() {
+    loggerProvider =
+        SdkLoggerProvider.builder()
+            .addLogRecordProcessor(
+                new LogRecordProcessor() {
+                  @Override
+                  public void onEmit(Context context, ReadWriteLogRecord logRecord) {
+                    lastEmitted = logRecord;
+                  }
+                })
+            .build();
+    logger = loggerProvider.get("test-logger");
+
+    // This record has its storage initialized before the dense LogRecordValues in tests are created
+    earlyRecord = newRecord();
+    LogRecordValue.createSparse().set(earlyRecord, "foo");
+  }
+
+  @AfterAll
+  static void shutdownSdk() {
+    loggerProvider.close();
+  }
+
+  static ReadWriteLogRecord newRecord() {
+    logger.logRecordBuilder().setBody("message").emit();
+    return lastEmitted;
+  }
+
+  public static Stream<Arguments> testArgs() {
+    return Stream.of(
+        Arguments.of(Named.of("Early record, dense", LogRecordValue.createDense()), earlyRecord),
+        Arguments.of(Named.of("Early record, sparse", LogRecordValue.createSparse()), earlyRecord),
+        Arguments.of(Named.of("New record, dense", LogRecordValue.createDense()), newRecord()),
+        Arguments.of(Named.of("New record, sparse", LogRecordValue.createSparse()), newRecord()));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testArgs")
+  public void checkSetAndClear(LogRecordValue<String> value, ReadWriteLogRecord logRecord) {
+    assertThat(value.get(logRecord)).isNull();
+    value.set(logRecord, "initial");
+    assertThat(value.get(logRecord)).isEqualTo("initial");
+    value.set(logRecord, "override");
+    assertThat(value.get(logRecord)).isEqualTo("override");
+    value.set(logRecord, null);
+    assertThat(value.get(logRecord)).isNull();
+
+    assertThat(value.setIfNull(logRecord, "initial")).isTrue();
+    assertThat(value.setIfNull(logRecord, "override")).isFalse();
+    assertThat(value.get(logRecord)).isEqualTo("initial");
+    value.clear(logRecord);
+    assertThat(value.get(logRecord)).isNull();
+  }
+
+  @ParameterizedTest
+  @MethodSource("testArgs")
+  public void checkComputeIfNull(LogRecordValue<String> value, ReadWriteLogRecord logRecord) {
+    Supplier<String> nullInitializer = () -> null;
+    assertThat(value.computeIfNull(logRecord, nullInitializer)).isNull();
+    assertThat(value.computeIfNull(logRecord, () -> "init1")).isEqualTo("init1");
+    assertThat(value.computeIfNull(logRecord, () -> "init2")).isEqualTo("init1");
+    assertThat(value.get(logRecord)).isEqualTo("init1");
+  }
+
+  @Test
+  public void indicesIndependentOfSpanValues() {
+    int spanStorageSize = new SpanValueStorage().length();
+    int logStorageSize = new LogRecordValueStorage().length();
+
+    SpanValue.createDense();
+    assertThat(new SpanValueStorage().length()).isEqualTo(spanStorageSize + 1);
+    assertThat(new LogRecordValueStorage().length()).isEqualTo(logStorageSize);
+
+    LogRecordValue.createDense();
+    assertThat(new SpanValueStorage().length()).isEqualTo(spanStorageSize + 1);
+    assertThat(new LogRecordValueStorage().length()).isEqualTo(logStorageSize + 1);
+  }
+}
@@ -19,17 +19,30 @@
 package co.elastic.otel.common;
 
 import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.equalTo;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.trace.ReadWriteSpan;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
 import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.EventData;
 import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
@@ -141,6 +154,172 @@ public class MutableSpanTest {
     assertThat(mutatedSpanData.getAttributes()).isSameAs(original.toSpanData().getAttributes());
   }
 
+  @Test
+  public void overlayAttributesBehaveLikeCopiedAttributes() {
+    AttributeKey<String> keep = AttributeKey.stringKey("keep-me");
+    AttributeKey<Long> update = AttributeKey.longKey("update-me");
+    AttributeKey<String> remove = AttributeKey.stringKey("remove-me");
+    AttributeKey<Boolean> add = AttributeKey.booleanKey("add-me");
+    AttributeKey<String> removeMissing = AttributeKey.stringKey("not-there");
+
+    ReadableSpan original =
+        createSpan(
+            "foo",
+            builder -> {
+              builder.setAttribute(keep, "keep-original");
+              builder.setAttribute(update, 1L);
+              builder.setAttribute(remove, "remove-original");
+            });
+
+    MutableSpan mutable = MutableSpan.makeMutable(original);
+    mutable.setAttribute(update, 2L);
+    mutable.removeAttribute(remove);
+    mutable.setAttribute(add, true);
+    mutable.removeAttribute(removeMissing);
+    Attributes overlay = mutable.toSpanData().getAttributes();
+
+    MutableSpan sameMutations = MutableSpan.makeMutable(original);
+    sameMutations.setAttribute(add, true);
+    sameMutations.removeAttribute(remove);
+    sameMutations.setAttribute(update, 2L);
+    Attributes sameOverlay = sameMutations.toSpanData().getAttributes();
+
+    Attributes expected =
+        Attributes.builder().put(keep, "keep-original").put(update, 2L).put(add, true).build();
+
+    assertThat(overlay.size()).isEqualTo(3);
+    assertThat(overlay.isEmpty()).isFalse();
+    assertThat(overlay.get(remove)).isNull();
+    assertThat(overlay.get(removeMissing)).isNull();
+    assertThat(overlay.asMap()).isEqualTo(expected.asMap());
+    assertThat(expected).isEqualTo(overlay.toBuilder().build());
+    assertThat(overlay.hashCode()).isEqualTo(expected.asMap().hashCode());
+
+    // only equal to other overlays, as the SDK attributes are only equal to their own kind
+    assertThat(overlay).isEqualTo(sameOverlay).hasSameHashCodeAs(sameOverlay);
+    assertThat(sameOverlay).isEqualTo(overlay);
+    assertThat(overlay).isNotEqualTo(expected);
+    assertThat(expected).isNotEqualTo(overlay);
+
+    Map<AttributeKey<?>, Object> iterated = new HashMap<>();
+    overlay.forEach(
+        (key, value) -> assertThat(iterated.put(key, value)).describedAs("duplicate").isNull());
+    assertThat(iterated).isEqualTo(expected.asMap());
+  }
+
+  @Test
+  public void overlayAttributesCanBecomeEmpty() {
+    AttributeKey<String> key = AttributeKey.stringKey("only-key");
+    ReadableSpan original = createSpan("foo", builder -> builder.setAttribute(key, "value"));
+
+    MutableSpan mutable = MutableSpan.makeMutable(original);
+    mutable.removeAttribute(key);
+    Attributes overlay = mutable.toSpanData().getAttributes();
+
+    assertThat(overlay.size()).isEqualTo(0);
+    assertThat(overlay.isEmpty()).isTrue();
+    assertThat(overlay.asMap()).isEmpty();
+    assertThat(overlay.toBuilder().build()).isEqualTo(Attributes.empty());
+  }
+
+  @Test
+  public void mutateEventsLinksStatusAndKind() {
+    SpanContext linked =
+        SpanContext.create(
+            "0123456789abcdef0123456789abcdef",
+            "0123456789abcdef",
+            TraceFlags.getSampled(),
+            TraceState.getDefault());
+    ReadableSpan original =
+        createSpan(
+            "foo",
+            builder -> {
+              builder.setSpanKind(SpanKind.INTERNAL);
+              builder.addLink(linked);
+              builder.setAttribute("key", "value");
+            },
+            span -> {
+              span.addEvent("first");
+              span.addEvent("second");
+            });
+
+    MutableSpan mutable = MutableSpan.makeMutable(original);
+    assertThat(mutable.getEvents()).hasSize(2);
+    assertThat(mutable.getLinks()).hasSize(1);
+
+    mutable.setEvents(mutable.getEvents().subList(1, 2));
+    mutable.setLinks(Collections.emptyList());
+    mutable.setStatus(StatusData.create(StatusCode.ERROR, "failed"));
+    mutable.setKind(SpanKind.SERVER);
+    mutable.setAttribute(AttributeKey.stringKey("added"), "added");
+
+    assertThat(mutable.getKind()).isEqualTo(SpanKind.SERVER);
+    assertThat(mutable.getStatus().getStatusCode()).isEqualTo(StatusCode.ERROR);
+
+    SpanData data = mutable.toSpanData();
+    assertThat(data)
+        .hasKind(SpanKind.SERVER)
+        .hasStatus(StatusData.create(StatusCode.ERROR, "failed"))
+        .hasTotalRecordedEvents(1)
+        .hasTotalRecordedLinks(0)
+        .hasTotalAttributeCount(2);
+    assertThat(data.getEvents()).extracting(EventData::getName).containsExactly("second");
+    assertThat(data.getLinks()).isEmpty();
+    // the original span is not affected
+    assertThat(original.toSpanData())
+        .hasKind(SpanKind.INTERNAL)
+        .hasTotalRecordedEvents(2)
+        .hasTotalRecordedLinks(1);
+  }
+
+  @Test
+  public void explicitTotalCounts() {
+    ReadableSpan original = createSpan("foo", builder -> {}, span -> span.addEvent("event"));
+
+    MutableSpan mutable = MutableSpan.makeMutable(original);
+    mutable.setEvents(Collections.emptyList());
+    mutable.setTotalRecordedEvents(1);
+    mutable.setTotalRecordedLinks(5);
+    mutable.setTotalAttributeCount(7);
+
+    assertThat(mutable.toSpanData())
+        .hasTotalRecordedEvents(1)
+        .hasTotalRecordedLinks(5)
+        .hasTotalAttributeCount(7);
+    assertThatThrownBy(() -> MutableSpan.makeMutable(original).setTotalRecordedEvents(-1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void mutationsOfFrozenSpansAreMerged() {
+    AttributeKey<String> first = AttributeKey.stringKey("first");
+    AttributeKey<String> second = AttributeKey.stringKey("second");
+    ReadableSpan original = createSpan("foo", builder -> {});
+
+    MutableSpan mutable1 = MutableSpan.makeMutable(original);
+    mutable1.setName("renamed");
+    mutable1.setAttribute(first, "first");
+    SpanData firstData = mutable1.toSpanData();
+
+    MutableSpan mutable2 = MutableSpan.makeMutable(mutable1);
+    mutable2.setAttribute(second, "second");
+    mutable2.setStatus(StatusData.error());
+    SpanData secondData = mutable2.toSpanData();
+
+    assertThat(secondData)
+        .hasName("renamed")
+        .hasStatus(StatusData.error())
+        .hasAttributesSatisfyingExactly(equalTo(first, "first"), equalTo(second, "second"));
+    assertThat(((MutableSpanData) secondData).original)
+        .isSameAs(((MutableSpanData) firstData).original)
+        .isNotInstanceOf(MutableSpanData.class);
+    // the first snapshot is not affected by the later mutations
+    assertThat(firstData)
+        .hasName("renamed")
+        .hasStatus(StatusData.unset())
+        .hasAttributesSatisfyingExactly(equalTo(first, "first"));
+  }
+
   @Test
   public void noDoubleWrapping() {
     ReadableSpan original = createSpan("foo", builder -> {});
@@ -153,6 +332,11 @@ public class MutableSpanTest {
   }
 
   private ReadableSpan createSpan(String name, Consumer<SpanBuilder> spanCustomizer) {
+    return createSpan(name, spanCustomizer, span -> {});
+  }
+
+  private ReadableSpan createSpan(
+      String name, Consumer<SpanBuilder> spanCustomizer, Consumer<Span> startedSpanCustomizer) {
 
     AtomicReference<ReadableSpan> resultSpan = new AtomicReference<>();
     SpanProcessor collecting =
@@ -183,7 +367,9 @@ public class MutableSpanTest {
 
       SpanBuilder builder = sdk.getTracer("my-tracer").spanBuilder(name);
       spanCustomizer.accept(builder);
-      builder.startSpan().end();
+      Span span = builder.startSpan();
+      startedSpanCustomizer.accept(span);
+      span.end();
       return resultSpan.get();
     }
   }
@@ -0,0 +1,229 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class PrimitiveSpanValueTest {
+
+  private static OpenTelemetrySdk sdk;
+
+  private static Tracer tracer;
+
+  private static Span earlySpan;
+
+  @BeforeAll
+  static void initSdk() {
+    sdk =
+        OpenTelemetrySdk.builder()
+            .setTracerProvider(
+                SdkTracerProvider.builder()
+                    .addSpanProcessor(SimpleSpanProcessor.create(InMemorySpanExporter.create()))
+                    .build())
+            .build();
+    tracer = sdk.getTracer("test-tracer");
+
+    // Storage is initialized before the dense values in the tests are created,
+    // so those have to fall back to the sparse storage
+    earlySpan = tracer.spanBuilder("early span").startSpan();
+    SpanValue.createSparse().set(earlySpan, "foo");
+  }
+
+  @AfterAll
+  static void shutdownSdk() {
+    sdk.close();
+  }
+
+  static Span newSpan() {
+    Span span = tracer.spanBuilder("new span").startSpan();
+    span.end();
+    return span;
+  }
+
+  public static Stream<Arguments> longTestArgs() {
+    return Stream.of(
+        Arguments.of(
+            Named.of("Early Span, dense value", (Supplier<?>) () -> earlySpan),
+            (Supplier<LongSpanValue>) LongSpanValue::createDense),
+        Arguments.of(
+            Named.of("Early Span, sparse value", (Supplier<?>) () -> earlySpan),
+            (Supplier<LongSpanValue>) LongSpanValue::createSparse),
+        Arguments.of(
+            Named.of("New Span, dense value", (Supplier<?>) PrimitiveSpanValueTest::newSpan),
+            (Supplier<LongSpanValue>) LongSpanValue::createDense),
+        Arguments.of(
+            Named.of("New Span, sparse value", (Supplier<?>) PrimitiveSpanValueTest::newSpan),
+            (Supplier<LongSpanValue>) LongSpanValue::createSparse),
+        Arguments.of(
+            Named.of(
+                "MutableSpan, dense value",
+                (Supplier<?>) () -> MutableSpan.makeMutable((ReadableSpan) newSpan())),
+            (Supplier<LongSpanValue>) LongSpanValue::createDense));
+  }
+
+  @ParameterizedTest
+  @MethodSource("longTestArgs")
+  public void checkLongOperations(Supplier<?> spanSupplier, Supplier<LongSpanValue> valSupplier) {
+    ReadableSpan span = (ReadableSpan) spanSupplier.get();
+    LongSpanValue value = valSupplier.get();
+
+    assertThat(value.get(span)).isEqualTo(0L);
+    assertThat(value.compareAndSet(span, 1L, 2L)).isFalse();
+    assertThat(value.compareAndSet(span, 0L, 2L)).isTrue();
+    assertThat(value.get(span)).isEqualTo(2L);
+    assertThat(value.addAndGet(span, 40L)).isEqualTo(42L);
+    assertThat(value.get(span)).isEqualTo(42L);
+    value.set(span, Long.MIN_VALUE);
+    assertThat(value.get(span)).isEqualTo(Long.MIN_VALUE);
+    value.clear(span);
+    assertThat(value.get(span)).isEqualTo(0L);
+    assertThat(value.addAndGet(span, -1L)).isEqualTo(-1L);
+  }
+
+  @Test
+  public void checkIntOperations() {
+    Span span = newSpan();
+    IntSpanValue value = IntSpanValue.createDense();
+
+    assertThat(value.get(span)).isEqualTo(0);
+    assertThat(value.addAndGet(span, Integer.MAX_VALUE)).isEqualTo(Integer.MAX_VALUE);
+    // overflow must behave like for regular ints
+    assertThat(value.addAndGet(span, 1)).isEqualTo(Integer.MIN_VALUE);
+    assertThat(value.get(span)).isEqualTo(Integer.MIN_VALUE);
+    assertThat(value.compareAndSet(span, Integer.MIN_VALUE, 7)).isTrue();
+    assertThat(value.compareAndSet(span, Integer.MIN_VALUE, 8)).isFalse();
+    assertThat(value.get(span)).isEqualTo(7);
+    value.set(span, -3);
+    assertThat(value.get(span)).isEqualTo(-3);
+    value.clear(span);
+    assertThat(value.get(span)).isEqualTo(0);
+  }
+
+  @Test
+  public void checkDoubleOperations() {
+    Span span = newSpan();
+    DoubleSpanValue value = DoubleSpanValue.createSparse();
+
+    assertThat(value.get(span)).isEqualTo(0.0);
+    assertThat(value.addAndGet(span, 1.5)).isEqualTo(1.5);
+    assertThat(value.addAndGet(span, 0.25)).isEqualTo(1.75);
+    assertThat(value.compareAndSet(span, 1.75, -2.0)).isTrue();
+    assertThat(value.compareAndSet(span, 1.75, 3.0)).isFalse();
+    assertThat(value.get(span)).isEqualTo(-2.0);
+    value.set(span, Double.NaN);
+    assertThat(value.get(span)).isNaN();
+    // compared like Double.equals: any NaN matches, but the sign of zero counts
+    assertThat(value.compareAndSet(span, Double.longBitsToDouble(0x7ff0000000000001L), 0.0))
+        .isTrue();
+    assertThat(value.compareAndSet(span, -0.0, 1.0)).isFalse();
+    assertThat(value.get(span)).isEqualTo(0.0);
+    value.clear(span);
+    assertThat(value.get(span)).isEqualTo(0.0);
+  }
+
+  @Test
+  public void checkBooleanOperations() {
+    Span span = newSpan();
+    BooleanSpanValue value = BooleanSpanValue.createDense();
+
+    assertThat(value.get(span)).isFalse();
+    assertThat(value.compareAndSet(span, true, false)).isFalse();
+    assertThat(value.compareAndSet(span, false, true)).isTrue();
+    assertThat(value.compareAndSet(span, false, true)).isFalse();
+    assertThat(value.get(span)).isTrue();
+    value.set(span, false);
+    assertThat(value.get(span)).isFalse();
+    value.set(span, true);
+    value.clear(span);
+    assertThat(value.get(span)).isFalse();
+  }
+
+  @Test
+  public void checkWrittenOnSpanAndMutableSpanAreShared() {
+    ReadableSpan span = (ReadableSpan) newSpan();
+    MutableSpan mutable = MutableSpan.makeMutable(span);
+    LongSpanValue value = LongSpanValue.createDense();
+
+    value.addAndGet(span, 1L);
+    value.addAndGet(mutable, 2L);
+    assertThat(value.get(span)).isEqualTo(3L);
+    assertThat(value.get(mutable)).isEqualTo(3L);
+  }
+
+  @ParameterizedTest
+  @MethodSource("longTestArgs")
+  public void checkConcurrentAdds(Supplier<?> spanSupplier, Supplier<LongSpanValue> valSupplier)
+      throws Exception {
+    ReadableSpan span = (ReadableSpan) spanSupplier.get();
+    LongSpanValue value = valSupplier.get();
+    IntSpanValue intValue = IntSpanValue.createSparse();
+    DoubleSpanValue doubleValue = DoubleSpanValue.createDense();
+
+    int numThreads = 8;
+    int incrementsPerThread = 10_000;
+    CountDownLatch startLatch = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  startLatch.await();
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+                for (int j = 0; j < incrementsPerThread; j++) {
+                  value.addAndGet(span, 1L);
+                  intValue.addAndGet(span, 1);
+                  doubleValue.addAndGet(span, 1.0);
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    startLatch.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(value.get(span)).isEqualTo(numThreads * incrementsPerThread);
+    assertThat(intValue.get(span)).isEqualTo(numThreads * incrementsPerThread);
+    assertThat(doubleValue.get(span)).isEqualTo(numThreads * incrementsPerThread);
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SpanDataSnapshotsTest {
+
+  private SdkTracerProvider tracerProvider;
+
+  private final List<ReadableSpan> endedSpans = new ArrayList<>();
+
+  @BeforeEach
+  void init() {
+    SpanDataSnapshots.setEnabled(true);
+    tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(
+                new SpanProcessor() {
+                  @Override
+                  public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+                  @Override
+                  public boolean isStartRequired() {
+                    return false;
+                  }
+
+                  @Override
+                  public void onEnd(ReadableSpan span) {
+                    endedSpans.add(span);
+                  }
+
+                  @Override
+                  public boolean isEndRequired() {
+                    return true;
+                  }
+                })
+            .build();
+  }
+
+  @AfterEach
+  void cleanup() {
+    SpanDataSnapshots.setEnabled(false);
+    tracerProvider.close();
+  }
+
+  @Test
+  public void endedSpanConvertedOnce() {
+    ReadableSpan span = endedSpan();
+
+    SpanData first = SpanDataSnapshots.get(span);
+    assertThat(SpanDataSnapshots.get(span)).isSameAs(first);
+    // MutableSpans without mutations share the snapshot as well
+    assertThat(MutableSpan.makeMutable(span).toSpanData()).isSameAs(first);
+  }
+
+  @Test
+  public void runningSpanNotCached() {
+    ReadWriteSpan span = (ReadWriteSpan) tracerProvider.get("test").spanBuilder("span").startSpan();
+
+    SpanData running = SpanDataSnapshots.get(span);
+    span.setAttribute("late", "value");
+    span.end();
+
+    assertThat(running.hasEnded()).isFalse();
+    SpanData ended = SpanDataSnapshots.get(span);
+    assertThat(ended.hasEnded()).isTrue();
+    assertThat(ended).hasAttribute(AttributeKey.stringKey("late"), "value");
+  }
+
+  @Test
+  public void mutationsNotVisibleInSharedSnapshot() {
+    AttributeKey<String> key = AttributeKey.stringKey("mutated");
+    ReadableSpan span = endedSpan();
+    SpanData original = SpanDataSnapshots.get(span);
+
+    MutableSpan mutable = MutableSpan.makeMutable(span);
+    mutable.setAttribute(key, "value");
+
+    SpanData mutated = SpanDataSnapshots.get(mutable);
+    assertThat(mutated).isNotSameAs(original).hasAttribute(key, "value");
+    assertThat(SpanDataSnapshots.get(mutable)).isSameAs(mutated);
+    assertThat(SpanDataSnapshots.get(span)).isSameAs(original);
+    assertThat(original.getAttributes().get(key)).isNull();
+  }
+
+  @Test
+  public void snapshotReleasedAfterTerminalProcessor() {
+    ReadableSpan span = endedSpan();
+    SpanData first = SpanDataSnapshots.get(span);
+
+    new MutableCompositeSpanProcessor().onEnd(span);
+
+    assertThat(SpanDataSnapshots.get(span)).isNotSameAs(first);
+  }
+
+  @Test
+  public void notCachedWhenDisabled() {
+    SpanDataSnapshots.setEnabled(false);
+    ReadableSpan span = endedSpan();
+
+    assertThat(SpanDataSnapshots.get(span)).isNotSameAs(SpanDataSnapshots.get(span));
+  }
+
+  @Test
+  public void foreignSpanNotCached() {
+    ReadableSpan span = new ForeignSpan(endedSpan());
+
+    SpanData first = SpanDataSnapshots.get(span);
+    assertThat(SpanDataSnapshots.get(span)).isNotSameAs(first);
+    assertThat(MutableSpan.makeMutable(span).toSpanData()).hasName("span");
+  }
+
+  private ReadableSpan endedSpan() {
+    tracerProvider.get("test").spanBuilder("span").startSpan().end();
+    return endedSpans.get(endedSpans.size() - 1);
+  }
+
+  /** An ended span not implemented by the SDK. */
+  private static class ForeignSpan implements ReadableSpan {
+
+    private final ReadableSpan delegate;
+
+    ForeignSpan(ReadableSpan delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public SpanContext getSpanContext() {
+      return delegate.getSpanContext();
+    }
+
+    @Override
+    public SpanContext getParentSpanContext() {
+      return delegate.getParentSpanContext();
+    }
+
+    @Override
+    public String getName() {
+      return delegate.getName();
+    }
+
+    @Override
+    public SpanData toSpanData() {
+      return delegate.toSpanData();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public io.opentelemetry.sdk.common.InstrumentationLibraryInfo getInstrumentationLibraryInfo() {
+      return delegate.getInstrumentationLibraryInfo();
+    }
+
+    @Override
+    public boolean hasEnded() {
+      return delegate.hasEnded();
+    }
+
+    @Override
+    public long getLatencyNanos() {
+      return delegate.getLatencyNanos();
+    }
+
+    @Override
+    public SpanKind getKind() {
+      return delegate.getKind();
+    }
+
+    @Nullable
+    @Override
+    public <T> T getAttribute(AttributeKey<T> key) {
+      return delegate.getAttribute(key);
+    }
+  }
+}
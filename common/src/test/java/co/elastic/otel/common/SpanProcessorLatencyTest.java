@@ -0,0 +1,219 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SpanProcessorLatencyTest {
+
+  private InMemoryMetricReader metricReader;
+
+  private SdkMeterProvider meterProvider;
+
+  @BeforeEach
+  void init() {
+    metricReader = InMemoryMetricReader.create();
+    meterProvider = SdkMeterProvider.builder().registerMetricReader(metricReader).build();
+    SpanProcessorLatency.registerMetrics(meterProvider.get("test"));
+  }
+
+  @AfterEach
+  void cleanup() {
+    SpanProcessorLatency.setSamplingInterval(0);
+    meterProvider.close();
+  }
+
+  @Test
+  void latencyRecordedPerProcessorAndPhase() {
+    SpanProcessorLatency.setSamplingInterval(1);
+    endSpans(new SlowProcessor(SpanProcessor.composite()), 3);
+
+    Collection<MetricData> metrics = metricReader.collectAllMetrics();
+    Attributes endAttributes = processorAttributes(SlowProcessor.class, "end");
+    assertThat(samples(metrics, endAttributes)).containsExactly(3L);
+    assertThat(samples(metrics, processorAttributes(SlowProcessor.class, "start")))
+        .containsExactly(3L);
+
+    List<HistogramPointData> endLatencies = latencies(metrics, endAttributes);
+    assertThat(endLatencies).hasSize(1);
+    // the processor sleeps for at least two milliseconds
+    assertThat(endLatencies.get(0).getMin()).isGreaterThan(0.002);
+    assertThat(endLatencies.get(0).getSum()).isGreaterThan(0.006);
+
+    // the histogram is cumulative
+    endSpans(new SlowProcessor(SpanProcessor.composite()), 1);
+    metrics = metricReader.collectAllMetrics();
+    assertThat(samples(metrics, endAttributes)).containsExactly(4L);
+  }
+
+  @Test
+  void nothingRecordedWhenDisabled() {
+    endSpans(new DisabledProcessor(SpanProcessor.composite()), 3);
+
+    Collection<MetricData> metrics = metricReader.collectAllMetrics();
+    assertThat(samples(metrics, processorAttributes(DisabledProcessor.class, "end"))).isEmpty();
+  }
+
+  @Test
+  void fusedStagesRecordedIndividually() {
+    SpanProcessorLatency.setSamplingInterval(1);
+    SpanProcessor chain =
+        FusedChainingSpanProcessor.createChain(
+            Arrays.asList(FirstStage::new, SecondStage::new), SpanProcessor.composite());
+    assertThat(chain).isInstanceOf(FusedChainingSpanProcessor.class);
+    endSpans(chain, 2);
+
+    Collection<MetricData> metrics = metricReader.collectAllMetrics();
+    assertThat(samples(metrics, processorAttributes(FirstStage.class, "end"))).containsExactly(2L);
+    assertThat(samples(metrics, processorAttributes(SecondStage.class, "end"))).containsExactly(2L);
+  }
+
+  private static void endSpans(SpanProcessor processor, int count) {
+    try (SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder().addSpanProcessor(processor).build()) {
+      for (int i = 0; i < count; i++) {
+        tracerProvider.get("test").spanBuilder("span").startSpan().end();
+      }
+    }
+  }
+
+  private static Attributes processorAttributes(Class<?> processorClass, String phase) {
+    return Attributes.of(
+        SpanProcessorLatency.PROCESSOR,
+        processorClass.getName(),
+        SpanProcessorLatency.PHASE,
+        phase);
+  }
+
+  private static List<Long> samples(Collection<MetricData> metrics, Attributes attributes) {
+    return latencies(metrics, attributes).stream()
+        .map(HistogramPointData::getCount)
+        .collect(Collectors.toList());
+  }
+
+  private static List<HistogramPointData> latencies(
+      Collection<MetricData> metrics, Attributes attributes) {
+    return points(metrics, "elastic.otel.span_processor.latency", attributes).stream()
+        .map(point -> (HistogramPointData) point)
+        .collect(Collectors.toList());
+  }
+
+  private static List<PointData> points(
+      Collection<MetricData> metrics, String name, Attributes attributes) {
+    return metrics.stream()
+        .filter(metric -> metric.getName().equals(name))
+        .flatMap(metric -> metric.getData().getPoints().stream())
+        .filter(
+            point ->
+                point
+                        .getAttributes()
+                        .get(SpanProcessorLatency.PROCESSOR)
+                        .equals(attributes.get(SpanProcessorLatency.PROCESSOR))
+                    && point
+                        .getAttributes()
+                        .get(SpanProcessorLatency.PHASE)
+                        .equals(attributes.get(SpanProcessorLatency.PHASE)))
+        .collect(Collectors.toList());
+  }
+
+  private static class SlowProcessor extends AbstractSimpleChainingSpanProcessor {
+
+    SlowProcessor(SpanProcessor next) {
+      super(next);
+    }
+
+    @Override
+    protected void doOnStart(Context context, ReadWriteSpan readWriteSpan) {}
+
+    @Override
+    protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+      long deadline = System.nanoTime() + 2_000_000;
+      while (System.nanoTime() < deadline) {
+        LockSupport.parkNanos(deadline - System.nanoTime());
+      }
+      return readableSpan;
+    }
+
+    @Override
+    protected boolean requiresStart() {
+      return true;
+    }
+
+    @Override
+    protected boolean requiresEnd() {
+      return true;
+    }
+  }
+
+  // the recorded latencies are global, therefore every test uses its own processor classes
+  private static class EndOnlyProcessor extends AbstractSimpleChainingSpanProcessor {
+
+    EndOnlyProcessor(SpanProcessor next) {
+      super(next);
+    }
+
+    @Override
+    protected boolean requiresStart() {
+      return false;
+    }
+
+    @Override
+    protected boolean requiresEnd() {
+      return true;
+    }
+  }
+
+  private static class DisabledProcessor extends EndOnlyProcessor {
+    DisabledProcessor(SpanProcessor next) {
+      super(next);
+    }
+  }
+
+  private static class FirstStage extends EndOnlyProcessor {
+    FirstStage(SpanProcessor next) {
+      super(next);
+    }
+  }
+
+  private static class SecondStage extends EndOnlyProcessor {
+    SecondStage(SpanProcessor next) {
+      super(next);
+    }
+  }
+}
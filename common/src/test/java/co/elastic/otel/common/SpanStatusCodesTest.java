@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SpanStatusCodesTest {
+
+  private SdkTracerProvider tracerProvider;
+
+  private final List<ReadableSpan> endedSpans = new ArrayList<>();
+
+  @BeforeEach
+  void init() {
+    tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(
+                new SpanProcessor() {
+                  @Override
+                  public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+                  @Override
+                  public boolean isStartRequired() {
+                    return false;
+                  }
+
+                  @Override
+                  public void onEnd(ReadableSpan span) {
+                    endedSpans.add(span);
+                  }
+
+                  @Override
+                  public boolean isEndRequired() {
+                    return true;
+                  }
+                })
+            .build();
+  }
+
+  @AfterEach
+  void cleanup() {
+    tracerProvider.close();
+  }
+
+  @Test
+  public void statusOfSdkSpan() {
+    assertThat(SpanStatusCodes.of(endedSpan(StatusCode.UNSET))).isEqualTo(StatusCode.UNSET);
+    assertThat(SpanStatusCodes.of(endedSpan(StatusCode.OK))).isEqualTo(StatusCode.OK);
+    assertThat(SpanStatusCodes.of(endedSpan(StatusCode.ERROR))).isEqualTo(StatusCode.ERROR);
+  }
+
+  @Test
+  public void statusOfMutableSpan() {
+    ReadableSpan span = endedSpan(StatusCode.ERROR);
+
+    MutableSpan mutable = MutableSpan.makeMutable(span);
+    assertThat(SpanStatusCodes.of(mutable)).isEqualTo(StatusCode.ERROR);
+
+    mutable.setStatus(StatusData.ok());
+    assertThat(SpanStatusCodes.of(mutable)).isEqualTo(StatusCode.OK);
+    assertThat(SpanStatusCodes.of(span)).isEqualTo(StatusCode.ERROR);
+  }
+
+  private ReadableSpan endedSpan(StatusCode status) {
+    Span span = tracerProvider.get("test").spanBuilder("span").startSpan();
+    span.setStatus(status);
+    span.end();
+    // changes after the end are ignored
+    span.setStatus(StatusCode.OK);
+    return endedSpans.get(endedSpans.size() - 1);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SpanValueReleasePolicyTest {
+
+  private static final int PAYLOAD_SIZE = 1024 * 1024;
+
+  private static final SpanValue<byte[]> retained = SpanValue.createDense();
+  private static final SpanValue<byte[]> releasedDense =
+      SpanValue.createDense(ReleasePolicy.ON_END);
+  private static final SpanValue<byte[]> releasedSparse =
+      SpanValue.createSparse(ReleasePolicy.ON_END);
+
+  private final CompletableResultCode stalledExport = new CompletableResultCode();
+
+  private SdkTracerProvider tracerProvider;
+
+  @AfterEach
+  void shutdown() {
+    stalledExport.succeed();
+    if (tracerProvider != null) {
+      tracerProvider.close();
+    }
+  }
+
+  @Test
+  public void valuesReleasedWhileQueuedForStalledExporter() {
+    MutableCompositeSpanProcessor terminal = new MutableCompositeSpanProcessor();
+    terminal.addDelegate(
+        BatchSpanProcessor.builder(new StalledExporter())
+            .setMaxExportBatchSize(1)
+            .setScheduleDelay(Duration.ofMillis(1))
+            .setExporterTimeout(Duration.ofHours(1))
+            .build());
+    tracerProvider = SdkTracerProvider.builder().addSpanProcessor(terminal).build();
+    Tracer tracer = tracerProvider.get("test-tracer");
+
+    List<WeakReference<byte[]>> retainedPayloads = new ArrayList<>();
+    List<WeakReference<byte[]>> releasedPayloads = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Span span = tracer.spanBuilder("span-" + i).startSpan();
+      retainedPayloads.add(attachPayload(retained, span));
+      releasedPayloads.add(attachPayload(releasedDense, span));
+      releasedPayloads.add(attachPayload(releasedSparse, span));
+      span.end();
+    }
+
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(
+            () -> {
+              System.gc();
+              assertThat(releasedPayloads).allSatisfy(ref -> assertThat(ref.get()).isNull());
+            });
+    // the spans are still queued in the BatchSpanProcessor, keeping all other values reachable
+    assertThat(retainedPayloads).allSatisfy(ref -> assertThat(ref.get()).isNotNull());
+  }
+
+  @Test
+  public void valuesVisibleToChainedProcessors() {
+    AtomicInteger seenPayloads = new AtomicInteger();
+    SpanProcessor chain =
+        new AbstractSimpleChainingSpanProcessor(new MutableCompositeSpanProcessor()) {
+          @Override
+          protected ReadableSpan doOnEnd(ReadableSpan readableSpan) {
+            if (releasedDense.get(readableSpan) != null) {
+              seenPayloads.incrementAndGet();
+            }
+            return readableSpan;
+          }
+
+          @Override
+          protected boolean requiresEnd() {
+            return true;
+          }
+
+          @Override
+          protected boolean requiresStart() {
+            return false;
+          }
+        };
+    tracerProvider = SdkTracerProvider.builder().addSpanProcessor(chain).build();
+
+    Span span = tracerProvider.get("test-tracer").spanBuilder("span").startSpan();
+    releasedDense.set(span, new byte[1]);
+    retained.set(span, new byte[1]);
+    span.end();
+
+    assertThat(seenPayloads.get()).isEqualTo(1);
+    assertThat(releasedDense.get(span)).isNull();
+    assertThat(retained.get(span)).isNotNull();
+  }
+
+  private static WeakReference<byte[]> attachPayload(SpanValue<byte[]> value, Span span) {
+    byte[] payload = new byte[PAYLOAD_SIZE];
+    value.set(span, payload);
+    return new WeakReference<>(payload);
+  }
+
+  private class StalledExporter implements SpanExporter {
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      return stalledExport;
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -26,11 +26,15 @@ import static org.mockito.Mockito.verify;
 
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
 import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterAll;
@@ -64,8 +68,7 @@ public class SpanValueTest {
 
     // This span was created and has it's SpanValue storage initialized before
     // other dense SpanValue in tests are created
-    // as a result, the backing AtomicReferenceArray is not used for those and they should fall back
-    // to the map-based storage
+    // as a result, the backing AtomicReferenceArray is too small for those and needs to be grown
     earlySpan = tracer.spanBuilder("early span").startSpan();
     SpanValue.createSparse().set(earlySpan, "foo");
   }
@@ -203,6 +206,110 @@ public class SpanValueTest {
     assertThat(val.get(wrappedTwice)).isEqualTo("wrapped2");
   }
 
+  @Test
+  public void wellKnownValueCanOnlyBeCreatedOnce() {
+    // initializes the well-known value used by LocalRootSpan
+    Span span = newSpan();
+    LocalRootSpan.onSpanStart((ReadableSpan) span, Context.root());
+    assertThat(LocalRootSpan.getFor(span)).isSameAs(span);
+
+    assertThatThrownBy(() -> SpanValue.createWellKnown(WellKnownSpanValue.LOCAL_ROOT))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("LOCAL_ROOT");
+  }
+
+  @Test
+  public void lateDenseValueUsesReservedIndex() {
+    Span span = newSpan();
+    SpanValue<String> early = SpanValue.createDense();
+    SpanValue<String> sparse = SpanValue.createSparse();
+    early.set(span, "early");
+    sparse.set(span, "sparse");
+    SpanValueStorage initialStorage = SpanValue.getStorage(span, false);
+
+    SpanValue<String> late = SpanValue.createDense();
+    assertThat(late.get(span)).isNull();
+    assertThat(SpanValue.getStorage(span, false)).isSameAs(initialStorage);
+
+    late.set(span, "late");
+    SpanValueStorage grownStorage = SpanValue.getStorage(span, false);
+    assertThat(grownStorage).isNotSameAs(initialStorage);
+    assertThat(grownStorage.length()).isGreaterThan(late.index);
+    assertThat(grownStorage.get(late.index)).isEqualTo("late");
+    assertThat(grownStorage.get(early.index)).isEqualTo("early");
+
+    assertThat(early.get(span)).isEqualTo("early");
+    assertThat(sparse.get(span)).isEqualTo("sparse");
+    assertThat(late.get(span)).isEqualTo("late");
+
+    // operations on the replaced storage are forwarded
+    initialStorage.setValue(early.index, early, "forwarded");
+    assertThat(early.get(span)).isEqualTo("forwarded");
+    assertThat(initialStorage.getValue(sparse.index, sparse)).isEqualTo("sparse");
+  }
+
+  @Test
+  public void concurrentGrowthDoesNotLoseUpdates() throws Exception {
+    int writerCount = 4;
+    int writesPerWriter = 2000;
+    int lateValueCount = 50;
+
+    List<SpanValue<Integer>> writerValues = new ArrayList<>();
+    for (int i = 0; i < writerCount; i++) {
+      writerValues.add(i % 2 == 0 ? SpanValue.createDense() : SpanValue.createSparse());
+    }
+    Span span = newSpan();
+    writerValues.get(0).set(span, 0);
+
+    CyclicBarrier barrier = new CyclicBarrier(writerCount + 1);
+    List<Thread> threads = new ArrayList<>();
+    for (SpanValue<Integer> value : writerValues) {
+      threads.add(
+          new Thread(
+              () -> {
+                await(barrier);
+                for (int i = 1; i <= writesPerWriter; i++) {
+                  value.set(span, i);
+                }
+              }));
+    }
+    List<SpanValue<Integer>> lateValues = new ArrayList<>();
+    threads.add(
+        new Thread(
+            () -> {
+              await(barrier);
+              for (int i = 0; i < lateValueCount; i++) {
+                SpanValue<Integer> late = SpanValue.createDense();
+                late.set(span, i);
+                lateValues.add(late);
+              }
+            }));
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (SpanValue<Integer> value : writerValues) {
+      assertThat(value.get(span)).isEqualTo(writesPerWriter);
+    }
+    assertThat(lateValues).hasSize(lateValueCount);
+    SpanValueStorage storage = SpanValue.getStorage(span, false);
+    for (int i = 0; i < lateValueCount; i++) {
+      assertThat(lateValues.get(i).get(span)).isEqualTo(i);
+      assertThat(storage.get(lateValues.get(i).index)).isEqualTo(i);
+    }
+  }
+
+  private static void await(CyclicBarrier barrier) {
+    try {
+      barrier.await();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   /**
    * Utility for writing checks agnostic of whether {@link Span} or {@link
    * io.opentelemetry.sdk.trace.ReadableSpan} is used.
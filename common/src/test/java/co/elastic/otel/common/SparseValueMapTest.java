@@ -0,0 +1,195 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+public class SparseValueMapTest {
+
+  @Test
+  public void checkBasicOperations() {
+    SparseValueMap map = new SparseValueMap();
+    Object key = new Object();
+
+    assertThat(map.get(key)).isNull();
+    map.clear(key);
+    assertThat(map.get(key)).isNull();
+
+    map.set(key, "first");
+    assertThat(map.get(key)).isEqualTo("first");
+    assertThat(map.setIfNull(key, "second")).isFalse();
+    assertThat(map.computeIfNull(key, () -> "second")).isEqualTo("first");
+
+    map.clear(key);
+    assertThat(map.get(key)).isNull();
+    assertThat(map.computeIfNull(key, () -> null)).isNull();
+    assertThat(map.get(key)).isNull();
+    assertThat(map.computeIfNull(key, () -> "third")).isEqualTo("third");
+
+    map.set(key, null);
+    assertThat(map.get(key)).isNull();
+    assertThat(map.setIfNull(key, "fourth")).isTrue();
+    assertThat(map.get(key)).isEqualTo("fourth");
+  }
+
+  @Test
+  public void checkGrowth() {
+    SparseValueMap map = new SparseValueMap();
+    List<Object> keys = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Object key = new Object();
+      keys.add(key);
+      assertThat(map.get(key)).isNull();
+      map.set(key, i);
+    }
+    for (int i = 0; i < keys.size(); i++) {
+      assertThat(map.get(keys.get(i))).isEqualTo(i);
+    }
+    for (int i = 0; i < keys.size(); i += 2) {
+      map.clear(keys.get(i));
+    }
+    for (int i = 0; i < keys.size(); i++) {
+      assertThat(map.get(keys.get(i))).isEqualTo(i % 2 == 0 ? null : i);
+    }
+  }
+
+  @Test
+  public void checkConcurrentWriters() throws Exception {
+    int numThreads = 8;
+    int keysPerThread = 16;
+    int iterations = 1000;
+    List<Object> sharedKeys = new ArrayList<>();
+    for (int i = 0; i < keysPerThread; i++) {
+      sharedKeys.add(new Object());
+    }
+
+    for (int iter = 0; iter < iterations; iter++) {
+      SparseValueMap map = new SparseValueMap();
+      AtomicInteger successfulSets = new AtomicInteger();
+      CountDownLatch startLatch = new CountDownLatch(1);
+      List<Thread> threads = new ArrayList<>();
+      List<Object> ownKeys = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        Object ownKey = new Object();
+        ownKeys.add(ownKey);
+        Thread thread =
+            new Thread(
+                () -> {
+                  try {
+                    startLatch.await();
+                  } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                  }
+                  map.set(ownKey, ownKey);
+                  for (Object key : sharedKeys) {
+                    if (map.setIfNull(key, Thread.currentThread())) {
+                      successfulSets.incrementAndGet();
+                    }
+                  }
+                });
+        thread.start();
+        threads.add(thread);
+      }
+      startLatch.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      // every shared key must have been set exactly once
+      assertThat(successfulSets.get()).isEqualTo(keysPerThread);
+      for (Object key : sharedKeys) {
+        assertThat(map.get(key)).isIn(threads.toArray());
+      }
+      for (Object key : ownKeys) {
+        assertThat(map.get(key)).isSameAs(key);
+      }
+    }
+  }
+
+  @Test
+  public void checkMemoryFootprintSmallerThanConcurrentHashMap() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    assumeThat(threadBean).isInstanceOf(com.sun.management.ThreadMXBean.class);
+    com.sun.management.ThreadMXBean allocBean = (com.sun.management.ThreadMXBean) threadBean;
+    assumeThat(allocBean.isThreadAllocatedMemorySupported()).isTrue();
+    allocBean.setThreadAllocatedMemoryEnabled(true);
+
+    Object[] keys = {new Object(), new Object(), new Object()};
+    Object value = new Object();
+
+    for (int numEntries = 1; numEntries <= keys.length; numEntries++) {
+      int entries = numEntries;
+      long compactBytes =
+          measureBytesPerInstance(
+              allocBean,
+              () -> {
+                SparseValueMap map = new SparseValueMap();
+                for (int i = 0; i < entries; i++) {
+                  map.set(keys[i], value);
+                }
+                return map;
+              });
+      long chmBytes =
+          measureBytesPerInstance(
+              allocBean,
+              () -> {
+                Map<Object, Object> map = new ConcurrentHashMap<>();
+                for (int i = 0; i < entries; i++) {
+                  map.put(keys[i], value);
+                }
+                return map;
+              });
+      // the ConcurrentHashMap requires at least twice the memory for the few entries
+      // a span usually carries
+      assertThat(compactBytes)
+          .describedAs("Bytes per span for %d sparse entries", numEntries)
+          .isLessThanOrEqualTo(chmBytes / 2);
+    }
+  }
+
+  private static long measureBytesPerInstance(
+      com.sun.management.ThreadMXBean allocBean, Supplier<Object> factory) {
+    int count = 10_000;
+    Object[] instances = new Object[count];
+    long threadId = Thread.currentThread().getId();
+    // warmup to avoid measuring class loading or JIT allocations
+    for (int i = 0; i < count; i++) {
+      instances[i] = factory.get();
+    }
+    long before = allocBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < count; i++) {
+      instances[i] = factory.get();
+    }
+    long after = allocBean.getThreadAllocatedBytes(threadId);
+    assertThat(instances).doesNotContainNull();
+    return (after - before) / count;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.MetricDataType;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ValueStorageMetricsTest {
+
+  private SdkTracerProvider tracerProvider;
+
+  private Tracer tracer;
+
+  private InMemoryMetricReader metricReader;
+
+  private SdkMeterProvider meterProvider;
+
+  @BeforeEach
+  void init() {
+    tracerProvider = SdkTracerProvider.builder().build();
+    tracer = tracerProvider.get("test-tracer");
+    metricReader = InMemoryMetricReader.create();
+    meterProvider = SdkMeterProvider.builder().registerMetricReader(metricReader).build();
+    ValueStorageMetrics.register(meterProvider.get(ValueStorageMetrics.INSTRUMENTATION_SCOPE));
+  }
+
+  @AfterEach
+  void cleanup() {
+    tracerProvider.close();
+    meterProvider.close();
+  }
+
+  @Test
+  void countersTrackStorageUsage() {
+    boolean mapBacked =
+        SpanValueStorageProvider.get() instanceof SpanValueStorageProvider.MapBacked;
+    Collection<MetricData> before = metricReader.collectAllMetrics();
+
+    Span span = tracer.spanBuilder("span").startSpan();
+    SpanValue.createSparse().set(span, "sparse");
+    // registered after the storage of the span has been allocated, therefore requires growing it
+    SpanValue<String> lateDense = SpanValue.createDense();
+    lateDense.set(span, "dense");
+    span.end();
+
+    Collection<MetricData> after = metricReader.collectAllMetrics();
+    assertThat(delta(before, after, "elastic.otel.value_storage.allocated")).isEqualTo(2);
+    assertThat(delta(before, after, "elastic.otel.value_storage.grown")).isEqualTo(1);
+    assertThat(delta(before, after, "elastic.otel.value_storage.sparse_maps")).isEqualTo(1);
+    assertThat(delta(before, after, "elastic.otel.value_storage.map_backed"))
+        .isEqualTo(mapBacked ? 1 : 0);
+  }
+
+  @Test
+  void storagesNotInstalledAreNotCounted() {
+    Collection<MetricData> before = metricReader.collectAllMetrics();
+
+    // e.g. the loser of a race for attaching the storage to a span
+    new SpanValueStorage();
+
+    Collection<MetricData> after = metricReader.collectAllMetrics();
+    assertThat(delta(before, after, "elastic.otel.value_storage.allocated")).isZero();
+  }
+
+  @Test
+  void gaugesReflectStorageSize() {
+    SpanValue.createDense();
+    Collection<MetricData> metrics = metricReader.collectAllMetrics();
+
+    long denseSlots = value(metrics, "elastic.otel.value_storage.dense_slots", "span");
+    assertThat(denseSlots).isEqualTo(SpanValueStorage.INDEX_SPACE.denseSlots()).isGreaterThan(2);
+    assertThat(value(metrics, "elastic.otel.value_storage.dense_slots", "log_record"))
+        .isEqualTo(LogRecordValueStorage.INDEX_SPACE.denseSlots());
+
+    long estimatedSize = value(metrics, "elastic.otel.value_storage.estimated_size", "span");
+    assertThat(estimatedSize).isGreaterThanOrEqualTo(4 * denseSlots).isEqualTo(estimatedSize & ~7);
+  }
+
+  private static long delta(
+      Collection<MetricData> before, Collection<MetricData> after, String name) {
+    return value(after, name, "span") - value(before, name, "span");
+  }
+
+  private static long value(Collection<MetricData> metrics, String name, String ownerKind) {
+    MetricData metric =
+        metrics.stream().filter(m -> m.getName().equals(name)).findFirst().orElse(null);
+    assertThat(metric).describedAs("metric %s", name).isNotNull();
+    Stream<? extends PointData> points =
+        metric.getType() == MetricDataType.LONG_SUM
+            ? metric.getLongSumData().getPoints().stream()
+            : metric.getLongGaugeData().getPoints().stream();
+    return points
+        .filter(p -> ownerKind.equals(p.getAttributes().get(ValueStorageMetrics.OWNER_KIND)))
+        .map(p -> ((LongPointData) p).getValue())
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("No point for " + ownerKind));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.blogspot.mydailyjava.weaklockfree.WeakConcurrentMap;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class WeakConcurrentTest {
+
+  @Test
+  public void cleanupDelayAdaptsToStaleEntries() {
+    long defaultDelay = WeakConcurrent.DEFAULT_CLEANUP_DELAY.toMillis();
+    long minDelay = WeakConcurrent.MIN_CLEANUP_DELAY.toMillis();
+    long maxDelay = WeakConcurrent.MAX_CLEANUP_DELAY.toMillis();
+
+    // back off while idle, up to the maximum
+    assertThat(WeakConcurrent.nextCleanupDelay(defaultDelay, 0)).isEqualTo(defaultDelay * 2);
+    assertThat(WeakConcurrent.nextCleanupDelay(maxDelay, 0)).isEqualTo(maxDelay);
+
+    // return to the default pace as soon as there is garbage
+    assertThat(WeakConcurrent.nextCleanupDelay(maxDelay, 1)).isEqualTo(defaultDelay);
+    assertThat(WeakConcurrent.nextCleanupDelay(defaultDelay, 1)).isEqualTo(defaultDelay);
+
+    // speed up if a lot of garbage accumulates, down to the minimum
+    long highStale = WeakConcurrent.HIGH_STALE_ENTRIES_PER_SWEEP;
+    assertThat(WeakConcurrent.nextCleanupDelay(defaultDelay, highStale))
+        .isEqualTo(defaultDelay / 2);
+    assertThat(WeakConcurrent.nextCleanupDelay(minDelay, highStale)).isEqualTo(minDelay);
+  }
+
+  @Test
+  public void staleEntriesReportedPerMap() {
+    InMemoryMetricReader metricReader = InMemoryMetricReader.create();
+    try (SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().registerMetricReader(metricReader).build()) {
+      WeakConcurrent.registerMetrics(meterProvider.get("test"));
+
+      WeakConcurrentMap<Object, Object> map = WeakConcurrent.createMap("stale-test-map", false);
+      for (int i = 0; i < 100; i++) {
+        map.put(new Object(), new Object());
+      }
+
+      await()
+          .atMost(Duration.ofSeconds(10))
+          .untilAsserted(
+              () -> {
+                System.gc();
+                WeakConcurrent.expungeStaleEntries();
+                assertThat(map.approximateSize()).isEqualTo(0);
+                assertThat(staleEntries(metricReader, "stale-test-map")).isEqualTo(100);
+              });
+      assertThat(metricReader.collectAllMetrics())
+          .anySatisfy(
+              metric ->
+                  assertThat(metric.getName()).isEqualTo("elastic.otel.weak_map.cleanup_delay"));
+    }
+  }
+
+  @Test
+  public void expungeOnWrite() {
+    WeakConcurrentMap<Object, Object> map = WeakConcurrent.createMap("expunge-test-map", true);
+    for (int i = 0; i < 100; i++) {
+      map.put(new Object(), new Object());
+    }
+    Object liveKey = new Object();
+
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(
+            () -> {
+              System.gc();
+              map.put(liveKey, new Object());
+              assertThat(map.approximateSize()).isEqualTo(1);
+            });
+  }
+
+  private static long staleEntries(InMemoryMetricReader reader, String mapName) {
+    MetricData metric =
+        reader.collectAllMetrics().stream()
+            .filter(m -> m.getName().equals("elastic.otel.weak_map.stale_entries"))
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("stale entries metric missing"));
+    return metric.getLongSumData().getPoints().stream()
+        .filter(p -> mapName.equals(p.getAttributes().get(AttributeKey.stringKey("map.name"))))
+        .mapToLong(LongPointData::getValue)
+        .findFirst()
+        .orElse(0);
+  }
+}
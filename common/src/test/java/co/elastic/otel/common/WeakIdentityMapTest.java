@@ -0,0 +1,181 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+public class WeakIdentityMapTest {
+
+  @Test
+  public void checkBasicOperations() {
+    WeakIdentityMap<Object, String> map = new WeakIdentityMap<>("test");
+    Object key = new Object();
+
+    assertThat(map.get(key)).isNull();
+    assertThat(map.replace(key, null, "first")).isFalse();
+    assertThat(map.get(key)).isNull();
+
+    assertThat(map.putIfAbsent(key, "first")).isNull();
+    assertThat(map.putIfAbsent(key, "second")).isEqualTo("first");
+    assertThat(map.get(key)).isEqualTo("first");
+
+    assertThat(map.replace(key, "other", "second")).isFalse();
+    assertThat(map.get(key)).isEqualTo("first");
+    assertThat(map.replace(key, "first", "second")).isTrue();
+    assertThat(map.get(key)).isEqualTo("second");
+
+    assertThat(map.approximateSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void keysAreComparedByIdentity() {
+    WeakIdentityMap<String, String> map = new WeakIdentityMap<>("test");
+    String key = new String("key");
+    String equalKey = new String("key");
+
+    map.putIfAbsent(key, "value");
+    assertThat(map.get(key)).isEqualTo("value");
+    assertThat(map.get(equalKey)).isNull();
+  }
+
+  @Test
+  public void checkResizing() {
+    WeakIdentityMap<Object, Integer> map = new WeakIdentityMap<>("test", 4);
+    List<Object> keys = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      Object key = new Object();
+      keys.add(key);
+      assertThat(map.putIfAbsent(key, i)).isNull();
+    }
+    assertThat(map.approximateSize()).isEqualTo(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      assertThat(map.get(keys.get(i))).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void staleEntriesExpungedOnWrite() {
+    // a single segment, so that every write drains the queue of collected keys
+    WeakIdentityMap<Object, byte[]> map = new WeakIdentityMap<>("test", 1);
+    for (int i = 0; i < 100; i++) {
+      map.putIfAbsent(new Object(), new byte[1024]);
+    }
+    Object liveKey = new Object();
+    map.putIfAbsent(liveKey, new byte[0]);
+
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(
+            () -> {
+              System.gc();
+              // no background thread involved, the cleanup happens as part of the writes
+              for (int i = 0; i < 10; i++) {
+                map.putIfAbsent(liveKey, new byte[0]);
+              }
+              assertThat(map.approximateSize()).isEqualTo(1);
+            });
+    assertThat(map.get(liveKey)).isNotNull();
+
+    for (int i = 0; i < 100; i++) {
+      map.putIfAbsent(new Object(), new byte[1024]);
+    }
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(
+            () -> {
+              System.gc();
+              map.expungeStaleEntries();
+              assertThat(map.approximateSize()).isEqualTo(1);
+            });
+  }
+
+  @Test
+  public void staleEntriesExpungedByBackgroundCleanupWithoutWrites() {
+    WeakIdentityMap<Object, byte[]> map = new WeakIdentityMap<>("test", 1);
+    for (int i = 0; i < 100; i++) {
+      map.putIfAbsent(new Object(), new byte[1024]);
+    }
+    Object liveKey = new Object();
+    map.putIfAbsent(liveKey, new byte[0]);
+
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(
+            () -> {
+              System.gc();
+              // a sweep of the shared cleaner, which otherwise runs in the background
+              WeakConcurrent.expungeStaleEntries();
+              assertThat(map.approximateSize()).isEqualTo(1);
+            });
+    assertThat(map.get(liveKey)).isNotNull();
+  }
+
+  @Test
+  public void concurrentWritersAgreeOnSingleValue() throws InterruptedException {
+    WeakIdentityMap<Object, Object> map = new WeakIdentityMap<>("test");
+    int numThreads = 8;
+    List<Object> keys = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      keys.add(new Object());
+    }
+    Set<Object> winners = ConcurrentHashMap.newKeySet();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+                for (Object key : keys) {
+                  Object value = new Object();
+                  Object existing = map.putIfAbsent(key, value);
+                  Object current = existing == null ? value : existing;
+                  assertThat(map.get(key)).isSameAs(current);
+                  if (existing == null) {
+                    winners.add(value);
+                  }
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(winners).hasSize(keys.size());
+    for (Object key : keys) {
+      assertThat(winners).contains(map.get(key));
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.config;
+
+import static io.opentelemetry.sdk.testing.assertj.OpenTelemetryAssertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class WildcardMatchCacheTest {
+
+  private static final List<WildcardMatcher> MATCHERS =
+      Arrays.asList("/health*", "*.js", "*/api/*").stream()
+          .map(WildcardMatcher::valueOf)
+          .collect(Collectors.toList());
+
+  @Test
+  void repeatedLookupsAreCached() {
+    WildcardMatchCache cache = WildcardMatchCache.of(MATCHERS, 16);
+
+    assertThat(cache.firstMatch("/foo/api/bar")).isSameAs(MATCHERS.get(2));
+    assertThat(cache.firstMatch("/static/app.css")).isNull();
+    assertThat(cache.getMisses()).isEqualTo(2);
+    assertThat(cache.getHits()).isZero();
+
+    assertThat(cache.firstMatch("/foo/api/bar")).isSameAs(MATCHERS.get(2));
+    // equal content, but a different instance
+    assertThat(cache.firstMatch(new StringBuilder("/static/app.css"))).isNull();
+    assertThat(cache.isAnyMatch("/foo/api/bar")).isTrue();
+    assertThat(cache.isAnyMatch(null)).isFalse();
+    assertThat(cache.getMisses()).isEqualTo(2);
+    assertThat(cache.getHits()).isEqualTo(3);
+  }
+
+  @Test
+  void twoPartLookupsShareEntriesWithConcatenatedString() {
+    WildcardMatchCache cache = WildcardMatchCache.of(MATCHERS, 16);
+
+    assertThat(cache.firstMatch("/healthcheck")).isSameAs(MATCHERS.get(0));
+    assertThat(cache.firstMatch("/health", "check")).isSameAs(MATCHERS.get(0));
+    assertThat(cache.firstMatch("/", "healthcheck")).isSameAs(MATCHERS.get(0));
+    assertThat(cache.firstMatch("/healthcheck", null)).isSameAs(MATCHERS.get(0));
+    assertThat(cache.getMisses()).isEqualTo(1);
+    assertThat(cache.getHits()).isEqualTo(3);
+
+    assertThat(cache.firstMatch("/app", ".js")).isSameAs(MATCHERS.get(1));
+    assertThat(cache.firstMatch("/app.js")).isSameAs(MATCHERS.get(1));
+    assertThat(cache.getMisses()).isEqualTo(2);
+  }
+
+  @Test
+  void sameResultsAsUncachedWhenOverCapacity() {
+    WildcardMatchCache cache = WildcardMatchCache.of(MATCHERS, 4);
+    List<String> inputs = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      inputs.add("/health" + i);
+      inputs.add("/static/" + i + ".js");
+      inputs.add("/" + i + "/api/");
+      inputs.add("/other/" + i);
+    }
+
+    for (int round = 0; round < 3; round++) {
+      for (String input : inputs) {
+        assertThat(cache.firstMatch(input)).isSameAs(WildcardMatcher.anyMatch(MATCHERS, input));
+      }
+    }
+    // the cache is bounded, so most of the lookups can't be served from it
+    assertThat(cache.getMisses()).isGreaterThan(inputs.size() * 2L);
+  }
+
+  @Test
+  void recentlyUsedEntriesSurviveEviction() {
+    WildcardMatchCache cache = WildcardMatchCache.of(MATCHERS, 2);
+    String hot = "/hot/api/";
+    cache.firstMatch(hot);
+
+    for (int i = 0; i < 100; i++) {
+      cache.firstMatch(hot);
+      cache.firstMatch("/cold/" + i);
+    }
+    // the hot entry is hit every time, while each cold one is only used once
+    assertThat(cache.getMisses()).isEqualTo(101);
+    assertThat(cache.getHits()).isEqualTo(100);
+  }
+
+  @Test
+  void longStringsAreNotCached() {
+    WildcardMatchCache cache = WildcardMatchCache.of(MATCHERS, 16);
+    StringBuilder longString = new StringBuilder("/api/");
+    while (longString.length() <= WildcardMatchCache.MAX_KEY_LENGTH) {
+      longString.append('x');
+    }
+
+    assertThat(cache.firstMatch(longString)).isSameAs(MATCHERS.get(2));
+    assertThat(cache.firstMatch(longString)).isSameAs(MATCHERS.get(2));
+    assertThat(cache.getHits()).isZero();
+    assertThat(cache.getMisses()).isEqualTo(2);
+  }
+
+  @Test
+  void hitsAndMissesReportedAsMetrics() {
+    InMemoryMetricReader metricReader = InMemoryMetricReader.create();
+    try (SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().registerMetricReader(metricReader).build()) {
+      WildcardMatchCache cache = WildcardMatchCache.of(MATCHERS, 16);
+      cache.registerMetrics(meterProvider.get("test"), "urls");
+      cache.firstMatch("/foo");
+      cache.firstMatch("/foo");
+      cache.firstMatch("/foo");
+
+      Attributes attributes = Attributes.builder().put("cache.name", "urls").build();
+      assertThat(metricReader.collectAllMetrics())
+          .anySatisfy(
+              metric ->
+                  assertThat(metric)
+                      .hasName("elastic.otel.wildcard_cache.hits")
+                      .hasLongSumSatisfying(
+                          sum ->
+                              sum.hasPointsSatisfying(
+                                  point -> point.hasValue(2).hasAttributes(attributes))))
+          .anySatisfy(
+              metric ->
+                  assertThat(metric)
+                      .hasName("elastic.otel.wildcard_cache.misses")
+                      .hasLongSumSatisfying(
+                          sum ->
+                              sum.hasPointsSatisfying(
+                                  point -> point.hasValue(1).hasAttributes(attributes))));
+    }
+  }
+}
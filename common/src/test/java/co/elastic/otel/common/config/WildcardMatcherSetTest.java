@@ -0,0 +1,174 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class WildcardMatcherSetTest {
+
+  @Test
+  public void reportsFirstMatchingMatcher() {
+    WildcardMatcherSet set = set("/health*", "*.js", "*/api/*", "/api/v1/*");
+
+    assertThat(set.firstMatch("/api/v1/users")).hasToString("*/api/*");
+    assertThat(set.firstMatch("/static/app.JS")).hasToString("*.js");
+    assertThat(set.firstMatch("/HEALTHCHECK")).hasToString("/health*");
+    assertThat(set.firstMatch("/static/app.css")).isNull();
+    assertThat(set.firstMatch(null)).isNull();
+    assertThat(set.isAnyMatch("/foo/api/")).isTrue();
+    assertThat(set.isAnyMatch("/foo/api")).isFalse();
+  }
+
+  @Test
+  public void sameResultsAsMatcherList() {
+    List<WildcardMatcher> matchers =
+        matchers(
+            "foo",
+            "foo*",
+            "*foo",
+            "*foo*",
+            "foo*bar",
+            "*foo*bar*",
+            "(?-i)FOO*",
+            "(?i)*Bar",
+            "*",
+            "");
+    WildcardMatcherSet set = WildcardMatcherSet.of(matchers);
+    List<String> inputs =
+        Arrays.asList(
+            "", "foo", "FOO", "foobar", "xfoo", "xfoox", "fooxbar", "FOOXBAR", "xbar", "bar", "x");
+    for (String input : inputs) {
+      for (int i = 0; i < matchers.size(); i++) {
+        List<WildcardMatcher> subList = matchers.subList(i, matchers.size());
+        assertThat(WildcardMatcherSet.of(subList).firstMatch(input))
+            .describedAs("%s in %s", input, subList)
+            .isEqualTo(WildcardMatcher.anyMatch(subList, input));
+      }
+      assertThat(set.firstMatch(input)).isEqualTo(WildcardMatcher.anyMatch(matchers, input));
+    }
+  }
+
+  @Test
+  public void caseSensitivity() {
+    WildcardMatcherSet set = set("(?-i)*Foo*", "(?i)*bar*");
+
+    assertThat(set.firstMatch("xFoox")).hasToString("(?-i)*Foo*");
+    assertThat(set.firstMatch("xfoox")).isNull();
+    assertThat(set.firstMatch("xBARx")).hasToString("(?i)*bar*");
+  }
+
+  @Test
+  public void partitionedInput() {
+    WildcardMatcherSet set = set("foo*bar", "*baz");
+
+    assertThat(set.firstMatch("fo", "obar")).hasToString("foo*bar");
+    assertThat(set.firstMatch("foob", "ar")).hasToString("foo*bar");
+    assertThat(set.firstMatch("foo", null)).isNull();
+    assertThat(set.firstMatch("", "xbaz")).hasToString("*baz");
+  }
+
+  @Test
+  public void lastSegmentIsMatchedAgainstTheEnd() {
+    // like the matcher list, the last segment may overlap the ones before
+    assertThat(set("a*a").firstMatch("a")).hasToString("a*a");
+    assertThat(set("AA*a").firstMatch("Aa")).hasToString("AA*a");
+    assertThat(set("*b*b").firstMatch("AAb")).hasToString("*b*b");
+    assertThat(set("ab*ba").firstMatch("aba")).hasToString("ab*ba");
+    assertThat(set("ab*ba").firstMatch("abb")).isNull();
+  }
+
+  @Test
+  public void segmentsInBetweenMustNotOverlap() {
+    WildcardMatcherSet set = set("*aa*aa*", "a*aa*b");
+
+    assertThat(set.firstMatch("aaa")).isNull();
+    assertThat(set.firstMatch("aaaa")).hasToString("*aa*aa*");
+    assertThat(set.firstMatch("aab")).isNull();
+    assertThat(set.firstMatch("aaab")).hasToString("a*aa*b");
+  }
+
+  @Test
+  public void emptySegmentSearchesFromTheStart() {
+    WildcardMatcherSet set = set("ab**ba*");
+
+    assertThat(set.firstMatch("aba")).hasToString("ab**ba*");
+    assertThat(set.firstMatch("bab")).isNull();
+  }
+
+  @Test
+  public void emptySet() {
+    WildcardMatcherSet set = WildcardMatcherSet.of(Collections.emptyList());
+
+    assertThat(set.firstMatch("")).isNull();
+    assertThat(set.firstMatch("foo")).isNull();
+  }
+
+  @Test
+  public void randomizedAgainstMatcherList() {
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      List<String> patterns = new ArrayList<>();
+      int patternCount = 1 + random.nextInt(20);
+      for (int i = 0; i < patternCount; i++) {
+        String pattern = randomString(random, "abAB**", random.nextInt(7));
+        patterns.add(random.nextInt(4) == 0 ? "(?-i)" + pattern : pattern);
+      }
+      List<WildcardMatcher> matchers = matchers(patterns.toArray(new String[0]));
+      WildcardMatcherSet set = WildcardMatcherSet.of(matchers);
+
+      for (int i = 0; i < 50; i++) {
+        String input = randomString(random, "abAB", random.nextInt(10));
+        WildcardMatcher expected = WildcardMatcher.anyMatch(matchers, input);
+        assertThat(set.firstMatch(input))
+            .describedAs("%s in %s", input, patterns)
+            .isEqualTo(expected);
+        int split = random.nextInt(input.length() + 1);
+        assertThat(set.firstMatch(input.substring(0, split), input.substring(split)))
+            .describedAs("%s in %s split at %d", input, patterns, split)
+            .isEqualTo(
+                WildcardMatcher.anyMatch(
+                    matchers, input.substring(0, split), input.substring(split)));
+      }
+    }
+  }
+
+  private static String randomString(Random random, String alphabet, int length) {
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return sb.toString();
+  }
+
+  private static WildcardMatcherSet set(String... patterns) {
+    return WildcardMatcherSet.of(matchers(patterns));
+  }
+
+  private static List<WildcardMatcher> matchers(String... patterns) {
+    return Arrays.stream(patterns).map(WildcardMatcher::valueOf).collect(Collectors.toList());
+  }
+}
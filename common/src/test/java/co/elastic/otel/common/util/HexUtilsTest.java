@@ -19,6 +19,7 @@
 package co.elastic.otel.common.util;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.nio.ByteBuffer;
 import org.junit.jupiter.api.Test;
@@ -49,4 +50,22 @@ public class HexUtilsTest {
 
     assertThat(result.toString()).isEqualTo("01abff");
   }
+
+  @Test
+  public void hexToLong() {
+    assertThat(HexUtils.hexToLong("xx0123456789ABCDEF", 2)).isEqualTo(0x0123456789abcdefL);
+    assertThatThrownBy(() -> HexUtils.hexToLong("012345678901234z", 0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> HexUtils.hexToLong("012345678901234\u0660", 0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void longToHexChars() {
+    char[] chars = new char[18];
+
+    HexUtils.writeLongAsHex(0x00f067aa0ba902b7L, chars, 1);
+
+    assertThat(new String(chars, 1, 16)).isEqualTo("00f067aa0ba902b7");
+  }
 }
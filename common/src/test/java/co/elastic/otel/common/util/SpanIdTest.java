@@ -0,0 +1,55 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.jupiter.api.Test;
+
+public class SpanIdTest {
+
+  @Test
+  public void hexRoundTrip() {
+    SpanId id = SpanId.fromHex("00f067aa0ba902b7");
+
+    assertThat(id.toLong()).isEqualTo(0x00f067aa0ba902b7L);
+    assertThat(id.toHex()).isEqualTo("00f067aa0ba902b7");
+    assertThat(SpanId.fromHex("00F067AA0BA902B7")).isEqualTo(id).hasSameHashCodeAs(id);
+    assertThat(SpanId.fromHex("0000000000000000")).isSameAs(SpanId.INVALID);
+    assertThatThrownBy(() -> SpanId.fromHex("00f067aa0ba902b"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void binaryRoundTripIgnoresByteOrder() {
+    SpanId id = SpanId.fromLong(0x0102030405060708L);
+
+    ByteBuffer buffer = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+    id.writeTo(buffer, 1);
+
+    assertThat(buffer.get(1)).isEqualTo((byte) 0x01);
+    assertThat(buffer.get(8)).isEqualTo((byte) 0x08);
+    assertThat(buffer.position()).isZero();
+    assertThat(SpanId.readFrom(buffer, 1)).isEqualTo(id);
+    assertThat(SpanId.fromBytes(new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8}, 1)).isEqualTo(id);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel.common.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.jupiter.api.Test;
+
+public class TraceIdTest {
+
+  private static final String HEX = "0123456789abcdeffedcba9876543210";
+
+  @Test
+  public void hexRoundTrip() {
+    TraceId id = TraceId.fromHex(HEX);
+
+    assertThat(id.getHigh()).isEqualTo(0x0123456789abcdefL);
+    assertThat(id.getLow()).isEqualTo(0xfedcba9876543210L);
+    assertThat(id.toHex()).isEqualTo(HEX);
+    assertThat(id).hasToString(HEX);
+    assertThat(id.isValid()).isTrue();
+    assertThat(TraceId.fromHex(HEX.toUpperCase())).isEqualTo(id).hasSameHashCodeAs(id);
+
+    StringBuilder builder = new StringBuilder("trace:");
+    id.appendHex(builder);
+    assertThat(builder.toString()).isEqualTo("trace:" + HEX);
+  }
+
+  @Test
+  public void invalidHex() {
+    assertThat(TraceId.fromHex("00000000000000000000000000000000"))
+        .isSameAs(TraceId.INVALID)
+        .satisfies(id -> assertThat(id.isValid()).isFalse());
+    assertThatThrownBy(() -> TraceId.fromHex("0123")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TraceId.fromHex("0123456789abcdeffedcba987654321g"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void binaryRoundTripIgnoresByteOrder() {
+    TraceId id = TraceId.fromHex(HEX);
+    byte[] expected = {
+      0x01,
+      0x23,
+      0x45,
+      0x67,
+      (byte) 0x89,
+      (byte) 0xab,
+      (byte) 0xcd,
+      (byte) 0xef,
+      (byte) 0xfe,
+      (byte) 0xdc,
+      (byte) 0xba,
+      (byte) 0x98,
+      0x76,
+      0x54,
+      0x32,
+      0x10
+    };
+
+    for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      ByteBuffer buffer = ByteBuffer.allocate(20).order(order);
+      id.writeTo(buffer, 3);
+
+      byte[] written = new byte[16];
+      ((ByteBuffer) buffer.position(3)).get(written);
+      assertThat(written).containsExactly(expected);
+      assertThat(TraceId.readFrom(buffer, 3)).isEqualTo(id);
+    }
+    assertThat(TraceId.fromBytes(expected, 0)).isEqualTo(id);
+  }
+}
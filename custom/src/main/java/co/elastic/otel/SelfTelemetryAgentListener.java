@@ -0,0 +1,46 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel;
+
+import co.elastic.otel.common.SpanProcessorLatency;
+import co.elastic.otel.common.ValueStorageMetrics;
+import co.elastic.otel.common.WeakConcurrent;
+import com.google.auto.service.AutoService;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.javaagent.extension.AgentListener;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+
+/**
+ * Publishes the internal metrics of the distro ({@link ValueStorageMetrics}, {@link WeakConcurrent}
+ * cleanup statistics and {@link SpanProcessorLatency}) via the meter of the agent.
+ */
+@AutoService(AgentListener.class)
+public class SelfTelemetryAgentListener implements AgentListener {
+
+  @Override
+  public void afterAgent(AutoConfiguredOpenTelemetrySdk autoConfiguredOpenTelemetrySdk) {
+    Meter meter =
+        autoConfiguredOpenTelemetrySdk
+            .getOpenTelemetrySdk()
+            .getMeter(ValueStorageMetrics.INSTRUMENTATION_SCOPE);
+    ValueStorageMetrics.register(meter);
+    WeakConcurrent.registerMetrics(meter);
+    SpanProcessorLatency.registerMetrics(meter);
+  }
+}
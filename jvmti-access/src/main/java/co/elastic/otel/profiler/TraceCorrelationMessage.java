@@ -43,12 +43,47 @@ public class TraceCorrelationMessage implements ProfilerMessage {
   }
 
   /**
-   * @return the 8 byte id of the stack trace observed by the profiler
+   * @return the 16 byte id of the stack trace observed by the profiler
    */
   public byte[] getStackTraceId() {
     return stackTraceId;
   }
 
+  /**
+   * @return the first eight bytes of the trace id as big endian long, without allocating
+   */
+  public long getTraceIdHigh() {
+    return readLong(traceId, 0);
+  }
+
+  /**
+   * @return the last eight bytes of the trace id as big endian long, without allocating
+   */
+  public long getTraceIdLow() {
+    return readLong(traceId, 8);
+  }
+
+  /**
+   * @return the span id of the local root span as big endian long, without allocating
+   */
+  public long getLocalRootSpanIdAsLong() {
+    return readLong(localRootSpanId, 0);
+  }
+
+  /**
+   * @return the first eight bytes of the stack trace id as big endian long, without allocating
+   */
+  public long getStackTraceIdHigh() {
+    return readLong(stackTraceId, 0);
+  }
+
+  /**
+   * @return the last eight bytes of the stack trace id as big endian long, without allocating
+   */
+  public long getStackTraceIdLow() {
+    return readLong(stackTraceId, 8);
+  }
+
   /**
    * @return the total number of samples with the given trace-id, local-root-span-id and
    *     stacktrace-id observed since the last report
@@ -57,6 +92,14 @@ public class TraceCorrelationMessage implements ProfilerMessage {
     return sampleCount;
   }
 
+  private static long readLong(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result = (result << 8) | (bytes[offset + i] & 0xFF);
+    }
+    return result;
+  }
+
   @Override
   public String toString() {
     return "TraceCorrelationMessage{"
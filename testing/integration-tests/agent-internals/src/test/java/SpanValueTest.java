@@ -85,6 +85,25 @@ public class SpanValueTest {
     assertThat(value).isEqualTo("bar");
   }
 
+  @Test
+  public void ensureWellKnownValuesStoredAsFields() throws Exception {
+    Tracer tracer = GlobalOpenTelemetry.get().getTracer("my-tracer");
+    Span bridgeSpan = tracer.spanBuilder("s1").startSpan();
+    Object agentSpan = readFieldValue(bridgeSpan, "agentSpan");
+
+    Class<?> wellKnownValueClass =
+        Class.forName(
+            "co.elastic.otel.common.WellKnownSpanValue",
+            true,
+            agentSpan.getClass().getClassLoader());
+    for (Object wellKnownValue : wellKnownValueClass.getEnumConstants()) {
+      String fieldName =
+          (String) wellKnownValueClass.getMethod("getFieldName").invoke(wellKnownValue);
+      assertThat(agentSpan.getClass().getDeclaredField(fieldName).getType())
+          .isEqualTo(Object.class);
+    }
+  }
+
   private static Object readFieldValue(Object instance, String field) throws Exception {
     Field fieldRef = instance.getClass().getDeclaredField(field);
     fieldRef.setAccessible(true);
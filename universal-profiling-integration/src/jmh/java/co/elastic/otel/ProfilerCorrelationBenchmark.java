@@ -0,0 +1,141 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel;
+
+import co.elastic.otel.common.LocalRootSpan;
+import co.elastic.otel.profiler.DecodeException;
+import co.elastic.otel.profiler.MessageDecoder;
+import co.elastic.otel.profiler.TraceCorrelationMessage;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures decoding a {@link TraceCorrelationMessage} and attributing it to its pending local root
+ * span, as done for every message received from the profiler. Run with {@code -prof gc} to verify
+ * that no garbage is produced per message once the span has seen the stack traces.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class ProfilerCorrelationBenchmark {
+
+  private static final int STACK_TRACES = 32;
+
+  private SdkTracerProvider tracerProvider;
+  private SpanProfilingSamplesCorrelator correlator;
+  private Span localRoot;
+  private final MessageDecoder decoder = new MessageDecoder();
+  private ByteBuffer[] messages;
+  private int nextMessage;
+
+  @Setup(Level.Iteration)
+  public void init() {
+    correlator = new SpanProfilingSamplesCorrelator(1024, System::nanoTime, 0, span -> {});
+    tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(
+                new SpanProcessor() {
+                  @Override
+                  public void onStart(Context parentContext, ReadWriteSpan span) {
+                    LocalRootSpan.onSpanStart(span, parentContext);
+                    correlator.onSpanStart(span, parentContext);
+                  }
+
+                  @Override
+                  public boolean isStartRequired() {
+                    return true;
+                  }
+
+                  @Override
+                  public void onEnd(ReadableSpan span) {}
+
+                  @Override
+                  public boolean isEndRequired() {
+                    return false;
+                  }
+                })
+            .build();
+    localRoot = tracerProvider.get("benchmark").spanBuilder("root").startSpan();
+
+    SpanContext ctx = localRoot.getSpanContext();
+    Random random = new Random(42);
+    messages = new ByteBuffer[STACK_TRACES];
+    for (int i = 0; i < STACK_TRACES; i++) {
+      byte[] stackTraceId = new byte[16];
+      random.nextBytes(stackTraceId);
+      ByteBuffer message = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder());
+      message.putShort((short) 1); // message type
+      message.putShort((short) 1); // message version
+      message.put(ctx.getTraceIdBytes());
+      message.put(ctx.getSpanIdBytes());
+      message.put(stackTraceId);
+      message.putShort((short) 3);
+      message.flip();
+      messages[i] = message;
+    }
+    // the first sample of each stack trace for a span allocates a slot in its table
+    for (int i = 0; i < STACK_TRACES; i++) {
+      handleNextMessage();
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void destroy() {
+    localRoot.end();
+    tracerProvider.close();
+  }
+
+  @Benchmark
+  public ReadableSpan handleNextMessage() {
+    ByteBuffer message = messages[nextMessage++ & (STACK_TRACES - 1)];
+    message.position(0);
+    TraceCorrelationMessage decoded;
+    try {
+      decoded = (TraceCorrelationMessage) decoder.decode(message);
+    } catch (DecodeException e) {
+      throw new IllegalStateException(e);
+    }
+    correlator.correlate(
+        decoded.getTraceIdHigh(),
+        decoded.getTraceIdLow(),
+        decoded.getLocalRootSpanIdAsLong(),
+        decoded.getStackTraceIdHigh(),
+        decoded.getStackTraceIdLow(),
+        decoded.getSampleCount());
+    return (ReadableSpan) localRoot;
+  }
+}
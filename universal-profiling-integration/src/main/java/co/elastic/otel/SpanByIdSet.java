@@ -18,155 +18,208 @@
  */
 package co.elastic.otel;
 
+import co.elastic.otel.common.util.HexUtils;
+import co.elastic.otel.common.util.SpanId;
+import co.elastic.otel.common.util.TraceId;
 import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import javax.annotation.Nullable;
 
+/**
+ * A set of spans which can be looked up by their trace and span id, without keeping them alive.
+ *
+ * <p>The ids are stored as longs in an open addressing hash table with linear probing, so that
+ * lookups neither allocate nor compare strings. Lookups are lock-free, while modifications are
+ * synchronized: Entries are immutable and removed ones are replaced with a tombstone, so a reader
+ * never misses an entry because of a concurrent removal. When the table needs to grow or has too
+ * many tombstones, a new table is built and published as a whole.
+ */
 public class SpanByIdSet {
 
-  /**
-   * The value of an entry is always the same as the key in this map (=it is a set). We just use a
-   * map to allow a lookup of the original {@link WeakSpanWithId} via a {@link LookupKey}. While the
-   * key type of this map is {@link TraceIdKeyed}, it only stores {@link WeakSpanWithId}s.
-   */
-  private final Map<TraceIdKeyed, WeakSpanWithId> spansById = new ConcurrentHashMap<>();
+  private static final int MIN_CAPACITY = 64;
+
+  private static final Entry TOMBSTONE = new Entry(null, 0, 0, 0, null);
 
   private final ReferenceQueue<ReadableSpan> collectedSpansQueue = new ReferenceQueue<>();
 
-  public void add(ReadableSpan span) {
-    WeakSpanWithId wrapper = new WeakSpanWithId(span, collectedSpansQueue);
-    spansById.putIfAbsent(wrapper, wrapper);
+  private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(MIN_CAPACITY);
+
+  /** Number of entries in the table, guarded by this. */
+  private int size;
+
+  /** Number of entries plus tombstones in the table, guarded by this. */
+  private int usedSlots;
+
+  public synchronized void add(ReadableSpan span) {
+    SpanContext ctx = span.getSpanContext();
+    long traceIdHigh = HexUtils.hexToLong(ctx.getTraceId(), 0);
+    long traceIdLow = HexUtils.hexToLong(ctx.getTraceId(), 16);
+    long spanId = HexUtils.hexToLong(ctx.getSpanId(), 0);
+
+    AtomicReferenceArray<Entry> tab = table;
+    int index = find(tab, traceIdHigh, traceIdLow, spanId);
+    if (index >= 0) {
+      if (tab.get(index).get() != null) {
+        return;
+      }
+      // the previous span with the same ids has been collected but not yet expunged
+      tab.set(index, TOMBSTONE);
+      size--;
+    }
+    if ((usedSlots + 1) * 2 > tab.length()) {
+      tab = rehash();
+    }
+    Entry entry = new Entry(span, traceIdHigh, traceIdLow, spanId, collectedSpansQueue);
+    int mask = tab.length() - 1;
+    for (int i = hash(traceIdHigh, traceIdLow, spanId) & mask; ; i = (i + 1) & mask) {
+      Entry existing = tab.get(i);
+      if (existing == null || existing == TOMBSTONE) {
+        if (existing == null) {
+          usedSlots++;
+        }
+        size++;
+        tab.set(i, entry);
+        return;
+      }
+    }
   }
 
-  public void remove(ReadableSpan span) {
+  public synchronized void remove(ReadableSpan span) {
     SpanContext ctx = span.getSpanContext();
-    LookupKey key = new LookupKey(ctx.getTraceId(), ctx.getSpanId());
-    spansById.remove(key);
+    AtomicReferenceArray<Entry> tab = table;
+    int index =
+        find(
+            tab,
+            HexUtils.hexToLong(ctx.getTraceId(), 0),
+            HexUtils.hexToLong(ctx.getTraceId(), 16),
+            HexUtils.hexToLong(ctx.getSpanId(), 0));
+    if (index >= 0) {
+      tab.set(index, TOMBSTONE);
+      size--;
+    }
   }
 
   public synchronized void expungeStaleEntries() {
     Reference<? extends ReadableSpan> ref;
     while ((ref = collectedSpansQueue.poll()) != null) {
-      WeakSpanWithId elem = ((WeakSpanWithId) ref);
-      spansById.remove(elem);
+      Entry elem = (Entry) ref;
+      AtomicReferenceArray<Entry> tab = table;
+      int index = find(tab, elem.traceIdHigh, elem.traceIdLow, elem.spanId);
+      // the entry might have been removed or replaced already
+      if (index >= 0 && tab.get(index) == elem) {
+        tab.set(index, TOMBSTONE);
+        size--;
+      }
     }
   }
 
+  /** Looks up a span by its lower or upper case hex ids. */
   @Nullable
-  public ReadableSpan get(String traceId, String spanId) {
-    LookupKey key = new LookupKey(traceId, spanId);
-    WeakSpanWithId result = spansById.get(key);
-    return result != null ? result.get() : null;
+  public ReadableSpan get(CharSequence traceId, CharSequence spanId) {
+    return get(
+        HexUtils.hexToLong(traceId, 0),
+        HexUtils.hexToLong(traceId, 16),
+        HexUtils.hexToLong(spanId, 0));
   }
 
-  // For testing only
-  int size() {
-    return spansById.size();
+  @Nullable
+  public ReadableSpan get(TraceId traceId, SpanId spanId) {
+    return get(traceId.getHigh(), traceId.getLow(), spanId.toLong());
   }
 
-  private interface TraceIdKeyed {
-
-    String getTraceId();
+  /**
+   * Allocation-free lookup of a span by its ids, see {@link TraceId#getHigh()}, {@link
+   * TraceId#getLow()} and {@link SpanId#toLong()} for their binary representation.
+   */
+  @Nullable
+  public ReadableSpan get(long traceIdHigh, long traceIdLow, long spanId) {
+    AtomicReferenceArray<Entry> tab = table;
+    int index = find(tab, traceIdHigh, traceIdLow, spanId);
+    return index >= 0 ? tab.get(index).get() : null;
+  }
 
-    String getSpanId();
+  // For testing only
+  synchronized int size() {
+    return size;
+  }
 
-    static boolean equals(TraceIdKeyed self, Object o) {
-      if (!(o instanceof TraceIdKeyed)) {
-        return false;
+  private static int find(
+      AtomicReferenceArray<Entry> tab, long traceIdHigh, long traceIdLow, long spanId) {
+    int mask = tab.length() - 1;
+    for (int i = hash(traceIdHigh, traceIdLow, spanId) & mask; ; i = (i + 1) & mask) {
+      Entry entry = tab.get(i);
+      if (entry == null) {
+        return -1;
       }
-
-      TraceIdKeyed that = (TraceIdKeyed) o;
-
-      if (!self.getTraceId().equals(that.getTraceId())) {
-        return false;
+      if (entry != TOMBSTONE && entry.hasIds(traceIdHigh, traceIdLow, spanId)) {
+        return i;
       }
-      return self.getSpanId().equals(that.getSpanId());
-    }
-
-    static int hashCode(TraceIdKeyed self) {
-      int result = self.getTraceId().hashCode();
-      result = 31 * result + self.getSpanId().hashCode();
-      return result;
     }
   }
 
-  private static class WeakSpanWithId extends WeakReference<ReadableSpan> implements TraceIdKeyed {
-    private final String traceId;
-    private final String spanId;
-
-    WeakSpanWithId(ReadableSpan span, ReferenceQueue<ReadableSpan> refQueue) {
-      super(span, refQueue);
-      SpanContext ctx = span.getSpanContext();
-      traceId = ctx.getTraceId();
-      spanId = ctx.getSpanId();
-      assertLowerCase(traceId);
-      assertLowerCase(spanId);
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      return TraceIdKeyed.equals(this, o);
-    }
-
-    @Override
-    public int hashCode() {
-      return TraceIdKeyed.hashCode(this);
-    }
-
-    @Override
-    public String getTraceId() {
-      return traceId;
+  /**
+   * Builds a table without tombstones, which is at most a quarter full afterward. Entries of
+   * collected spans are dropped right away, expunging them later is a no-op.
+   */
+  private AtomicReferenceArray<Entry> rehash() {
+    AtomicReferenceArray<Entry> oldTable = table;
+    int capacity = MIN_CAPACITY;
+    while (capacity < (size + 1) * 4) {
+      capacity *= 2;
     }
-
-    @Override
-    public String getSpanId() {
-      return spanId;
+    AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<>(capacity);
+    int mask = capacity - 1;
+    int newSize = 0;
+    for (int i = 0; i < oldTable.length(); i++) {
+      Entry entry = oldTable.get(i);
+      if (entry == null || entry == TOMBSTONE || entry.get() == null) {
+        continue;
+      }
+      int index = hash(entry.traceIdHigh, entry.traceIdLow, entry.spanId) & mask;
+      while (newTable.get(index) != null) {
+        index = (index + 1) & mask;
+      }
+      newTable.set(index, entry);
+      newSize++;
     }
+    size = newSize;
+    usedSlots = newSize;
+    table = newTable;
+    return newTable;
   }
 
-  private static class LookupKey implements TraceIdKeyed {
-    private final String traceId;
-    private final String spanId;
+  private static int hash(long traceIdHigh, long traceIdLow, long spanId) {
+    // the ids are random in general, but don't rely on every part of them being random
+    long hash = (traceIdHigh * 31 + traceIdLow) * 31 + spanId;
+    hash *= 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
 
-    public LookupKey(String traceId, String spanId) {
-      this.traceId = traceId;
+  private static class Entry extends WeakReference<ReadableSpan> {
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+
+    Entry(
+        @Nullable ReadableSpan span,
+        long traceIdHigh,
+        long traceIdLow,
+        long spanId,
+        @Nullable ReferenceQueue<ReadableSpan> refQueue) {
+      super(span, refQueue);
+      this.traceIdHigh = traceIdHigh;
+      this.traceIdLow = traceIdLow;
       this.spanId = spanId;
-      assertLowerCase(traceId);
-      assertLowerCase(spanId);
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      return TraceIdKeyed.equals(this, o);
-    }
-
-    @Override
-    public int hashCode() {
-      return TraceIdKeyed.hashCode(this);
     }
 
-    @Override
-    public String getTraceId() {
-      return traceId;
-    }
-
-    @Override
-    public String getSpanId() {
-      return spanId;
-    }
-  }
-
-  private static void assertLowerCase(String str) {
-    for (int i = 0; i < str.length(); i++) {
-      char c = str.charAt(i);
-      if (Character.isAlphabetic(c) && !Character.isLowerCase(c)) {
-        throw new IllegalArgumentException("Expected string to be lower case: " + str);
-      }
+    boolean hasIds(long traceIdHigh, long traceIdLow, long spanId) {
+      return this.spanId == spanId
+          && this.traceIdLow == traceIdLow
+          && this.traceIdHigh == traceIdHigh;
     }
   }
 }
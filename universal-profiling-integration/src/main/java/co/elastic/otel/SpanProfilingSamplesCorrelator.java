@@ -21,8 +21,9 @@ package co.elastic.otel;
 import co.elastic.otel.common.ElasticAttributes;
 import co.elastic.otel.common.LocalRootSpan;
 import co.elastic.otel.common.MutableSpan;
+import co.elastic.otel.common.ReleasePolicy;
 import co.elastic.otel.common.SpanValue;
-import co.elastic.otel.disruptor.FreezableList;
+import co.elastic.otel.common.WellKnownSpanValue;
 import co.elastic.otel.disruptor.MoveableEvent;
 import co.elastic.otel.disruptor.PeekingPoller;
 import com.lmax.disruptor.EventPoller;
@@ -41,8 +42,8 @@ public class SpanProfilingSamplesCorrelator {
   private static final Logger logger =
       Logger.getLogger(SpanProfilingSamplesCorrelator.class.getName());
 
-  private static final SpanValue<FreezableList<String>> profilerStackTraceIds =
-      SpanValue.createSparse();
+  private static final SpanValue<StackTraceIdCounts> profilerStackTraceIds =
+      SpanValue.createWellKnown(WellKnownSpanValue.PROFILER_STACK_TRACE_IDS, ReleasePolicy.ON_END);
 
   private final SpanByIdSet spansById = new SpanByIdSet();
 
@@ -130,15 +131,23 @@ public class SpanProfilingSamplesCorrelator {
     }
   }
 
+  /**
+   * Attributes profiler samples to the local root span with the given ids, if it is still pending.
+   * The ids are passed as big endian longs, so that this method doesn't allocate for spans which
+   * already have samples for the given stack trace.
+   */
   public void correlate(
-      String traceId, String localRootSpanId, CharSequence stackTraceId, int count) {
-    ReadableSpan span = spansById.get(traceId, localRootSpanId);
+      long traceIdHigh,
+      long traceIdLow,
+      long localRootSpanId,
+      long stackTraceIdHigh,
+      long stackTraceIdLow,
+      int count) {
+    ReadableSpan span = spansById.get(traceIdHigh, traceIdLow, localRootSpanId);
     if (span != null) {
-      FreezableList<String> list = profilerStackTraceIds.computeIfNull(span, FreezableList::new);
-      String stId = stackTraceId.toString();
-      for (int i = 0; i < count; i++) {
-        list.addIfNotFrozen(stId);
-      }
+      StackTraceIdCounts counts =
+          profilerStackTraceIds.computeIfNull(span, StackTraceIdCounts::new);
+      counts.addIfNotFrozen(stackTraceIdHigh, stackTraceIdLow, count);
     }
   }
 
@@ -177,10 +186,11 @@ public class SpanProfilingSamplesCorrelator {
 
   private void correlateAndSendSpan(ReadableSpan span) {
     spansById.remove(span);
-    FreezableList<String> list = profilerStackTraceIds.get(span);
-    if (list != null) {
+    StackTraceIdCounts counts = profilerStackTraceIds.get(span);
+    if (counts != null) {
       MutableSpan mutableSpan = MutableSpan.makeMutable(span);
-      mutableSpan.setAttribute(ElasticAttributes.PROFILER_STACK_TRACE_IDS, list.freezeAndGet());
+      mutableSpan.setAttribute(
+          ElasticAttributes.PROFILER_STACK_TRACE_IDS, counts.freezeAndEncode());
       sendSpan.accept(mutableSpan);
     } else {
       sendSpan.accept(span);
@@ -0,0 +1,119 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts the profiler samples per 16 byte stack trace id observed for a span.
+ *
+ * <p>The ids are kept in binary form in an open addressing table of longs, so recording samples for
+ * an id already seen by the span doesn't allocate. Ids are only base64 encoded once, when the span
+ * is sent and the counts are frozen.
+ */
+class StackTraceIdCounts {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+  /** Per slot the high and low bits of the id and its count, a count of zero marks a free slot. */
+  private long[] table = new long[INITIAL_CAPACITY * 3];
+
+  private int distinctIds;
+
+  private boolean isFrozen = false;
+
+  synchronized void addIfNotFrozen(long stackTraceIdHigh, long stackTraceIdLow, int count) {
+    if (isFrozen || count <= 0) {
+      return;
+    }
+    if ((distinctIds + 1) * 2 > table.length / 3) {
+      grow();
+    }
+    int slot = findSlot(table, stackTraceIdHigh, stackTraceIdLow);
+    if (table[slot + 2] == 0) {
+      table[slot] = stackTraceIdHigh;
+      table[slot + 1] = stackTraceIdLow;
+      distinctIds++;
+    }
+    table[slot + 2] += count;
+  }
+
+  /**
+   * Prevents further samples from being added and returns the base64 encoded ids, each repeated as
+   * many times as it was sampled.
+   */
+  synchronized List<String> freezeAndEncode() {
+    isFrozen = true;
+    if (distinctIds == 0) {
+      return Collections.emptyList();
+    }
+    List<String> result = new ArrayList<>();
+    byte[] idBytes = new byte[16];
+    for (int slot = 0; slot < table.length; slot += 3) {
+      long count = table[slot + 2];
+      if (count != 0) {
+        writeLong(table[slot], idBytes, 0);
+        writeLong(table[slot + 1], idBytes, 8);
+        String encoded = ENCODER.encodeToString(idBytes);
+        for (long i = 0; i < count; i++) {
+          result.add(encoded);
+        }
+      }
+    }
+    return result;
+  }
+
+  private void grow() {
+    long[] oldTable = table;
+    long[] newTable = new long[oldTable.length * 2];
+    for (int slot = 0; slot < oldTable.length; slot += 3) {
+      if (oldTable[slot + 2] != 0) {
+        int newSlot = findSlot(newTable, oldTable[slot], oldTable[slot + 1]);
+        System.arraycopy(oldTable, slot, newTable, newSlot, 3);
+      }
+    }
+    table = newTable;
+  }
+
+  /** Returns the slot containing the given id, or the free slot where it should be inserted. */
+  private static int findSlot(long[] table, long high, long low) {
+    int slots = table.length / 3;
+    long hash = (high ^ low) * 0x9E3779B97F4A7C15L;
+    int index = (int) (hash >>> 33) & (slots - 1);
+    while (true) {
+      int slot = index * 3;
+      if (table[slot + 2] == 0 || (table[slot] == high && table[slot + 1] == low)) {
+        return slot;
+      }
+      index = (index + 1) & (slots - 1);
+    }
+  }
+
+  private static void writeLong(long value, byte[] dest, int offset) {
+    for (int i = 7; i >= 0; i--) {
+      dest[offset + i] = (byte) value;
+      value >>>= 8;
+    }
+  }
+}
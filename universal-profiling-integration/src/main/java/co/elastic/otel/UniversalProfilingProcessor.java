@@ -21,7 +21,6 @@ package co.elastic.otel;
 import co.elastic.otel.common.AbstractChainingSpanProcessor;
 import co.elastic.otel.common.LocalRootSpan;
 import co.elastic.otel.common.util.ExecutorUtils;
-import co.elastic.otel.common.util.HexUtils;
 import co.elastic.otel.hostid.ProfilerProvidedHostId;
 import co.elastic.otel.profiler.DecodeException;
 import co.elastic.otel.profiler.ProfilerMessage;
@@ -41,7 +40,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.Base64;
 import java.util.Random;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -268,7 +266,6 @@ public class UniversalProfilingProcessor extends AbstractChainingSpanProcessor {
   }
 
   private void consumeProfilerMessages() {
-    StringBuilder tempBuffer = new StringBuilder();
     try {
       while (true) {
         try {
@@ -277,7 +274,7 @@ public class UniversalProfilingProcessor extends AbstractChainingSpanProcessor {
           if (message == null) {
             break;
           } else if (message instanceof TraceCorrelationMessage) {
-            handleMessage((TraceCorrelationMessage) message, tempBuffer);
+            handleMessage((TraceCorrelationMessage) message);
           } else if (message instanceof ProfilerRegistrationMessage) {
             handleMessage((ProfilerRegistrationMessage) message);
           } else {
@@ -307,18 +304,14 @@ public class UniversalProfilingProcessor extends AbstractChainingSpanProcessor {
     ProfilerProvidedHostId.set(message.getHostId());
   }
 
-  private void handleMessage(TraceCorrelationMessage message, StringBuilder tempBuffer) {
-    tempBuffer.setLength(0);
-    HexUtils.appendAsHex(message.getTraceId(), tempBuffer);
-    String traceId = tempBuffer.toString();
-
-    tempBuffer.setLength(0);
-    HexUtils.appendAsHex(message.getLocalRootSpanId(), tempBuffer);
-    String localRootSpanId = tempBuffer.toString();
-
-    String stackTraceId =
-        Base64.getUrlEncoder().withoutPadding().encodeToString(message.getStackTraceId());
-    correlator.correlate(traceId, localRootSpanId, stackTraceId, message.getSampleCount());
+  private void handleMessage(TraceCorrelationMessage message) {
+    correlator.correlate(
+        message.getTraceIdHigh(),
+        message.getTraceIdLow(),
+        message.getLocalRootSpanIdAsLong(),
+        message.getStackTraceIdHigh(),
+        message.getStackTraceIdLow(),
+        message.getSampleCount());
   }
 
   private static class ActivationListener implements ContextStorage {
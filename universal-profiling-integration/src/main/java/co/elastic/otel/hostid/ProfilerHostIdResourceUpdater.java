@@ -47,7 +47,8 @@ public class ProfilerHostIdResourceUpdater {
 
   private static class HostIdApplicationCache {
     private final String profilerProvidedHostId;
-    private final WeakConcurrentMap<Resource, Resource> cachedUpdates = WeakConcurrent.createMap();
+    private final WeakConcurrentMap<Resource, Resource> cachedUpdates =
+        WeakConcurrent.createMap("host-id-resources", false);
 
     private HostIdApplicationCache(String profilerProvidedHostId) {
       this.profilerProvidedHostId = profilerProvidedHostId;
@@ -24,12 +24,16 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
 import co.elastic.otel.common.util.HexUtils;
+import co.elastic.otel.common.util.SpanId;
+import co.elastic.otel.common.util.TraceId;
 import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.TraceFlags;
 import io.opentelemetry.api.trace.TraceState;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import java.lang.ref.WeakReference;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -117,6 +121,48 @@ public class SpanByIdSetTest {
             });
   }
 
+  @Test
+  public void binaryLookup() {
+    ReadableSpan span = mockSpan("0123456789abcdeffedcba9876543210", "00f067aa0ba902b7");
+    set.add(span);
+
+    assertThat(set.get(0x0123456789abcdefL, 0xfedcba9876543210L, 0x00f067aa0ba902b7L))
+        .isSameAs(span);
+    assertThat(
+            set.get(
+                TraceId.fromHex("0123456789abcdeffedcba9876543210"),
+                SpanId.fromHex("00f067aa0ba902b7")))
+        .isSameAs(span);
+    assertThat(set.get("0123456789ABCDEFFEDCBA9876543210", "00F067AA0BA902B7")).isSameAs(span);
+    assertThat(set.get(0x0123456789abcdefL, 0xfedcba9876543210L, 0x00f067aa0ba902b8L)).isNull();
+  }
+
+  @Test
+  public void growsAndReusesRemovedSlots() {
+    List<ReadableSpan> spans = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      ReadableSpan span = mockSpan();
+      spans.add(span);
+      set.add(span);
+    }
+    assertThat(set.size()).isEqualTo(1000);
+
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < spans.size(); i += 2) {
+        set.remove(spans.get(i));
+        ReadableSpan replacement = mockSpan();
+        spans.set(i, replacement);
+        set.add(replacement);
+      }
+    }
+
+    assertThat(set.size()).isEqualTo(1000);
+    for (ReadableSpan span : spans) {
+      SpanContext ctx = span.getSpanContext();
+      assertThat(set.get(ctx.getTraceId(), ctx.getSpanId())).isSameAs(span);
+    }
+  }
+
   private static void waitToBeGCed(WeakReference<ReadableSpan> weakSp1) {
     await()
         .atMost(Duration.ofSeconds(10))
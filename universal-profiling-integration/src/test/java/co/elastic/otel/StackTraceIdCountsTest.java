@@ -0,0 +1,71 @@
+/*
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package co.elastic.otel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class StackTraceIdCountsTest {
+
+  @Test
+  public void idsRepeatedByCount() {
+    StackTraceIdCounts counts = new StackTraceIdCounts();
+
+    counts.addIfNotFrozen(1, 2, 2);
+    counts.addIfNotFrozen(3, 4, 1);
+    counts.addIfNotFrozen(1, 2, 1);
+    counts.addIfNotFrozen(5, 6, 0);
+
+    assertThat(counts.freezeAndEncode())
+        .containsExactlyInAnyOrder(base64(1, 2), base64(1, 2), base64(1, 2), base64(3, 4));
+  }
+
+  @Test
+  public void noSamplesAddedWhenFrozen() {
+    StackTraceIdCounts counts = new StackTraceIdCounts();
+    counts.addIfNotFrozen(1, 2, 1);
+
+    assertThat(counts.freezeAndEncode()).containsExactly(base64(1, 2));
+    counts.addIfNotFrozen(1, 2, 1);
+    counts.addIfNotFrozen(3, 4, 1);
+    assertThat(counts.freezeAndEncode()).containsExactly(base64(1, 2));
+  }
+
+  @Test
+  public void manyDistinctIds() {
+    StackTraceIdCounts counts = new StackTraceIdCounts();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      counts.addIfNotFrozen(i * 31L, -i, 1);
+      expected.add(base64(i * 31L, -i));
+    }
+
+    assertThat(counts.freezeAndEncode()).containsExactlyInAnyOrderElementsOf(expected);
+  }
+
+  private static String base64(long high, long low) {
+    byte[] bytes = ByteBuffer.allocate(16).putLong(high).putLong(low).array();
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+}